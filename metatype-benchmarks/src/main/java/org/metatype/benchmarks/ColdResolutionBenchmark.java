@@ -0,0 +1,149 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.metatype.MetaAnnotatedClass;
+import org.metatype.MetaAnnotatedMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * First resolution of a bean using the javax.ejb.meta annotations, with and
+ * without the closures the metatype-processor wrote into metatype-ejb.
+ * <p/>
+ * The caches hang off the annotation classes, so every invocation defines the
+ * bean and the meta-annotations afresh in their own class loader.  The reflective
+ * variant hides the precomputed closures from that loader.  Both pay for the class
+ * definitions, the difference between them is the unrolling.
+ *
+ * @author David Blevins
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 50)
+@Measurement(iterations = 200)
+@Fork(1)
+public class ColdResolutionBenchmark {
+
+    /**
+     * Where the metatype-processor puts the closures
+     */
+    private static final String INDEX = "META-INF/metatypes/";
+
+    private static final String BEAN = Fixtures.EjbBean.class.getName();
+
+    private ClassLoader precomputed;
+    private ClassLoader reflective;
+
+    @Setup(Level.Invocation)
+    public void setup() {
+        final ClassLoader parent = ColdResolutionBenchmark.class.getClassLoader();
+
+        precomputed = new Isolated(parent, true);
+        reflective = new Isolated(parent, false);
+    }
+
+    @Benchmark
+    public int precomputed() throws Exception {
+        return resolve(precomputed);
+    }
+
+    @Benchmark
+    public int reflective() throws Exception {
+        return resolve(reflective);
+    }
+
+    private static int resolve(ClassLoader loader) throws Exception {
+        final MetaAnnotatedClass<?> bean = MetaAnnotatedClass.of(loader.loadClass(BEAN));
+
+        int found = bean.getAnnotations().length;
+        for (MetaAnnotatedMethod method : bean.getDeclaredMethods()) {
+            found += method.getAnnotations().length;
+        }
+        return found;
+    }
+
+    /**
+     * Defines the bean and the javax.ejb.meta annotations itself, everything else
+     * comes from the parent
+     */
+    private static final class Isolated extends ClassLoader {
+        private final boolean precomputed;
+
+        private Isolated(ClassLoader parent, boolean precomputed) {
+            super(parent);
+            this.precomputed = precomputed;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith("javax.ejb.meta.") && !name.equals(BEAN)) return super.loadClass(name, resolve);
+
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> clazz = findLoadedClass(name);
+                if (clazz == null) {
+                    final byte[] bytes = read(name.replace('.', '/') + ".class");
+                    clazz = defineClass(name, bytes, 0, bytes.length);
+                }
+                if (resolve) resolveClass(clazz);
+                return clazz;
+            }
+        }
+
+        @Override
+        public URL getResource(String name) {
+            if (!precomputed && name.startsWith(INDEX)) return null;
+
+            return super.getResource(name);
+        }
+
+        private byte[] read(String resource) throws ClassNotFoundException {
+            final InputStream in = getParent().getResourceAsStream(resource);
+            if (in == null) throw new ClassNotFoundException(resource);
+
+            try {
+                try {
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    final byte[] buffer = new byte[4096];
+                    for (int n; (n = in.read(buffer)) != -1; ) {
+                        out.write(buffer, 0, n);
+                    }
+                    return out.toByteArray();
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                throw new ClassNotFoundException(resource, e);
+            }
+        }
+    }
+}
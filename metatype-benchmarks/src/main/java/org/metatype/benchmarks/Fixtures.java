@@ -0,0 +1,214 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.benchmarks;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import javax.annotation.Metatype;
+import javax.ejb.meta.AwaitNever;
+import javax.ejb.meta.Daily;
+import javax.ejb.meta.Midnight;
+import javax.ejb.meta.ReadLock;
+import javax.ejb.meta.TxMandatory;
+import javax.ejb.meta.TxRequired;
+import javax.ejb.meta.TxRequiresNew;
+import javax.ejb.meta.WriteLock;
+
+/**
+ * Annotations and classes the benchmarks resolve.
+ *
+ * @author David Blevins
+ */
+public class Fixtures {
+
+    @Target({TYPE, METHOD, PARAMETER})
+    @Retention(RUNTIME)
+    public static @interface Color {
+        String value() default "";
+    }
+
+    // Deep: a chain of eight meta-annotations ending in @Color
+
+    @Metatype
+    @Level0
+    @Target({TYPE, METHOD, PARAMETER})
+    @Retention(RUNTIME)
+    public static @interface Deep {
+    }
+
+    @Metatype
+    @Level1
+    @Target({TYPE, METHOD, PARAMETER})
+    @Retention(RUNTIME)
+    public static @interface Level0 {
+    }
+
+    @Metatype
+    @Level2
+    @Target({TYPE, METHOD, PARAMETER})
+    @Retention(RUNTIME)
+    public static @interface Level1 {
+    }
+
+    @Metatype
+    @Level3
+    @Target({TYPE, METHOD, PARAMETER})
+    @Retention(RUNTIME)
+    public static @interface Level2 {
+    }
+
+    @Metatype
+    @Level4
+    @Target({TYPE, METHOD, PARAMETER})
+    @Retention(RUNTIME)
+    public static @interface Level3 {
+    }
+
+    @Metatype
+    @Level5
+    @Target({TYPE, METHOD, PARAMETER})
+    @Retention(RUNTIME)
+    public static @interface Level4 {
+    }
+
+    @Metatype
+    @Level6
+    @Target({TYPE, METHOD, PARAMETER})
+    @Retention(RUNTIME)
+    public static @interface Level5 {
+    }
+
+    @Metatype
+    @Level7
+    @Target({TYPE, METHOD, PARAMETER})
+    @Retention(RUNTIME)
+    public static @interface Level6 {
+    }
+
+    @Metatype
+    @Color("deep")
+    @Target({TYPE, METHOD, PARAMETER})
+    @Retention(RUNTIME)
+    public static @interface Level7 {
+    }
+
+    // Wide: one meta-annotation fanning out to a dozen plain ones
+
+    @Metatype
+    @Plain00 @Plain01 @Plain02 @Plain03 @Plain04 @Plain05
+    @Plain06 @Plain07 @Plain08 @Plain09 @Plain10 @Plain11
+    @Target({TYPE, METHOD})
+    @Retention(RUNTIME)
+    public static @interface Wide {
+    }
+
+    @Target({TYPE, METHOD})
+    @Retention(RUNTIME)
+    public static @interface Plain00 {
+    }
+
+    @Target({TYPE, METHOD})
+    @Retention(RUNTIME)
+    public static @interface Plain01 {
+    }
+
+    @Target({TYPE, METHOD})
+    @Retention(RUNTIME)
+    public static @interface Plain02 {
+    }
+
+    @Target({TYPE, METHOD})
+    @Retention(RUNTIME)
+    public static @interface Plain03 {
+    }
+
+    @Target({TYPE, METHOD})
+    @Retention(RUNTIME)
+    public static @interface Plain04 {
+    }
+
+    @Target({TYPE, METHOD})
+    @Retention(RUNTIME)
+    public static @interface Plain05 {
+    }
+
+    @Target({TYPE, METHOD})
+    @Retention(RUNTIME)
+    public static @interface Plain06 {
+    }
+
+    @Target({TYPE, METHOD})
+    @Retention(RUNTIME)
+    public static @interface Plain07 {
+    }
+
+    @Target({TYPE, METHOD})
+    @Retention(RUNTIME)
+    public static @interface Plain08 {
+    }
+
+    @Target({TYPE, METHOD})
+    @Retention(RUNTIME)
+    public static @interface Plain09 {
+    }
+
+    @Target({TYPE, METHOD})
+    @Retention(RUNTIME)
+    public static @interface Plain10 {
+    }
+
+    @Target({TYPE, METHOD})
+    @Retention(RUNTIME)
+    public static @interface Plain11 {
+    }
+
+    @Deep
+    public static class DeepBean {
+    }
+
+    @Wide
+    public static class WideBean {
+    }
+
+    @TxRequired
+    @ReadLock
+    public static class EjbBean {
+
+        @TxRequiresNew
+        @WriteLock
+        public void update(@Deep String id, @Deep int version) {
+        }
+
+        @TxMandatory
+        @AwaitNever
+        public void read(String id) {
+        }
+
+        @Daily
+        public void daily() {
+        }
+
+        @Midnight
+        public void midnight() {
+        }
+    }
+}
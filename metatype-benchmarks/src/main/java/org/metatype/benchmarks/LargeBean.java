@@ -0,0 +1,930 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.benchmarks;
+
+import javax.ejb.meta.Daily;
+import javax.ejb.meta.TxRequired;
+
+/**
+ * A bean with a few hundred methods of which only two carry meta-annotations,
+ * the typical shape when scanning for a single @Schedule.
+ *
+ * @author David Blevins
+ */
+@TxRequired
+public class LargeBean {
+    public void method000(int i) {
+    }
+
+    public void method001(int i) {
+    }
+
+    public void method002(int i) {
+    }
+
+    public void method003(int i) {
+    }
+
+    public void method004(int i) {
+    }
+
+    public void method005(int i) {
+    }
+
+    public void method006(int i) {
+    }
+
+    public void method007(int i) {
+    }
+
+    public void method008(int i) {
+    }
+
+    public void method009(int i) {
+    }
+
+    public void method010(int i) {
+    }
+
+    public void method011(int i) {
+    }
+
+    public void method012(int i) {
+    }
+
+    public void method013(int i) {
+    }
+
+    public void method014(int i) {
+    }
+
+    public void method015(int i) {
+    }
+
+    public void method016(int i) {
+    }
+
+    public void method017(int i) {
+    }
+
+    public void method018(int i) {
+    }
+
+    public void method019(int i) {
+    }
+
+    public void method020(int i) {
+    }
+
+    public void method021(int i) {
+    }
+
+    public void method022(int i) {
+    }
+
+    public void method023(int i) {
+    }
+
+    public void method024(int i) {
+    }
+
+    public void method025(int i) {
+    }
+
+    public void method026(int i) {
+    }
+
+    public void method027(int i) {
+    }
+
+    public void method028(int i) {
+    }
+
+    public void method029(int i) {
+    }
+
+    public void method030(int i) {
+    }
+
+    public void method031(int i) {
+    }
+
+    public void method032(int i) {
+    }
+
+    public void method033(int i) {
+    }
+
+    public void method034(int i) {
+    }
+
+    public void method035(int i) {
+    }
+
+    public void method036(int i) {
+    }
+
+    public void method037(int i) {
+    }
+
+    public void method038(int i) {
+    }
+
+    public void method039(int i) {
+    }
+
+    public void method040(int i) {
+    }
+
+    public void method041(int i) {
+    }
+
+    public void method042(int i) {
+    }
+
+    public void method043(int i) {
+    }
+
+    public void method044(int i) {
+    }
+
+    public void method045(int i) {
+    }
+
+    public void method046(int i) {
+    }
+
+    public void method047(int i) {
+    }
+
+    public void method048(int i) {
+    }
+
+    public void method049(int i) {
+    }
+
+    public void method050(int i) {
+    }
+
+    public void method051(int i) {
+    }
+
+    public void method052(int i) {
+    }
+
+    public void method053(int i) {
+    }
+
+    public void method054(int i) {
+    }
+
+    public void method055(int i) {
+    }
+
+    public void method056(int i) {
+    }
+
+    public void method057(int i) {
+    }
+
+    public void method058(int i) {
+    }
+
+    public void method059(int i) {
+    }
+
+    public void method060(int i) {
+    }
+
+    public void method061(int i) {
+    }
+
+    public void method062(int i) {
+    }
+
+    public void method063(int i) {
+    }
+
+    public void method064(int i) {
+    }
+
+    public void method065(int i) {
+    }
+
+    public void method066(int i) {
+    }
+
+    public void method067(int i) {
+    }
+
+    public void method068(int i) {
+    }
+
+    public void method069(int i) {
+    }
+
+    public void method070(int i) {
+    }
+
+    public void method071(int i) {
+    }
+
+    public void method072(int i) {
+    }
+
+    public void method073(int i) {
+    }
+
+    public void method074(int i) {
+    }
+
+    public void method075(int i) {
+    }
+
+    public void method076(int i) {
+    }
+
+    public void method077(int i) {
+    }
+
+    public void method078(int i) {
+    }
+
+    public void method079(int i) {
+    }
+
+    public void method080(int i) {
+    }
+
+    public void method081(int i) {
+    }
+
+    public void method082(int i) {
+    }
+
+    public void method083(int i) {
+    }
+
+    public void method084(int i) {
+    }
+
+    public void method085(int i) {
+    }
+
+    public void method086(int i) {
+    }
+
+    public void method087(int i) {
+    }
+
+    public void method088(int i) {
+    }
+
+    public void method089(int i) {
+    }
+
+    public void method090(int i) {
+    }
+
+    public void method091(int i) {
+    }
+
+    public void method092(int i) {
+    }
+
+    public void method093(int i) {
+    }
+
+    public void method094(int i) {
+    }
+
+    public void method095(int i) {
+    }
+
+    public void method096(int i) {
+    }
+
+    public void method097(int i) {
+    }
+
+    public void method098(int i) {
+    }
+
+    public void method099(int i) {
+    }
+
+    public void method100(int i) {
+    }
+
+    public void method101(int i) {
+    }
+
+    public void method102(int i) {
+    }
+
+    public void method103(int i) {
+    }
+
+    public void method104(int i) {
+    }
+
+    public void method105(int i) {
+    }
+
+    public void method106(int i) {
+    }
+
+    public void method107(int i) {
+    }
+
+    public void method108(int i) {
+    }
+
+    public void method109(int i) {
+    }
+
+    public void method110(int i) {
+    }
+
+    public void method111(int i) {
+    }
+
+    public void method112(int i) {
+    }
+
+    public void method113(int i) {
+    }
+
+    public void method114(int i) {
+    }
+
+    public void method115(int i) {
+    }
+
+    public void method116(int i) {
+    }
+
+    public void method117(int i) {
+    }
+
+    public void method118(int i) {
+    }
+
+    public void method119(int i) {
+    }
+
+    public void method120(int i) {
+    }
+
+    public void method121(int i) {
+    }
+
+    public void method122(int i) {
+    }
+
+    public void method123(int i) {
+    }
+
+    public void method124(int i) {
+    }
+
+    public void method125(int i) {
+    }
+
+    public void method126(int i) {
+    }
+
+    public void method127(int i) {
+    }
+
+    public void method128(int i) {
+    }
+
+    public void method129(int i) {
+    }
+
+    public void method130(int i) {
+    }
+
+    public void method131(int i) {
+    }
+
+    public void method132(int i) {
+    }
+
+    public void method133(int i) {
+    }
+
+    public void method134(int i) {
+    }
+
+    public void method135(int i) {
+    }
+
+    public void method136(int i) {
+    }
+
+    public void method137(int i) {
+    }
+
+    public void method138(int i) {
+    }
+
+    public void method139(int i) {
+    }
+
+    public void method140(int i) {
+    }
+
+    public void method141(int i) {
+    }
+
+    public void method142(int i) {
+    }
+
+    public void method143(int i) {
+    }
+
+    public void method144(int i) {
+    }
+
+    public void method145(int i) {
+    }
+
+    public void method146(int i) {
+    }
+
+    public void method147(int i) {
+    }
+
+    public void method148(int i) {
+    }
+
+    public void method149(int i) {
+    }
+
+    @Daily
+    public void method150(int i) {
+    }
+
+    public void method151(int i) {
+    }
+
+    public void method152(int i) {
+    }
+
+    public void method153(int i) {
+    }
+
+    public void method154(int i) {
+    }
+
+    public void method155(int i) {
+    }
+
+    public void method156(int i) {
+    }
+
+    public void method157(int i) {
+    }
+
+    public void method158(int i) {
+    }
+
+    public void method159(int i) {
+    }
+
+    public void method160(int i) {
+    }
+
+    public void method161(int i) {
+    }
+
+    public void method162(int i) {
+    }
+
+    public void method163(int i) {
+    }
+
+    public void method164(int i) {
+    }
+
+    public void method165(int i) {
+    }
+
+    public void method166(int i) {
+    }
+
+    public void method167(int i) {
+    }
+
+    public void method168(int i) {
+    }
+
+    public void method169(int i) {
+    }
+
+    public void method170(int i) {
+    }
+
+    public void method171(int i) {
+    }
+
+    public void method172(int i) {
+    }
+
+    public void method173(int i) {
+    }
+
+    public void method174(int i) {
+    }
+
+    public void method175(int i) {
+    }
+
+    public void method176(int i) {
+    }
+
+    public void method177(int i) {
+    }
+
+    public void method178(int i) {
+    }
+
+    public void method179(int i) {
+    }
+
+    public void method180(int i) {
+    }
+
+    public void method181(int i) {
+    }
+
+    public void method182(int i) {
+    }
+
+    public void method183(int i) {
+    }
+
+    public void method184(int i) {
+    }
+
+    public void method185(int i) {
+    }
+
+    public void method186(int i) {
+    }
+
+    public void method187(int i) {
+    }
+
+    public void method188(int i) {
+    }
+
+    public void method189(int i) {
+    }
+
+    public void method190(int i) {
+    }
+
+    public void method191(int i) {
+    }
+
+    public void method192(int i) {
+    }
+
+    public void method193(int i) {
+    }
+
+    public void method194(int i) {
+    }
+
+    public void method195(int i) {
+    }
+
+    public void method196(int i) {
+    }
+
+    public void method197(int i) {
+    }
+
+    public void method198(int i) {
+    }
+
+    public void method199(int i) {
+    }
+
+    public void method200(int i) {
+    }
+
+    public void method201(int i) {
+    }
+
+    public void method202(int i) {
+    }
+
+    public void method203(int i) {
+    }
+
+    public void method204(int i) {
+    }
+
+    public void method205(int i) {
+    }
+
+    public void method206(int i) {
+    }
+
+    public void method207(int i) {
+    }
+
+    public void method208(int i) {
+    }
+
+    public void method209(int i) {
+    }
+
+    public void method210(int i) {
+    }
+
+    public void method211(int i) {
+    }
+
+    public void method212(int i) {
+    }
+
+    public void method213(int i) {
+    }
+
+    public void method214(int i) {
+    }
+
+    public void method215(int i) {
+    }
+
+    public void method216(int i) {
+    }
+
+    public void method217(int i) {
+    }
+
+    public void method218(int i) {
+    }
+
+    public void method219(int i) {
+    }
+
+    public void method220(int i) {
+    }
+
+    public void method221(int i) {
+    }
+
+    public void method222(int i) {
+    }
+
+    public void method223(int i) {
+    }
+
+    public void method224(int i) {
+    }
+
+    public void method225(int i) {
+    }
+
+    public void method226(int i) {
+    }
+
+    public void method227(int i) {
+    }
+
+    public void method228(int i) {
+    }
+
+    public void method229(int i) {
+    }
+
+    public void method230(int i) {
+    }
+
+    public void method231(int i) {
+    }
+
+    public void method232(int i) {
+    }
+
+    public void method233(int i) {
+    }
+
+    public void method234(int i) {
+    }
+
+    public void method235(int i) {
+    }
+
+    public void method236(int i) {
+    }
+
+    public void method237(int i) {
+    }
+
+    public void method238(int i) {
+    }
+
+    public void method239(int i) {
+    }
+
+    public void method240(int i) {
+    }
+
+    public void method241(int i) {
+    }
+
+    public void method242(int i) {
+    }
+
+    public void method243(int i) {
+    }
+
+    public void method244(int i) {
+    }
+
+    public void method245(int i) {
+    }
+
+    public void method246(int i) {
+    }
+
+    public void method247(int i) {
+    }
+
+    public void method248(int i) {
+    }
+
+    public void method249(int i) {
+    }
+
+    public void method250(int i) {
+    }
+
+    public void method251(int i) {
+    }
+
+    public void method252(int i) {
+    }
+
+    public void method253(int i) {
+    }
+
+    public void method254(int i) {
+    }
+
+    public void method255(int i) {
+    }
+
+    public void method256(int i) {
+    }
+
+    public void method257(int i) {
+    }
+
+    public void method258(int i) {
+    }
+
+    public void method259(int i) {
+    }
+
+    public void method260(int i) {
+    }
+
+    public void method261(int i) {
+    }
+
+    public void method262(int i) {
+    }
+
+    public void method263(int i) {
+    }
+
+    public void method264(int i) {
+    }
+
+    public void method265(int i) {
+    }
+
+    public void method266(int i) {
+    }
+
+    public void method267(int i) {
+    }
+
+    public void method268(int i) {
+    }
+
+    public void method269(int i) {
+    }
+
+    public void method270(int i) {
+    }
+
+    public void method271(int i) {
+    }
+
+    public void method272(int i) {
+    }
+
+    public void method273(int i) {
+    }
+
+    public void method274(int i) {
+    }
+
+    public void method275(int i) {
+    }
+
+    public void method276(int i) {
+    }
+
+    public void method277(int i) {
+    }
+
+    public void method278(int i) {
+    }
+
+    public void method279(int i) {
+    }
+
+    public void method280(int i) {
+    }
+
+    public void method281(int i) {
+    }
+
+    public void method282(int i) {
+    }
+
+    public void method283(int i) {
+    }
+
+    public void method284(int i) {
+    }
+
+    public void method285(int i) {
+    }
+
+    public void method286(int i) {
+    }
+
+    public void method287(int i) {
+    }
+
+    public void method288(int i) {
+    }
+
+    public void method289(int i) {
+    }
+
+    public void method290(int i) {
+    }
+
+    public void method291(int i) {
+    }
+
+    public void method292(int i) {
+    }
+
+    public void method293(int i) {
+    }
+
+    public void method294(int i) {
+    }
+
+    public void method295(int i) {
+    }
+
+    public void method296(int i) {
+    }
+
+    public void method297(int i) {
+    }
+
+    public void method298(int i) {
+    }
+
+    @Fixtures.Deep
+    public void method299(int i) {
+    }
+}
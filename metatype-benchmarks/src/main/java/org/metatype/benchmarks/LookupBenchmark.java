@@ -0,0 +1,104 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.ejb.Lock;
+import javax.ejb.Schedule;
+import javax.ejb.TransactionAttribute;
+
+import org.metatype.MetaAnnotatedClass;
+import org.metatype.MetaAnnotatedMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Queries against wrappers that are already resolved, the hot path of
+ * containers consulting annotations per invocation.
+ *
+ * @author David Blevins
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+
+    private MetaAnnotatedClass<Fixtures.EjbBean> bean;
+    private MetaAnnotatedClass<Fixtures.WideBean> wide;
+    private MetaAnnotatedMethod daily;
+    private MetaAnnotatedMethod update;
+
+    @Setup
+    public void setup() throws Exception {
+        bean = MetaAnnotatedClass.of(Fixtures.EjbBean.class);
+        wide = MetaAnnotatedClass.of(Fixtures.WideBean.class);
+        daily = bean.getMethod("daily");
+        update = bean.getMethod("update", String.class, int.class);
+
+        // resolve everything up front
+        bean.getAnnotations();
+        wide.getAnnotations();
+        daily.getAnnotations();
+        update.getParameterAnnotations();
+    }
+
+    @Benchmark
+    public Object getAnnotation() {
+        return bean.getAnnotation(TransactionAttribute.class);
+    }
+
+    @Benchmark
+    public Object getAnnotationAbsent() {
+        return bean.getAnnotation(Schedule.class);
+    }
+
+    @Benchmark
+    public boolean isAnnotationPresent() {
+        return daily.isAnnotationPresent(Schedule.class);
+    }
+
+    @Benchmark
+    public boolean isAnnotationPresentWide() {
+        return wide.isAnnotationPresent(Lock.class);
+    }
+
+    @Benchmark
+    public Object getAnnotations() {
+        return wide.getAnnotations();
+    }
+
+    @Benchmark
+    public Object getAnnotationList() {
+        return wide.getAnnotationList();
+    }
+
+    @Benchmark
+    public Object getParameterAnnotations() {
+        return update.getParameterAnnotations();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.benchmarks;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import javax.ejb.Schedule;
+
+import org.metatype.MetaAnnotatedClass;
+import org.metatype.MetaAnnotatedMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of building a wrapper and unrolling its annotations.
+ * <p/>
+ * The per annotation type caches are warm after the first invocation, so these
+ * measure the steady state of a deployment scanning many elements that use the
+ * same meta-annotations.
+ *
+ * @author David Blevins
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResolutionBenchmark {
+
+    private Method daily;
+    private Method update;
+    private Method[] largeBeanMethods;
+
+    @Setup
+    public void setup() throws Exception {
+        daily = Fixtures.EjbBean.class.getMethod("daily");
+        update = Fixtures.EjbBean.class.getMethod("update", String.class, int.class);
+        largeBeanMethods = LargeBean.class.getDeclaredMethods();
+    }
+
+    @Benchmark
+    public Object deepChain() {
+        return new MetaAnnotatedClass<Fixtures.DeepBean>(Fixtures.DeepBean.class).getAnnotation(Fixtures.Color.class);
+    }
+
+    @Benchmark
+    public Object wideFanOut() {
+        return new MetaAnnotatedClass<Fixtures.WideBean>(Fixtures.WideBean.class).getAnnotations();
+    }
+
+    @Benchmark
+    public Object ejbClass() {
+        return new MetaAnnotatedClass<Fixtures.EjbBean>(Fixtures.EjbBean.class).getAnnotations();
+    }
+
+    @Benchmark
+    public Object ejbMethod() {
+        return new MetaAnnotatedMethod(daily).getAnnotation(Schedule.class);
+    }
+
+    @Benchmark
+    public Object ejbMethodCanonical() {
+        return MetaAnnotatedMethod.of(daily).getAnnotation(Schedule.class);
+    }
+
+    @Benchmark
+    public Object parameterAnnotations() {
+        return new MetaAnnotatedMethod(update).getParameterAnnotations();
+    }
+
+    @Benchmark
+    public Object singleParameterAnnotations() {
+        return new MetaAnnotatedMethod(update).getParameterAnnotations(0);
+    }
+
+    /**
+     * Wrap all 300 methods but only ask each whether it is scheduled
+     */
+    @Benchmark
+    public int largeBeanScan() {
+        int found = 0;
+        for (Method method : largeBeanMethods) {
+            if (new MetaAnnotatedMethod(method).isAnnotationPresent(Schedule.class)) found++;
+        }
+        return found;
+    }
+
+    /**
+     * The same scan through MetaAnnotatedClass, which reuses canonical wrappers
+     */
+    @Benchmark
+    public int largeBeanDeclaredMethods() {
+        int found = 0;
+        for (MetaAnnotatedMethod method : new MetaAnnotatedClass<LargeBean>(LargeBean.class).getDeclaredMethods()) {
+            if (method.isAnnotationPresent(Schedule.class)) found++;
+        }
+        return found;
+    }
+}
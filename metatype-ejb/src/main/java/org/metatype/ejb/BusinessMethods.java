@@ -0,0 +1,141 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.ejb;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.metatype.MetaAnnotatedClass;
+import org.metatype.MetaAnnotatedMethod;
+import org.metatype.MetaAnnotation;
+
+/**
+ * The public, concrete, non-static methods of a bean class, numbered in name
+ * and descriptor order so a method id means the same thing on every run.  The
+ * per-bean tables of this package are arrays indexed by these ids.
+ *
+ * @author David Blevins
+ */
+final class BusinessMethods {
+
+    private static final ClassValue<BusinessMethods> methods = new ClassValue<BusinessMethods>() {
+        @Override
+        protected BusinessMethods computeValue(Class<?> type) {
+            return new BusinessMethods(type);
+        }
+    };
+
+    private static final Comparator<Method> ORDER = new Comparator<Method>() {
+        public int compare(Method a, Method b) {
+            final int i = a.getName().compareTo(b.getName());
+            return (i != 0) ? i : descriptor(a).compareTo(descriptor(b));
+        }
+    };
+
+    private final Method[] list;
+    private final Map<Method, Integer> ids;
+
+    private BusinessMethods(Class<?> beanClass) {
+        final List<Method> list = new ArrayList<Method>();
+
+        for (Method method : beanClass.getMethods()) {
+            if (method.getDeclaringClass() == Object.class) continue;
+            if (method.isBridge() || method.isSynthetic()) continue;
+
+            final int modifiers = method.getModifiers();
+            if (Modifier.isStatic(modifiers) || Modifier.isAbstract(modifiers)) continue;
+
+            list.add(method);
+        }
+
+        this.list = list.toArray(new Method[list.size()]);
+        Arrays.sort(this.list, ORDER);
+
+        this.ids = new HashMap<Method, Integer>();
+        for (int i = 0; i < this.list.length; i++) {
+            ids.put(this.list[i], i);
+        }
+    }
+
+    static BusinessMethods of(Class<?> beanClass) {
+        return methods.get(beanClass);
+    }
+
+    int size() {
+        return list.length;
+    }
+
+    Method get(int id) {
+        return list[id];
+    }
+
+    List<Method> list() {
+        return Collections.unmodifiableList(Arrays.asList(list));
+    }
+
+    /**
+     * The id of the method, or -1 if it is not a business method of the bean
+     */
+    int id(Method method) {
+        final Integer id = ids.get(method);
+        return (id == null) ? -1 : id;
+    }
+
+    /**
+     * The annotation on the method, else on the class declaring the method, both
+     * resolved through their metatype chains.  Null if neither carries one.
+     *
+     * @throws IllegalStateException if metatypes at the same depth disagree on the value
+     */
+    static <A extends Annotation> A resolve(Method method, Class<A> type) {
+        final A annotation = resolve(MetaAnnotatedMethod.of(method).getMetaAnnotations(), type, method);
+        if (annotation != null) return annotation;
+
+        return resolve(MetaAnnotatedClass.of(method.getDeclaringClass()).getMetaAnnotations(), type, method.getDeclaringClass());
+    }
+
+    private static <A extends Annotation> A resolve(Iterable<MetaAnnotation<?>> annotations, Class<A> type, Object element) {
+        for (MetaAnnotation<?> metaAnnotation : annotations) {
+            final Annotation annotation = metaAnnotation.get();
+            if (annotation.annotationType() != type) continue;
+
+            for (MetaAnnotation<?> conflict : metaAnnotation.getConflicts()) {
+                if (!annotation.equals(conflict.get())) {
+                    throw new IllegalStateException("Conflicting " + annotation + " and " + conflict.get() + " at depth " + metaAnnotation.getDepth() + " on " + element);
+                }
+            }
+
+            return type.cast(annotation);
+        }
+        return null;
+    }
+
+    private static String descriptor(Method method) {
+        final StringBuilder sb = new StringBuilder("(");
+        for (Class<?> type : method.getParameterTypes()) {
+            sb.append(type.getName()).append(',');
+        }
+        return sb.append(')').toString();
+    }
+}
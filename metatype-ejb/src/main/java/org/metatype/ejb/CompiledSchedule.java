@@ -0,0 +1,542 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.ejb;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import javax.ejb.Schedule;
+
+/**
+ * A calendar based timer expression, as found on the Schedule annotations that
+ * the javax.ejb.meta metatypes unroll to, compiled into bitmasks.
+ * <p/>
+ * Parsing happens once per expression, {@link #of} hands out the same instance
+ * for equal expressions.  {@link #next(long)} then walks the masks field by
+ * field without allocating, and {@link #next(CompiledSchedule[], long, long[])}
+ * does so for many timers at once.
+ * <p/>
+ * Supports the full EJB 3.1 syntax: wildcards, lists, ranges, increments on the
+ * second, minute and hour, month and weekday names, and the "Last", "-n" and
+ * "2nd Tue" forms of dayOfMonth.  As in the spec, a day matches when either
+ * dayOfMonth or dayOfWeek does if both are restricted.
+ *
+ * @author David Blevins
+ */
+public final class CompiledSchedule {
+
+    private static final ConcurrentMap<String, CompiledSchedule> schedules = new ConcurrentHashMap<String, CompiledSchedule>();
+
+    private static final String[] MONTHS = {"jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct", "nov", "dec"};
+    private static final String[] DAYS = {"sun", "mon", "tue", "wed", "thu", "fri", "sat"};
+    private static final String[] ORDINALS = {"1st", "2nd", "3rd", "4th", "5th", "last"};
+
+    private static final long DAY = 86400000L;
+
+    /**
+     * The custom ids of TimeZone, some JDKs resolve a zero offset to plain GMT
+     */
+    private static final Pattern CUSTOM_ZONE = Pattern.compile("GMT[+-]\\d{1,2}(:?\\d{2})?");
+
+    /**
+     * dayOfMonth references below this are absolute days, from 0 down to -7
+     * they count back from the last day, from NTH up they encode an ordinal and
+     * a weekday
+     */
+    private static final int NTH = 1000;
+
+    /**
+     * How far an unrestricted year is searched, covers the 400 year Gregorian cycle
+     */
+    private static final int YEARS = 400;
+
+    private final String expression;
+
+    /**
+     * Null for the default time zone, which is looked up on each use as it may change
+     */
+    private final TimeZone timeZone;
+
+    private final long seconds;
+    private final long minutes;
+    private final long hours;
+    private final long months;
+    private final long daysOfWeek;
+
+    /**
+     * Pairs of dayOfMonth references, null for a wildcard
+     */
+    private final int[] daysOfMonth;
+
+    /**
+     * Sorted, null for a wildcard
+     */
+    private final int[] years;
+
+    private CompiledSchedule(String expression, String second, String minute, String hour, String dayOfMonth, String month, String dayOfWeek, String year, String timezone) {
+        this.expression = expression;
+        this.timeZone = (timezone.length() == 0) ? null : timeZone(timezone);
+
+        this.seconds = parse("second", second, 0, 59, null, true);
+        this.minutes = parse("minute", minute, 0, 59, null, true);
+        this.hours = parse("hour", hour, 0, 23, null, true);
+        this.months = parse("month", month, 1, 12, MONTHS, false);
+        this.daysOfMonth = isWildcard(dayOfMonth) ? null : parseDaysOfMonth(dayOfMonth);
+        this.years = isWildcard(year) ? null : parseYears(year);
+
+        // 7 is Sunday too
+        long days = parse("dayOfWeek", dayOfWeek, 0, 7, DAYS, false);
+        if ((days & (1L << 7)) != 0) days = (days | 1L) & ~(1L << 7);
+        this.daysOfWeek = isWildcard(dayOfWeek) ? -1 : days;
+    }
+
+    /**
+     * @throws IllegalArgumentException if an attribute is not a valid expression or the time zone is unknown
+     */
+    public static CompiledSchedule of(Schedule schedule) {
+        return of(schedule.second(), schedule.minute(), schedule.hour(), schedule.dayOfMonth(), schedule.month(), schedule.dayOfWeek(), schedule.year(), schedule.timezone());
+    }
+
+    /**
+     * @param timezone a TimeZone id, or the empty string for the default time zone
+     * @throws IllegalArgumentException if an attribute is not a valid expression
+     */
+    public static CompiledSchedule of(String second, String minute, String hour, String dayOfMonth, String month, String dayOfWeek, String year, String timezone) {
+        final String expression = "second=" + second + " minute=" + minute + " hour=" + hour + " dayOfMonth=" + dayOfMonth
+                + " month=" + month + " dayOfWeek=" + dayOfWeek + " year=" + year + " timezone=" + timezone;
+
+        CompiledSchedule schedule = schedules.get(expression);
+        if (schedule == null) {
+            schedule = new CompiledSchedule(expression, second, minute, hour, dayOfMonth, month, dayOfWeek, year, timezone);
+
+            final CompiledSchedule existing = schedules.putIfAbsent(expression, schedule);
+            if (existing != null) schedule = existing;
+        }
+        return schedule;
+    }
+
+    /**
+     * The time zone of the schedule, the current default one if it names none
+     */
+    public TimeZone getTimeZone() {
+        return (timeZone == null) ? TimeZone.getDefault() : (TimeZone) timeZone.clone();
+    }
+
+    /**
+     * The first time the schedule fires strictly after the given time, or -1 if it never does again
+     */
+    public long next(long after) {
+        final TimeZone timeZone = (this.timeZone == null) ? TimeZone.getDefault() : this.timeZone;
+
+        // whole seconds only, so the earliest candidate is the next one
+        long time = floorDiv(after, 1000L) * 1000L + 1000L;
+        long local = time + timeZone.getOffset(time);
+
+        final long epochDay = floorDiv(local, DAY);
+        int secondOfDay = (int) (floorMod(local, DAY) / 1000L);
+
+        // civil from days, see http://howardhinnant.github.io/date_algorithms.html
+        final long z = epochDay + 719468;
+        final long era = floorDiv(z, 146097);
+        final long doe = z - era * 146097;
+        final long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final long mp = (5 * doy + 2) / 153;
+
+        int d = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int m = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int y = (int) (yoe + era * 400 + (m <= 2 ? 1 : 0));
+
+        int h = secondOfDay / 3600;
+        int mi = (secondOfDay / 60) % 60;
+        int s = secondOfDay % 60;
+
+        final int limit = (years == null) ? y + YEARS : years[years.length - 1];
+
+        while (y <= limit) {
+            if (years != null) {
+                int i = Arrays.binarySearch(years, y);
+                if (i < 0) {
+                    i = -i - 1;
+                    if (i == years.length) return -1;
+
+                    y = years[i];
+                    m = 1;
+                    d = 1;
+                    h = mi = s = 0;
+                }
+            }
+
+            final int month = nextBit(months, m);
+            if (month < 0) {
+                y++;
+                m = 1;
+                d = 1;
+                h = mi = s = 0;
+                continue;
+            }
+            if (month != m) {
+                m = month;
+                d = 1;
+                h = mi = s = 0;
+            }
+
+            final int day = nextBit(days(y, m), d);
+            if (day < 0) {
+                m++;
+                d = 1;
+                h = mi = s = 0;
+                continue;
+            }
+            if (day != d) {
+                d = day;
+                h = mi = s = 0;
+            }
+
+            final int hour = nextBit(hours, h);
+            if (hour < 0) {
+                d++;
+                h = mi = s = 0;
+                continue;
+            }
+            if (hour != h) {
+                h = hour;
+                mi = s = 0;
+            }
+
+            final int minute = nextBit(minutes, mi);
+            if (minute < 0) {
+                h++;
+                mi = s = 0;
+                continue;
+            }
+            if (minute != mi) {
+                mi = minute;
+                s = 0;
+            }
+
+            final int second = nextBit(seconds, s);
+            if (second < 0) {
+                mi++;
+                s = 0;
+                continue;
+            }
+            s = second;
+
+            local = (epochDay(y, m, d) * 86400L + h * 3600L + mi * 60L + s) * 1000L;
+
+            // the first of two times a clock set back shows twice, shifted forward if a clock set forward skips it
+            final long early = local - timeZone.getOffset(local - timeZone.getRawOffset() - timeZone.getDSTSavings());
+            final long late = local - timeZone.getOffset(local - timeZone.getRawOffset());
+
+            if (early > after && early + timeZone.getOffset(early) == local) {
+                time = early;
+            } else if (late + timeZone.getOffset(late) == local) {
+                time = late;
+            } else {
+                time = Math.max(early, late);
+            }
+
+            if (time <= after) {
+                s++;
+                continue;
+            }
+
+            return time;
+        }
+
+        return -1;
+    }
+
+    /**
+     * The next fire time of each schedule after the same time, -1 for those that never fire again
+     */
+    public static void next(CompiledSchedule[] schedules, long after, long[] next) {
+        for (int i = 0; i < schedules.length; i++) {
+            next[i] = schedules[i].next(after);
+        }
+    }
+
+    /**
+     * The next fire time of each schedule after its own last one, -1 for those that never fire again
+     */
+    public static void next(CompiledSchedule[] schedules, long[] after, long[] next) {
+        for (int i = 0; i < schedules.length; i++) {
+            next[i] = schedules[i].next(after[i]);
+        }
+    }
+
+    public String toString() {
+        return expression;
+    }
+
+    /**
+     * The matching days of the month as bits 1 to 31
+     */
+    private long days(int y, int m) {
+        final int length = length(y, m);
+        final int first = (int) floorMod(epochDay(y, m, 1) + 4, 7);
+
+        long weekdays = 0;
+        if (daysOfWeek != -1) {
+            for (int d = 1; d <= length; d++) {
+                if ((daysOfWeek & (1L << ((first + d - 1) % 7))) != 0) weekdays |= 1L << d;
+            }
+        }
+
+        long monthdays = 0;
+        if (daysOfMonth != null) {
+            for (int i = 0; i < daysOfMonth.length; i += 2) {
+                final int from = day(daysOfMonth[i], length, first);
+                final int to = (daysOfMonth[i] == daysOfMonth[i + 1]) ? from : day(end(daysOfMonth[i + 1], length), length, first);
+                if (to == 0) continue;
+
+                if (from == 0) {
+                    // a wrapping range starting past the last day still covers the first days, as "31-2" in April
+                    if (isDay(daysOfMonth[i]) && isDay(daysOfMonth[i + 1]) && daysOfMonth[i] > daysOfMonth[i + 1]) monthdays |= range(1, to);
+                    continue;
+                }
+
+                if (from <= to) {
+                    monthdays |= range(from, to);
+                } else {
+                    monthdays |= range(from, length) | range(1, to);
+                }
+            }
+        }
+
+        if (daysOfMonth == null && daysOfWeek == -1) return range(1, length);
+        if (daysOfMonth == null) return weekdays;
+        if (daysOfWeek == -1) return monthdays;
+
+        return monthdays | weekdays;
+    }
+
+    /**
+     * The day a dayOfMonth reference stands for in a month, 0 if there is none
+     */
+    private static int day(int reference, int length, int first) {
+        if (reference >= NTH) {
+            final int ordinal = (reference - NTH) / 10;
+            final int weekday = (reference - NTH) % 10;
+
+            final int day = 1 + (int) floorMod(weekday - first, 7);
+            if (ordinal == ORDINALS.length) return day + 7 * ((length - day) / 7);
+
+            final int nth = day + 7 * (ordinal - 1);
+            return (nth <= length) ? nth : 0;
+        }
+
+        if (reference <= 0) return length + reference;
+
+        return (reference <= length) ? reference : 0;
+    }
+
+    /**
+     * True for the absolute days 1 to 31
+     */
+    private static boolean isDay(int reference) {
+        return reference > 0 && reference < NTH;
+    }
+
+    /**
+     * Ranges ending past the last day end on it, as "15-31" in February
+     */
+    private static int end(int reference, int length) {
+        return (reference > length && reference < NTH) ? length : reference;
+    }
+
+    private static long range(int from, int to) {
+        return (-1L << from) & (-1L >>> (63 - to));
+    }
+
+    private static int nextBit(long bits, int from) {
+        if (from > 63) return -1;
+
+        final long remaining = bits & (-1L << from);
+        return (remaining == 0) ? -1 : Long.numberOfTrailingZeros(remaining);
+    }
+
+    private static long epochDay(int y, int m, int d) {
+        final long year = (m <= 2) ? y - 1 : y;
+        final long era = floorDiv(year, 400);
+        final long yoe = year - era * 400;
+        final long doy = (153 * (m > 2 ? m - 3 : m + 9) + 2) / 5 + d - 1;
+        final long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    private static int length(int y, int m) {
+        if (m == 2) return ((y % 4 == 0 && y % 100 != 0) || y % 400 == 0) ? 29 : 28;
+        return (m == 4 || m == 6 || m == 9 || m == 11) ? 30 : 31;
+    }
+
+    private static long floorDiv(long x, long y) {
+        final long q = x / y;
+        return ((x % y != 0) && ((x ^ y) < 0)) ? q - 1 : q;
+    }
+
+    private static long floorMod(long x, long y) {
+        return x - floorDiv(x, y) * y;
+    }
+
+    private static boolean isWildcard(String expression) {
+        return expression.trim().equals("*");
+    }
+
+    private static TimeZone timeZone(String id) {
+        final TimeZone timeZone = TimeZone.getTimeZone(id);
+
+        // unknown ids silently come back as GMT
+        if ("GMT".equals(timeZone.getID()) && !"GMT".equals(id) && !CUSTOM_ZONE.matcher(id).matches()) {
+            throw new IllegalArgumentException("Unknown timezone " + id);
+        }
+
+        return timeZone;
+    }
+
+    private static long parse(String field, String expression, int min, int max, String[] names, boolean increments) {
+        if (isWildcard(expression)) return range(min, max);
+
+        long bits = 0;
+        for (String item : items(field, expression)) {
+            final int slash = item.indexOf('/');
+            final int dash = item.indexOf('-');
+
+            if (slash >= 0) {
+                if (!increments) throw invalid(field, expression);
+
+                final String start = item.substring(0, slash).trim();
+                final int from = start.equals("*") ? min : value(field, start, min, max, names);
+                final int step = value(field, item.substring(slash + 1).trim(), 1, max, null);
+
+                for (int i = from; i <= max; i += step) {
+                    bits |= 1L << i;
+                }
+            } else if (dash > 0) {
+                final int from = value(field, item.substring(0, dash).trim(), min, max, names);
+                final int to = value(field, item.substring(dash + 1).trim(), min, max, names);
+
+                bits |= (from <= to) ? range(from, to) : range(from, max) | range(min, to);
+            } else {
+                bits |= 1L << value(field, item, min, max, names);
+            }
+        }
+        return bits;
+    }
+
+    private static int[] parseDaysOfMonth(String expression) {
+        final String[] items = items("dayOfMonth", expression);
+        final int[] references = new int[items.length * 2];
+
+        for (int i = 0; i < items.length; i++) {
+            final String item = items[i];
+
+            // skips the sign of "-3"
+            final int dash = item.indexOf('-', 1);
+
+            if (dash > 0) {
+                references[2 * i] = reference(item.substring(0, dash).trim(), expression);
+                references[2 * i + 1] = reference(item.substring(dash + 1).trim(), expression);
+            } else {
+                references[2 * i] = references[2 * i + 1] = reference(item, expression);
+            }
+        }
+        return references;
+    }
+
+    private static int reference(String item, String expression) {
+        final String lower = item.toLowerCase();
+
+        if (lower.equals("last")) return 0;
+
+        final String[] words = lower.split("\\s+");
+        if (words.length == 2) {
+            final int ordinal = Arrays.asList(ORDINALS).indexOf(words[0]);
+            final int weekday = Arrays.asList(DAYS).indexOf(words[1]);
+            if (ordinal < 0 || weekday < 0) throw invalid("dayOfMonth", expression);
+
+            return NTH + (ordinal + 1) * 10 + weekday;
+        }
+
+        if (lower.startsWith("-")) return -value("dayOfMonth", lower.substring(1), 1, 7, null);
+
+        return value("dayOfMonth", lower, 1, 31, null);
+    }
+
+    private static int[] parseYears(String expression) {
+        final TreeSet<Integer> set = new TreeSet<Integer>();
+
+        for (String item : items("year", expression)) {
+            final int dash = item.indexOf('-');
+
+            if (dash > 0) {
+                final int from = value("year", item.substring(0, dash).trim(), 1000, 9999, null);
+                final int to = value("year", item.substring(dash + 1).trim(), from, 9999, null);
+
+                for (int year = from; year <= to; year++) {
+                    set.add(year);
+                }
+            } else {
+                set.add(value("year", item, 1000, 9999, null));
+            }
+        }
+
+        final int[] years = new int[set.size()];
+        int i = 0;
+        for (Integer year : set) {
+            years[i++] = year;
+        }
+        return years;
+    }
+
+    private static String[] items(String field, String expression) {
+        final String[] items = expression.split(",");
+        for (int i = 0; i < items.length; i++) {
+            items[i] = items[i].trim();
+            if (items[i].length() == 0) throw invalid(field, expression);
+        }
+        return items;
+    }
+
+    private static int value(String field, String value, int min, int max, String[] names) {
+        int i = -1;
+
+        if (names != null) {
+            i = Arrays.asList(names).indexOf(value.toLowerCase());
+            if (i >= 0) i += min;
+        }
+
+        if (i < 0) {
+            try {
+                i = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw invalid(field, value);
+            }
+        }
+
+        if (i < min || i > max) throw invalid(field, value);
+        return i;
+    }
+
+    private static IllegalArgumentException invalid(String field, String expression) {
+        return new IllegalArgumentException("Invalid " + field + " expression: " + expression);
+    }
+}
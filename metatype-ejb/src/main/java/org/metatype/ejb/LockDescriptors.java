@@ -0,0 +1,177 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.ejb;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.ejb.AccessTimeout;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
+
+/**
+ * The lock type and access timeout of every business method of a singleton
+ * bean class, resolved once per class through ReadLock, WriteLock, AwaitForever,
+ * AwaitNever or any other metatypes.  A method's own annotations win over those
+ * of the class declaring it.  Without any, methods take a WRITE lock and the
+ * container's default timeout.
+ * <p/>
+ * Methods are numbered as in {@link TransactionAttributes}, each invocation is
+ * then a single array read.  Equal descriptors are the same instance.
+ *
+ * @author David Blevins
+ */
+public final class LockDescriptors {
+
+    private static final ClassValue<LockDescriptors> descriptors = new ClassValue<LockDescriptors>() {
+        @Override
+        protected LockDescriptors computeValue(Class<?> type) {
+            return new LockDescriptors(BusinessMethods.of(type));
+        }
+    };
+
+    private final BusinessMethods methods;
+    private final Descriptor[] table;
+
+    private LockDescriptors(BusinessMethods methods) {
+        this.methods = methods;
+        this.table = new Descriptor[methods.size()];
+
+        final Map<Descriptor, Descriptor> canonical = new HashMap<Descriptor, Descriptor>();
+
+        for (int i = 0; i < table.length; i++) {
+            final Method method = methods.get(i);
+
+            final Lock lock = BusinessMethods.resolve(method, Lock.class);
+            final AccessTimeout timeout = BusinessMethods.resolve(method, AccessTimeout.class);
+
+            final Descriptor descriptor = new Descriptor((lock == null) ? LockType.WRITE : lock.value(), timeout);
+
+            final Descriptor existing = canonical.get(descriptor);
+            if (existing == null) {
+                canonical.put(descriptor, descriptor);
+                table[i] = descriptor;
+            } else {
+                table[i] = existing;
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if metatypes at the same depth give a method two different locks or timeouts
+     */
+    public static LockDescriptors of(Class<?> beanClass) {
+        return descriptors.get(beanClass);
+    }
+
+    /**
+     * The business methods, a method's position in the list is its id
+     */
+    public List<Method> getMethods() {
+        return methods.list();
+    }
+
+    /**
+     * The id of the method, or -1 if it is not a business method of the bean
+     */
+    public int id(Method method) {
+        return methods.id(method);
+    }
+
+    public Descriptor get(int id) {
+        return table[id];
+    }
+
+    /**
+     * The descriptor of the method, null if it is not a business method of the bean
+     */
+    public Descriptor get(Method method) {
+        final int id = methods.id(method);
+        return (id < 0) ? null : table[id];
+    }
+
+    /**
+     * The lock a call takes and how long it waits for it
+     */
+    public static final class Descriptor {
+        private final LockType lockType;
+        private final boolean timeout;
+        private final long value;
+        private final TimeUnit unit;
+
+        private Descriptor(LockType lockType, AccessTimeout timeout) {
+            this.lockType = lockType;
+            this.timeout = timeout != null;
+            this.value = (timeout == null) ? 0 : timeout.value();
+            this.unit = (timeout == null) ? null : timeout.unit();
+        }
+
+        public LockType getLockType() {
+            return lockType;
+        }
+
+        /**
+         * Whether an access timeout was given, if not the container default applies
+         */
+        public boolean hasTimeout() {
+            return timeout;
+        }
+
+        /**
+         * The access timeout, -1 to wait forever and 0 to not wait at all
+         */
+        public long getTimeout() {
+            return value;
+        }
+
+        /**
+         * The unit of the access timeout, null if none was given
+         */
+        public TimeUnit getUnit() {
+            return unit;
+        }
+
+        public boolean isAwaitForever() {
+            return timeout && value == -1;
+        }
+
+        public boolean isAwaitNever() {
+            return timeout && value == 0;
+        }
+
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (!(obj instanceof Descriptor)) return false;
+
+            final Descriptor other = (Descriptor) obj;
+            return lockType == other.lockType && timeout == other.timeout && value == other.value && unit == other.unit;
+        }
+
+        public int hashCode() {
+            int hash = lockType.hashCode();
+            hash = 31 * hash + (int) (value ^ (value >>> 32));
+            hash = 31 * hash + ((unit == null) ? 0 : unit.hashCode());
+            return hash;
+        }
+
+        public String toString() {
+            return lockType + (timeout ? " " + value + " " + unit : "");
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.ejb;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.ejb.Schedule;
+import javax.ejb.Schedules;
+
+import org.metatype.MetaAnnotatedClass;
+import org.metatype.MetaAnnotatedClasses;
+import org.metatype.MetaAnnotatedMethod;
+import org.metatype.MetaAnnotation;
+import org.metatype.scan.MetatypeScanner;
+import org.metatype.scan.ScannedElement;
+
+/**
+ * Every automatic timer of a deployment with its next timeout, ordered by that
+ * timeout, ready to be put in a timer wheel in one pass.
+ * <p/>
+ * A method gets a timer for each Schedule it carries after unrolling, whether
+ * directly, in a Schedules list or through metatypes such as Daily and their
+ * "$" definitions.  Schedules that metatypes bring in at the same depth are
+ * kept side by side.  Schedules that never fire again are left out.
+ * <p/>
+ * As in a container, a bean also gets the timers of its superclasses' methods,
+ * unless it overrides them.  Abstract classes and interfaces are not beans,
+ * their timers are only indexed for their concrete subclasses.
+ *
+ * @author David Blevins
+ */
+public final class TimerIndex {
+
+    private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+        public int compare(Entry a, Entry b) {
+            if (a.nextTimeout != b.nextTimeout) return (a.nextTimeout < b.nextTimeout) ? -1 : 1;
+
+            int i = a.beanClass.getName().compareTo(b.beanClass.getName());
+            if (i != 0) return i;
+
+            i = a.method.toString().compareTo(b.method.toString());
+            return (i != 0) ? i : a.compiled.toString().compareTo(b.compiled.toString());
+        }
+    };
+
+    private final List<Entry> timers;
+
+    private TimerIndex(List<Entry> timers) {
+        this.timers = timers;
+    }
+
+    /**
+     * Indexes the methods of the concrete classes and of their superclasses, resolving
+     * the classes in parallel with {@link MetaAnnotatedClasses#resolve(Collection)}
+     *
+     * @param after the time the next timeouts are computed from
+     * @throws IllegalArgumentException if a schedule is not valid
+     */
+    public static TimerIndex of(Collection<? extends Class<?>> classes, long after) {
+        final Map<MetaAnnotatedMethod, Set<Schedule>> resolved = new HashMap<MetaAnnotatedMethod, Set<Schedule>>();
+
+        final List<Class<?>> beans = new ArrayList<Class<?>>();
+        final List<MetaAnnotatedMethod> methods = new ArrayList<MetaAnnotatedMethod>();
+        final List<Schedule> schedules = new ArrayList<Schedule>();
+
+        for (MetaAnnotatedClass<?> bean : MetaAnnotatedClasses.resolve(classes)) {
+            if (bean.isInterface() || Modifier.isAbstract(bean.getModifiers())) continue;
+
+            final List<Method> declared = new ArrayList<Method>();
+
+            for (MetaAnnotatedClass<?> clazz = bean; clazz != null && clazz.get() != Object.class; clazz = clazz.getSuperclass()) {
+                for (MetaAnnotatedMethod method : clazz.getDeclaredMethods()) {
+                    if (isOverridden(method.get(), declared)) continue;
+                    declared.add(method.get());
+
+                    Set<Schedule> scheduled = resolved.get(method);
+                    if (scheduled == null) {
+                        scheduled = schedules(method);
+                        resolved.put(method, scheduled);
+                    }
+
+                    for (Schedule schedule : scheduled) {
+                        beans.add(bean.get());
+                        methods.add(method);
+                        schedules.add(schedule);
+                    }
+                }
+            }
+        }
+
+        final int count = schedules.size();
+        final CompiledSchedule[] compiled = new CompiledSchedule[count];
+        for (int i = 0; i < count; i++) {
+            compiled[i] = CompiledSchedule.of(schedules.get(i));
+        }
+
+        final long[] next = new long[count];
+        CompiledSchedule.next(compiled, after, next);
+
+        final List<Entry> timers = new ArrayList<Entry>(count);
+        for (int i = 0; i < count; i++) {
+            if (next[i] < 0) continue;
+
+            timers.add(new Entry(beans.get(i), methods.get(i), schedules.get(i), compiled[i], next[i]));
+        }
+
+        Collections.sort(timers, ORDER);
+
+        return new TimerIndex(Collections.unmodifiableList(timers));
+    }
+
+    /**
+     * Scans the jar for methods with schedules, then loads, without initializing,
+     * and indexes only the classes declaring them and the classes of the jar that
+     * extend those, so a subclass that only inherits its timers gets them too.
+     *
+     * @param after the time the next timeouts are computed from
+     * @throws IllegalArgumentException if a schedule is not valid
+     */
+    public static TimerIndex of(File jar, ClassLoader loader, long after) throws IOException, ClassNotFoundException {
+        final MetatypeScanner scanner = new MetatypeScanner(loader).add(jar);
+
+        final Set<String> names = new LinkedHashSet<String>();
+        for (ScannedElement element : scanner.scan()) {
+            if (element.getKind() != ScannedElement.Kind.METHOD) continue;
+
+            if (element.isAnnotationPresent(Schedule.class.getName()) || element.isAnnotationPresent(Schedules.class.getName())) {
+                names.add(element.getClassName());
+            }
+        }
+
+        for (String name : new ArrayList<String>(names)) {
+            names.addAll(scanner.subclasses(name));
+        }
+
+        final List<Class<?>> classes = new ArrayList<Class<?>>(names.size());
+        for (String name : names) {
+            classes.add(Class.forName(name, false, loader));
+        }
+
+        return of(classes, after);
+    }
+
+    /**
+     * The timers, earliest timeout first
+     */
+    public List<Entry> getTimers() {
+        return timers;
+    }
+
+    public int size() {
+        return timers.size();
+    }
+
+    private static Set<Schedule> schedules(MetaAnnotatedMethod method) {
+        final Set<Schedule> schedules = new LinkedHashSet<Schedule>();
+
+        for (MetaAnnotation<?> metaAnnotation : method.getMetaAnnotations()) {
+            final Class<? extends Annotation> type = metaAnnotation.get().annotationType();
+            if (type != Schedule.class && type != Schedules.class) continue;
+
+            add(schedules, metaAnnotation.get());
+            for (MetaAnnotation<?> conflict : metaAnnotation.getConflicts()) {
+                add(schedules, conflict.get());
+            }
+        }
+
+        return schedules;
+    }
+
+    /**
+     * Whether a method of a subclass overrides this one.  Private methods are
+     * never overridden, package-private ones only from within their package.
+     */
+    private static boolean isOverridden(Method method, List<Method> declared) {
+        final int modifiers = method.getModifiers();
+        if (Modifier.isPrivate(modifiers) || Modifier.isStatic(modifiers)) return false;
+
+        final boolean packagePrivate = !Modifier.isPublic(modifiers) && !Modifier.isProtected(modifiers);
+
+        for (Method candidate : declared) {
+            if (Modifier.isStatic(candidate.getModifiers())) continue;
+            if (!candidate.getName().equals(method.getName())) continue;
+            if (!Arrays.equals(candidate.getParameterTypes(), method.getParameterTypes())) continue;
+            if (packagePrivate && !packageName(candidate).equals(packageName(method))) continue;
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private static String packageName(Method method) {
+        final String name = method.getDeclaringClass().getName();
+        final int dot = name.lastIndexOf('.');
+        return (dot < 0) ? "" : name.substring(0, dot);
+    }
+
+    private static void add(Set<Schedule> schedules, Annotation annotation) {
+        if (annotation instanceof Schedule) {
+            schedules.add((Schedule) annotation);
+        } else {
+            schedules.addAll(Arrays.asList(((Schedules) annotation).value()));
+        }
+    }
+
+    /**
+     * A bean, one of its methods, one of the method's schedules and the
+     * schedule's next timeout
+     */
+    public static final class Entry {
+        private final Class<?> beanClass;
+        private final MetaAnnotatedMethod method;
+        private final Schedule schedule;
+        private final CompiledSchedule compiled;
+        private final long nextTimeout;
+
+        private Entry(Class<?> beanClass, MetaAnnotatedMethod method, Schedule schedule, CompiledSchedule compiled, long nextTimeout) {
+            this.beanClass = beanClass;
+            this.method = method;
+            this.schedule = schedule;
+            this.compiled = compiled;
+            this.nextTimeout = nextTimeout;
+        }
+
+        /**
+         * The indexed class, which may be a subclass of the method's declaring class
+         */
+        public Class<?> getBeanClass() {
+            return beanClass;
+        }
+
+        public MetaAnnotatedMethod getMethod() {
+            return method;
+        }
+
+        /**
+         * The resolved schedule, for its info and persistent attributes
+         */
+        public Schedule getSchedule() {
+            return schedule;
+        }
+
+        public CompiledSchedule getCompiledSchedule() {
+            return compiled;
+        }
+
+        public long getNextTimeout() {
+            return nextTimeout;
+        }
+
+        public String toString() {
+            return beanClass.getName() + " " + method + " " + compiled + " " + nextTimeout;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.ejb;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+
+/**
+ * The container managed transaction attribute of every business method of a
+ * bean class, resolved once per class through the metatypes of javax.ejb.meta
+ * or any others.  A method's own attribute wins over the one of the class
+ * declaring it, REQUIRED is the default.
+ * <p/>
+ * Look the method id up once when wiring the interceptor chain, each invocation
+ * is then a single array read:
+ * <pre>
+ * final TransactionAttributes attributes = TransactionAttributes.of(beanClass);
+ * final int id = attributes.id(method);
+ * ...
+ * final TransactionAttributeType type = attributes.get(id);
+ * </pre>
+ *
+ * @author David Blevins
+ */
+public final class TransactionAttributes {
+
+    private static final ClassValue<TransactionAttributes> attributes = new ClassValue<TransactionAttributes>() {
+        @Override
+        protected TransactionAttributes computeValue(Class<?> type) {
+            return new TransactionAttributes(BusinessMethods.of(type));
+        }
+    };
+
+    private final BusinessMethods methods;
+    private final TransactionAttributeType[] types;
+
+    private TransactionAttributes(BusinessMethods methods) {
+        this.methods = methods;
+        this.types = new TransactionAttributeType[methods.size()];
+
+        for (int i = 0; i < types.length; i++) {
+            final TransactionAttribute attribute = BusinessMethods.resolve(methods.get(i), TransactionAttribute.class);
+            types[i] = (attribute == null) ? TransactionAttributeType.REQUIRED : attribute.value();
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if metatypes at the same depth give a method two different attributes
+     */
+    public static TransactionAttributes of(Class<?> beanClass) {
+        return attributes.get(beanClass);
+    }
+
+    /**
+     * The business methods, a method's position in the list is its id
+     */
+    public List<Method> getMethods() {
+        return methods.list();
+    }
+
+    /**
+     * The id of the method, or -1 if it is not a business method of the bean
+     */
+    public int id(Method method) {
+        return methods.id(method);
+    }
+
+    public TransactionAttributeType get(int id) {
+        return types[id];
+    }
+
+    /**
+     * The attribute of the method, null if it is not a business method of the bean
+     */
+    public TransactionAttributeType get(Method method) {
+        final int id = methods.id(method);
+        return (id < 0) ? null : types[id];
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import static java.lang.annotation.ElementType.ANNOTATION_TYPE;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.io.File;
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Metatype;
+import javax.ejb.meta.TxRequired;
+
+import junit.framework.TestCase;
+
+/**
+ * The closures the metatype-processor wrote for this module must be the ones
+ * reflection computes, down to which instance wins a tie.  Lives in the
+ * org.metatype package to reach both paths.
+ *
+ * @author David Blevins
+ */
+public class PrecomputedClosuresTest extends TestCase {
+
+    public void testEjbMetatypes() throws Exception {
+        final File dir = new File(new File(TxRequired.class.getProtectionDomain().getCodeSource().getLocation().toURI()), "javax/ejb/meta");
+
+        final List<Class<? extends Annotation>> types = new ArrayList<Class<? extends Annotation>>();
+        for (String name : dir.list()) {
+            if (!name.endsWith(".class") || name.contains("$")) continue;
+
+            types.add(Class.forName("javax.ejb.meta." + name.substring(0, name.length() - ".class".length())).asSubclass(Annotation.class));
+        }
+
+        assertTrue(types.size() > 20);
+
+        for (Class<? extends Annotation> type : types) {
+            assertClosure(type);
+        }
+    }
+
+    public void testTies() throws Exception {
+        assertClosure(Mixed.class);
+        assertClosure(Dual.class);
+        assertClosure(Layered.class);
+
+        // Cool sorts before Warm
+        final MetaAnnotation<?> tone = PrecomputedClosures.load(Mixed.class).get(Tone.class);
+        assertEquals("cool", ((Tone) tone.get()).value());
+        assertEquals("warm", ((Tone) tone.getConflicts().get(0).get()).value());
+
+        // method:b() sorts after method:a() and wins
+        assertEquals("b", ((Tone) PrecomputedClosures.load(Dual.class).get(Tone.class).get()).value());
+    }
+
+    private static void assertClosure(Class<? extends Annotation> type) {
+        final Map<Class<? extends Annotation>, MetaAnnotation<?>> precomputed = PrecomputedClosures.load(type);
+        assertNotNull(type.getName(), precomputed);
+
+        final Map<Class<? extends Annotation>, MetaAnnotation<?>> reflected = MetaAnnotatedObject.reflect(type);
+
+        assertEquals(type.getName(), new ArrayList<Class<? extends Annotation>>(reflected.keySet()), new ArrayList<Class<? extends Annotation>>(precomputed.keySet()));
+
+        for (Map.Entry<Class<? extends Annotation>, MetaAnnotation<?>> entry : reflected.entrySet()) {
+            final MetaAnnotation<?> expected = entry.getValue();
+            final MetaAnnotation<?> actual = precomputed.get(entry.getKey());
+
+            assertEquals(type.getName(), expected.getDepth(), actual.getDepth());
+            assertSame(type.getName(), expected.get(), actual.get());
+            assertEquals(type.getName(), expected.getConflicts().size(), actual.getConflicts().size());
+
+            final Iterator<? extends MetaAnnotation<?>> conflicts = actual.getConflicts().iterator();
+            for (MetaAnnotation<?> conflict : expected.getConflicts()) {
+                assertSame(type.getName(), conflict.get(), conflicts.next().get());
+            }
+        }
+    }
+
+    @Target({TYPE, METHOD, ANNOTATION_TYPE})
+    @Retention(RUNTIME)
+    public static @interface Tone {
+        String value();
+    }
+
+    @Metatype
+    @Tone("warm")
+    @Target({TYPE, ANNOTATION_TYPE})
+    @Retention(RUNTIME)
+    public static @interface Warm {
+    }
+
+    @Metatype
+    @Tone("cool")
+    @Target({TYPE, ANNOTATION_TYPE})
+    @Retention(RUNTIME)
+    public static @interface Cool {
+    }
+
+    @Metatype
+    @Warm
+    @Cool
+    @Target({TYPE, ANNOTATION_TYPE})
+    @Retention(RUNTIME)
+    public static @interface Mixed {
+    }
+
+    @Metatype
+    @Target(METHOD)
+    @Retention(RUNTIME)
+    public static @interface Dual {
+        public static class $ {
+
+            @Dual
+            @Tone("b")
+            public void b() {
+            }
+
+            @Dual
+            @Tone("a")
+            public void a() {
+            }
+        }
+    }
+
+    @Metatype
+    @Mixed
+    @Tone("layered")
+    @Target(TYPE)
+    @Retention(RUNTIME)
+    public static @interface Layered {
+    }
+}
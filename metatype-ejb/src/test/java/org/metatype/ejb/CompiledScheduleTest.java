@@ -0,0 +1,236 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.ejb;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import javax.ejb.Schedule;
+import javax.ejb.meta.Daily;
+import javax.ejb.meta.Monthly;
+import javax.ejb.meta.Weekly;
+
+import junit.framework.TestCase;
+
+import org.metatype.MetaAnnotatedMethod;
+
+/**
+ * @author David Blevins
+ */
+public class CompiledScheduleTest extends TestCase {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    public void testMetatypes() throws Exception {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2011, Calendar.MAY, 18, 13, 45, 10);
+        final long after = calendar.getTimeInMillis();
+
+        final CompiledSchedule daily = CompiledSchedule.of(schedule("daily"));
+        assertSame(daily, CompiledSchedule.of(schedule("daily")));
+
+        calendar.set(2011, Calendar.MAY, 19, 0, 0, 0);
+        assertEquals(calendar.getTimeInMillis(), daily.next(after));
+
+        // Wednesday the 18th, next Sunday is the 22nd
+        calendar.set(2011, Calendar.MAY, 22, 0, 0, 0);
+        assertEquals(calendar.getTimeInMillis(), CompiledSchedule.of(schedule("weekly")).next(after));
+
+        calendar.set(2011, Calendar.JUNE, 1, 0, 0, 0);
+        assertEquals(calendar.getTimeInMillis(), CompiledSchedule.of(schedule("monthly")).next(after));
+    }
+
+    public void testDaysOfMonth() throws Exception {
+        final long after = utc(2011, 5, 20, 6, 0, 0);
+
+        assertEquals(utc(2011, 5, 21, 5, 30, 0), schedule("15-Last", "*", "*").next(after));
+        assertEquals(utc(2011, 6, 15, 5, 30, 0), schedule("15-Last", "*", "*").next(utc(2011, 5, 31, 6, 0, 0)));
+        assertEquals(utc(2011, 5, 31, 5, 30, 0), schedule("Last", "*", "*").next(after));
+        assertEquals(utc(2011, 5, 28, 5, 30, 0), schedule("-3", "*", "*").next(after));
+        assertEquals(utc(2011, 5, 27, 5, 30, 0), schedule("Last Fri", "*", "*").next(after));
+        assertEquals(utc(2011, 6, 14, 5, 30, 0), schedule("2nd Tue", "*", "*").next(after));
+        assertEquals(utc(2011, 5, 30, 5, 30, 0), schedule("5th Mon", "*", "*").next(after));
+
+        // ranges past the last day end on it
+        assertEquals(utc(2011, 2, 28, 5, 30, 0), schedule("28-31", "2", "*").next(utc(2011, 2, 1, 0, 0, 0)));
+
+        // ranges wrapping into the next month, April has no 31st but still its 1st and 2nd
+        assertEquals(utc(2011, 4, 1, 5, 30, 0), schedule("31-2", "*", "*").next(utc(2011, 3, 31, 6, 0, 0)));
+        assertEquals(utc(2011, 5, 1, 5, 30, 0), schedule("31-2", "*", "*").next(utc(2011, 4, 2, 6, 0, 0)));
+        assertEquals(utc(2011, 5, 31, 5, 30, 0), schedule("31-2", "*", "*").next(utc(2011, 5, 2, 6, 0, 0)));
+
+        // either dayOfMonth or dayOfWeek
+        assertEquals(utc(2011, 5, 22, 5, 30, 0), schedule("1", "*", "Sun").next(after));
+        assertEquals(utc(2011, 6, 1, 5, 30, 0), schedule("1", "*", "Sun").next(utc(2011, 5, 29, 6, 0, 0)));
+
+        // 7 is Sunday too
+        assertEquals(utc(2011, 5, 22, 5, 30, 0), schedule("*", "*", "7").next(after));
+    }
+
+    public void testYears() throws Exception {
+        final CompiledSchedule leap = CompiledSchedule.of("0", "0", "0", "29", "Feb", "*", "*", "UTC");
+        assertEquals(utc(2012, 2, 29, 0, 0, 0), leap.next(utc(2011, 3, 1, 0, 0, 0)));
+        assertEquals(utc(2016, 2, 29, 0, 0, 0), leap.next(utc(2012, 2, 29, 0, 0, 0)));
+
+        final CompiledSchedule years = CompiledSchedule.of("0", "0", "12", "1", "Jan", "*", "2013, 2015-2016", "UTC");
+        assertEquals(utc(2013, 1, 1, 12, 0, 0), years.next(utc(2011, 6, 1, 0, 0, 0)));
+        assertEquals(utc(2015, 1, 1, 12, 0, 0), years.next(utc(2013, 1, 1, 12, 0, 0)));
+        assertEquals(-1, years.next(utc(2016, 1, 1, 12, 0, 0)));
+
+        assertEquals(-1, CompiledSchedule.of("0", "0", "0", "30", "Feb", "*", "*", "UTC").next(0));
+    }
+
+    public void testTimeZone() throws Exception {
+        final CompiledSchedule tokyo = CompiledSchedule.of("0", "0", "9", "*", "*", "*", "*", "Asia/Tokyo");
+        assertEquals(utc(2011, 5, 20, 0, 0, 0), tokyo.next(utc(2011, 5, 19, 12, 0, 0)));
+        assertEquals(TimeZone.getTimeZone("Asia/Tokyo"), tokyo.getTimeZone());
+
+        // New York set its clocks back at 2am EDT, 06:00 UTC, and forward at 2am EST, 07:00 UTC
+        final CompiledSchedule hourly = CompiledSchedule.of("0", "0", "*", "*", "*", "*", "*", "America/New_York");
+        assertEquals(utc(2011, 11, 6, 5, 0, 0), hourly.next(utc(2011, 11, 6, 4, 30, 0)));
+        assertEquals(utc(2011, 3, 13, 7, 0, 0), hourly.next(utc(2011, 3, 13, 6, 30, 0)));
+        assertEquals(utc(2011, 3, 13, 7, 30, 0), CompiledSchedule.of("0", "30", "2", "*", "*", "*", "*", "America/New_York").next(utc(2011, 3, 13, 6, 30, 0)));
+
+        // no time zone follows the default, also after the schedule was built
+        final TimeZone defaultZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+            final CompiledSchedule local = CompiledSchedule.of("0", "0", "9", "*", "*", "*", "*", "");
+            assertEquals(utc(2011, 5, 20, 9, 0, 0), local.next(utc(2011, 5, 19, 12, 0, 0)));
+
+            TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+            assertEquals(utc(2011, 5, 20, 0, 0, 0), local.next(utc(2011, 5, 19, 12, 0, 0)));
+            assertEquals(TimeZone.getTimeZone("Asia/Tokyo"), local.getTimeZone());
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+
+        // ids that resolve to GMT on purpose
+        assertEquals("GMT", CompiledSchedule.of("0", "0", "*", "*", "*", "*", "*", "GMT").getTimeZone().getID());
+        assertEquals(0, CompiledSchedule.of("0", "0", "*", "*", "*", "*", "*", "GMT+0").getTimeZone().getRawOffset());
+        assertEquals("GMT+09:00", CompiledSchedule.of("0", "0", "*", "*", "*", "*", "*", "GMT+9").getTimeZone().getID());
+
+        // and one TimeZone would quietly turn into GMT
+        try {
+            CompiledSchedule.of("0", "0", "*", "*", "*", "*", "*", "Mars/Olympus_Mons");
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("Mars/Olympus_Mons"));
+        }
+    }
+
+    /**
+     * Compares the first fires against a second by second walk of a Calendar
+     */
+    public void testAgainstCalendar() throws Exception {
+        final CompiledSchedule schedule = CompiledSchedule.of("0, 30", "*/20", "9-17", "*", "*", "Mon-Fri", "*", "UTC");
+
+        final Calendar calendar = Calendar.getInstance(UTC);
+        calendar.setTimeInMillis(utc(2011, 12, 30, 16, 0, 0));
+
+        long fire = calendar.getTimeInMillis();
+        for (int i = 0; i < 100; i++) {
+            do {
+                calendar.add(Calendar.SECOND, 1);
+            } while (!matches(calendar));
+
+            fire = schedule.next(fire);
+            assertEquals(calendar.getTime().toString(), calendar.getTimeInMillis(), fire);
+        }
+    }
+
+    public void testBulk() throws Exception {
+        final CompiledSchedule[] schedules = {
+                CompiledSchedule.of("0", "0", "*", "*", "*", "*", "*", "UTC"),
+                CompiledSchedule.of("0", "15", "3", "*", "*", "*", "*", "UTC"),
+                CompiledSchedule.of("0", "0", "0", "1", "1", "*", "2000", "UTC")
+        };
+
+        final long[] next = new long[schedules.length];
+        CompiledSchedule.next(schedules, utc(2011, 5, 20, 6, 10, 0), next);
+
+        assertEquals(utc(2011, 5, 20, 7, 0, 0), next[0]);
+        assertEquals(utc(2011, 5, 21, 3, 15, 0), next[1]);
+        assertEquals(-1, next[2]);
+
+        CompiledSchedule.next(schedules, new long[]{next[0], next[1], utc(2000, 1, 1, 0, 0, 0)}, next);
+
+        assertEquals(utc(2011, 5, 20, 8, 0, 0), next[0]);
+        assertEquals(utc(2011, 5, 22, 3, 15, 0), next[1]);
+        assertEquals(-1, next[2]);
+    }
+
+    public void testInvalid() throws Exception {
+        assertInvalid("60", "*", "*", "*", "*");
+        assertInvalid("0", "*/0", "*", "*", "*");
+        assertInvalid("0", "*", "24", "*", "*");
+        assertInvalid("0", "*", "*", "32", "*");
+        assertInvalid("0", "*", "*", "6th Mon", "*");
+        assertInvalid("0", "*", "*", "-8", "*");
+        assertInvalid("0", "*", "*", "*", "Funday");
+        assertInvalid("0", "*", "*", "*", "1/2");
+        assertInvalid("0", "*", "*", "1,,2", "*");
+    }
+
+    private static void assertInvalid(String second, String minute, String hour, String dayOfMonth, String dayOfWeek) {
+        try {
+            CompiledSchedule.of(second, minute, hour, dayOfMonth, "*", dayOfWeek, "*", "UTC");
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+
+    private static boolean matches(Calendar calendar) {
+        final int second = calendar.get(Calendar.SECOND);
+        final int minute = calendar.get(Calendar.MINUTE);
+        final int hour = calendar.get(Calendar.HOUR_OF_DAY);
+        final int day = calendar.get(Calendar.DAY_OF_WEEK);
+
+        return (second == 0 || second == 30) && minute % 20 == 0 && hour >= 9 && hour <= 17
+                && day != Calendar.SATURDAY && day != Calendar.SUNDAY;
+    }
+
+    private static CompiledSchedule schedule(String dayOfMonth, String month, String dayOfWeek) {
+        return CompiledSchedule.of("0", "30", "5", dayOfMonth, month, dayOfWeek, "*", "UTC");
+    }
+
+    private static Schedule schedule(String method) throws NoSuchMethodException {
+        return MetaAnnotatedMethod.of(Timers.class.getMethod(method)).getAnnotation(Schedule.class);
+    }
+
+    private static long utc(int year, int month, int day, int hour, int minute, int second) {
+        final Calendar calendar = Calendar.getInstance(UTC);
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute, second);
+        return calendar.getTimeInMillis();
+    }
+
+    public static class Timers {
+        @Daily
+        public void daily() {
+        }
+
+        @Weekly
+        public void weekly() {
+        }
+
+        @Monthly
+        public void monthly() {
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.ejb;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Metatype;
+import javax.ejb.AccessTimeout;
+import javax.ejb.LockType;
+import javax.ejb.meta.AwaitForever;
+import javax.ejb.meta.AwaitNever;
+import javax.ejb.meta.ReadLock;
+import javax.ejb.meta.WriteLock;
+
+import junit.framework.TestCase;
+
+/**
+ * @author David Blevins
+ */
+public class LockDescriptorsTest extends TestCase {
+
+    public void test() throws Exception {
+        final LockDescriptors descriptors = LockDescriptors.of(Cache.class);
+        assertSame(descriptors, LockDescriptors.of(Cache.class));
+
+        // class level defaults
+        final LockDescriptors.Descriptor get = descriptors.get(Cache.class.getMethod("get", String.class));
+        assertEquals(LockType.READ, get.getLockType());
+        assertTrue(get.hasTimeout());
+        assertTrue(get.isAwaitNever());
+        assertEquals(TimeUnit.MILLISECONDS, get.getUnit());
+
+        // the method's lock wins, the timeout still comes from the class
+        final LockDescriptors.Descriptor put = descriptors.get(Cache.class.getMethod("put", String.class, Object.class));
+        assertEquals(LockType.WRITE, put.getLockType());
+        assertTrue(put.isAwaitNever());
+
+        // @Exclusive -> @WriteLock, @AwaitForever
+        final LockDescriptors.Descriptor clear = descriptors.get(Cache.class.getMethod("clear"));
+        assertEquals(LockType.WRITE, clear.getLockType());
+        assertTrue(clear.isAwaitForever());
+        assertFalse(clear.isAwaitNever());
+
+        final LockDescriptors.Descriptor size = descriptors.get(Cache.class.getMethod("size"));
+        assertEquals(LockType.READ, size.getLockType());
+        assertEquals(5, size.getTimeout());
+        assertEquals(TimeUnit.SECONDS, size.getUnit());
+
+        // inherited methods use the class declaring them, WRITE without a timeout by default
+        final LockDescriptors.Descriptor name = descriptors.get(Cache.class.getMethod("name"));
+        assertEquals(LockType.WRITE, name.getLockType());
+        assertFalse(name.hasTimeout());
+        assertNull(name.getUnit());
+
+        // equal descriptors are shared
+        assertSame(get, descriptors.get(Cache.class.getMethod("contains", String.class)));
+
+        assertEquals(-1, descriptors.id(Object.class.getMethod("toString")));
+        assertNull(descriptors.get(Object.class.getMethod("toString")));
+
+        for (int id = 0; id < descriptors.getMethods().size(); id++) {
+            assertSame(descriptors.get(descriptors.getMethods().get(id)), descriptors.get(id));
+        }
+    }
+
+    public void testConflict() throws Exception {
+        try {
+            LockDescriptors.of(Undecided.class);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Undecided"));
+        }
+    }
+
+    @Metatype
+    @WriteLock
+    @AwaitForever
+    @Target(METHOD)
+    @Retention(RUNTIME)
+    public static @interface Exclusive {
+    }
+
+    public static class Named {
+        public String name() {
+            return "";
+        }
+    }
+
+    @ReadLock
+    @AwaitNever
+    public static class Cache extends Named {
+        public Object get(String key) {
+            return null;
+        }
+
+        public boolean contains(String key) {
+            return false;
+        }
+
+        @WriteLock
+        public void put(String key, Object value) {
+        }
+
+        @Exclusive
+        public void clear() {
+        }
+
+        @AccessTimeout(value = 5, unit = TimeUnit.SECONDS)
+        public int size() {
+            return 0;
+        }
+    }
+
+    @ReadLock
+    @WriteLock
+    public static class Undecided {
+        public void run() {
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.ejb;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import javax.ejb.Schedule;
+import javax.ejb.Schedules;
+import javax.ejb.meta.Daily;
+import javax.ejb.meta.Hourly;
+import javax.ejb.meta.Monthly;
+
+import junit.framework.TestCase;
+
+import org.metatype.Jars;
+
+/**
+ * @author David Blevins
+ */
+public class TimerIndexTest extends TestCase {
+
+    public void test() throws Exception {
+        assertTimers(TimerIndex.of(Arrays.asList(Reports.class, Billing.class, Idle.class), after()));
+    }
+
+    public void testJar() throws Exception {
+        final File jar = Jars.of(Reports.class, Billing.class, Idle.class);
+        try {
+            assertTimers(TimerIndex.of(jar, getClass().getClassLoader(), after()));
+        } finally {
+            jar.delete();
+        }
+    }
+
+    public void testInherited() throws Exception {
+        final List<TimerIndex.Entry> timers = TimerIndex.of(Arrays.<Class<?>>asList(Nightly.class), after()).getTimers();
+
+        // the overridden invoice loses its @Monthly, remind keeps both schedules
+        assertEquals(timers.toString(), 3, timers.size());
+
+        assertEquals(Billing.class.getMethod("remind"), timers.get(0).getMethod().get());
+        assertSame(Nightly.class, timers.get(0).getBeanClass());
+        assertEquals(time(2011, 5, 18, 17, 0), timers.get(0).getNextTimeout());
+
+        assertEquals(Nightly.class.getMethod("backup"), timers.get(1).getMethod().get());
+        assertEquals(time(2011, 5, 19, 0, 0), timers.get(1).getNextTimeout());
+
+        assertEquals(Billing.class.getMethod("remind"), timers.get(2).getMethod().get());
+        assertEquals(time(2011, 5, 19, 9, 0), timers.get(2).getNextTimeout());
+
+        // each bean gets its own timers for a shared method
+        assertEquals(3 + 3, TimerIndex.of(Arrays.asList(Billing.class, Nightly.class), after()).size());
+    }
+
+    public void testAbstract() throws Exception {
+        // Ledger is no bean, Audit only inherits its timer
+        assertInherited(TimerIndex.of(Arrays.asList(Ledger.class, Audit.class), after()));
+    }
+
+    public void testJarInherited() throws Exception {
+        final File jar = Jars.of(Ledger.class, Audit.class);
+        try {
+            assertInherited(TimerIndex.of(jar, getClass().getClassLoader(), after()));
+        } finally {
+            jar.delete();
+        }
+    }
+
+    private static void assertInherited(TimerIndex index) throws Exception {
+        final List<TimerIndex.Entry> timers = index.getTimers();
+        assertEquals(timers.toString(), 1, timers.size());
+
+        assertSame(Audit.class, timers.get(0).getBeanClass());
+        assertEquals(Ledger.class.getMethod("close"), timers.get(0).getMethod().get());
+        assertEquals(time(2011, 5, 19, 0, 0), timers.get(0).getNextTimeout());
+    }
+
+    private static void assertTimers(TimerIndex index) throws Exception {
+        final List<TimerIndex.Entry> timers = index.getTimers();
+        assertEquals(timers.toString(), 6, index.size());
+
+        // @Hourly and @Daily bring a @Schedule at the same depth, both are kept
+        assertEquals(Reports.class.getMethod("summarize"), timers.get(0).getMethod().get());
+        assertEquals(time(2011, 5, 18, 14, 0), timers.get(0).getNextTimeout());
+
+        assertEquals(Billing.class.getMethod("remind"), timers.get(1).getMethod().get());
+        assertEquals(time(2011, 5, 18, 17, 0), timers.get(1).getNextTimeout());
+        assertEquals("afternoon", timers.get(1).getSchedule().info());
+
+        assertEquals(time(2011, 5, 19, 0, 0), timers.get(2).getNextTimeout());
+        assertEquals(time(2011, 5, 19, 0, 0), timers.get(3).getNextTimeout());
+        assertEquals(Billing.class.getMethod("remind"), timers.get(4).getMethod().get());
+        assertEquals(time(2011, 5, 19, 9, 0), timers.get(4).getNextTimeout());
+
+        assertEquals(Billing.class.getMethod("invoice"), timers.get(5).getMethod().get());
+        assertEquals(time(2011, 6, 1, 0, 0), timers.get(5).getNextTimeout());
+
+        for (int i = 1; i < timers.size(); i++) {
+            assertTrue(timers.get(i - 1).getNextTimeout() <= timers.get(i).getNextTimeout());
+        }
+    }
+
+    private static long after() {
+        return time(2011, 5, 18, 13, 45);
+    }
+
+    private static long time(int year, int month, int day, int hour, int minute) {
+        final Calendar calendar = Calendar.getInstance(TimeZone.getDefault());
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    public static class Reports {
+        @Daily
+        public void archive() {
+        }
+
+        @Hourly
+        @Daily
+        public void summarize() {
+        }
+
+        public void run() {
+        }
+    }
+
+    public static class Billing {
+        @Monthly
+        public void invoice() {
+        }
+
+        @Schedules({
+                @Schedule(hour = "9", info = "morning"),
+                @Schedule(hour = "17", info = "afternoon")
+        })
+        public void remind() {
+        }
+
+        @Schedule(hour = "0", year = "2000")
+        public void migrate() {
+        }
+    }
+
+    public static class Nightly extends Billing {
+        public void invoice() {
+        }
+
+        @Daily
+        public void backup() {
+        }
+    }
+
+    public static abstract class Ledger {
+        @Daily
+        public void close() {
+        }
+    }
+
+    public static class Audit extends Ledger {
+    }
+
+    public static class Idle {
+        public void sleep() {
+        }
+    }
+}
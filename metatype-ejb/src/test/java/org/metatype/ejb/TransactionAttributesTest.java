@@ -0,0 +1,142 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.ejb;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.lang.reflect.Method;
+
+import javax.annotation.Metatype;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.ejb.meta.TxMandatory;
+import javax.ejb.meta.TxNever;
+import javax.ejb.meta.TxRequiresNew;
+import javax.ejb.meta.TxSupports;
+
+import junit.framework.TestCase;
+
+/**
+ * @author David Blevins
+ */
+public class TransactionAttributesTest extends TestCase {
+
+    public void test() throws Exception {
+        final TransactionAttributes attributes = TransactionAttributes.of(Orders.class);
+        assertSame(attributes, TransactionAttributes.of(Orders.class));
+
+        // class level default of the bean
+        assertEquals(TransactionAttributeType.REQUIRES_NEW, attributes.get(Orders.class.getMethod("place")));
+
+        // method level metatype
+        assertEquals(TransactionAttributeType.NEVER, attributes.get(Orders.class.getMethod("report")));
+
+        // @Audited -> @TxMandatory -> @TransactionAttribute
+        assertEquals(TransactionAttributeType.MANDATORY, attributes.get(Orders.class.getMethod("cancel", long.class)));
+
+        // the plain annotation still works
+        assertEquals(TransactionAttributeType.NOT_SUPPORTED, attributes.get(Orders.class.getMethod("ping")));
+
+        // inherited methods use the class declaring them, the default is REQUIRED
+        assertEquals(TransactionAttributeType.REQUIRED, attributes.get(Orders.class.getMethod("describe")));
+        assertEquals(TransactionAttributeType.SUPPORTS, attributes.get(Orders.class.getMethod("status")));
+
+        assertEquals(-1, attributes.id(Object.class.getMethod("toString")));
+        assertEquals(-1, attributes.id(Orders.class.getDeclaredMethod("internal")));
+        assertNull(attributes.get(Object.class.getMethod("hashCode")));
+    }
+
+    public void testIds() throws Exception {
+        final TransactionAttributes attributes = TransactionAttributes.of(Orders.class);
+
+        assertEquals(6, attributes.getMethods().size());
+
+        String previous = "";
+        for (int id = 0; id < attributes.getMethods().size(); id++) {
+            final Method method = attributes.getMethods().get(id);
+            assertEquals(id, attributes.id(method));
+            assertEquals(attributes.get(method), attributes.get(id));
+
+            assertTrue(previous.compareTo(method.getName()) <= 0);
+            previous = method.getName();
+        }
+    }
+
+    public void testConflict() throws Exception {
+        try {
+            TransactionAttributes.of(Undecided.class);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("decide"));
+        }
+    }
+
+    @Metatype
+    @TxMandatory
+    @Target(METHOD)
+    @Retention(RUNTIME)
+    public static @interface Audited {
+    }
+
+    public static class Catalog {
+        public String describe() {
+            return "";
+        }
+    }
+
+    @TxSupports
+    public static class Inventory extends Catalog {
+        public int status() {
+            return 0;
+        }
+    }
+
+    @TxRequiresNew
+    public static class Orders extends Inventory {
+        public void place() {
+        }
+
+        @TxNever
+        public String report() {
+            return "";
+        }
+
+        @Audited
+        public void cancel(long id) {
+        }
+
+        @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+        public void ping() {
+        }
+
+        private void internal() {
+        }
+
+        public static Orders create() {
+            return new Orders();
+        }
+    }
+
+    public static class Undecided {
+        @TxNever
+        @TxSupports
+        public void decide() {
+        }
+    }
+}
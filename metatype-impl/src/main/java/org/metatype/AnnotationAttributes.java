@@ -0,0 +1,178 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads annotation attributes by name through MethodHandles built once per
+ * annotation type, instead of Method.invoke and a getDeclaredMethods scan on
+ * every read.
+ * <p/>
+ * The Methods are this class's own copies.  Where no handle can be had, say for
+ * a type in a module that is not open to us, reads fall back to Method.invoke.
+ *
+ * @author David Blevins
+ */
+public final class AnnotationAttributes {
+
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Annotation.class);
+
+    private static final ClassValue<AnnotationAttributes> attributes = new ClassValue<AnnotationAttributes>() {
+        @Override
+        protected AnnotationAttributes computeValue(Class<?> type) {
+            // leave out whatever else a tool may have added, such as $jacocoInit
+            final List<Method> list = new ArrayList<Method>();
+            for (Method method : type.getDeclaredMethods()) {
+                final int modifiers = method.getModifiers();
+                if (!Modifier.isAbstract(modifiers) || Modifier.isStatic(modifiers) || method.isSynthetic()) continue;
+                if (method.getParameterTypes().length != 0) continue;
+
+                list.add(method);
+            }
+
+            final Method[] methods = list.toArray(new Method[list.size()]);
+
+            Arrays.sort(methods, new Comparator<Method>() {
+                public int compare(Method a, Method b) {
+                    return a.getName().compareTo(b.getName());
+                }
+            });
+
+            return new AnnotationAttributes(methods);
+        }
+    };
+
+    private final List<String> names;
+    private final Map<String, Integer> positions;
+    private final Method[] methods;
+
+    /**
+     * Null where access was denied
+     */
+    private final MethodHandle[] getters;
+
+    private AnnotationAttributes(Method[] methods) {
+        this.methods = methods;
+
+        final String[] names = new String[methods.length];
+        this.positions = new HashMap<String, Integer>();
+        this.getters = new MethodHandle[methods.length];
+
+        for (int i = 0; i < methods.length; i++) {
+            names[i] = methods[i].getName();
+            positions.put(names[i], i);
+            getters[i] = getter(methods[i]);
+        }
+
+        this.names = Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    /**
+     * The attribute names of the annotation type, sorted
+     */
+    public static List<String> getNames(Class<? extends Annotation> type) {
+        return attributes.get(type).names;
+    }
+
+    /**
+     * The attribute methods of the annotation type, in the order of {@link #getNames}.
+     * Shared, callers must not modify it.
+     */
+    static Method[] getMethods(Class<? extends Annotation> type) {
+        return attributes.get(type).methods;
+    }
+
+    /**
+     * The value of the named attribute, primitives boxed
+     *
+     * @throws IllegalArgumentException if the annotation has no such attribute
+     */
+    public static Object readAttribute(Annotation annotation, String name) {
+        final AnnotationAttributes accessors = attributes.get(annotation.annotationType());
+
+        final Integer i = accessors.positions.get(name);
+        if (i == null) throw new IllegalArgumentException("@" + annotation.annotationType().getName() + " has no attribute " + name);
+
+        return accessors.read(i, annotation);
+    }
+
+    /**
+     * All attribute values by name, in name order
+     */
+    public static Map<String, Object> toMap(Annotation annotation) {
+        final AnnotationAttributes accessors = attributes.get(annotation.annotationType());
+
+        final Map<String, Object> map = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < accessors.getters.length; i++) {
+            map.put(accessors.names.get(i), accessors.read(i, annotation));
+        }
+
+        return map;
+    }
+
+    private Object read(int i, Annotation annotation) {
+        if (getters[i] == null) return invoke(methods[i], annotation);
+
+        try {
+            return (Object) getters[i].invokeExact(annotation);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Object invoke(Method method, Annotation annotation) {
+        try {
+            return method.invoke(annotation);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static MethodHandle getter(Method method) {
+        try {
+            // non-public annotation types, as in tests and private APIs
+            if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) method.setAccessible(true);
+
+            return MethodHandles.lookup().unreflect(method).asType(GETTER);
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (RuntimeException e) {
+            // InaccessibleObjectException on Java 9 and later, or a SecurityException
+            return null;
+        }
+    }
+}
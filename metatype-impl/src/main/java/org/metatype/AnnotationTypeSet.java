@@ -0,0 +1,144 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import java.lang.annotation.Annotation;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A fixed set of annotation types for the anyOf, allOf and noneOf checks of
+ * MetaAnnotatedObject.  Build it once and keep it, a check is then a word-wise
+ * AND of two bitsets indexed by type id.
+ * <p/>
+ * Every annotation type gets a small id the first time it is seen, see {@link #id},
+ * so the bitsets stay a few words long.
+ * The id of an unloaded type is handed out again, which is safe as the set and
+ * every table holding an id also hold its type.
+ *
+ * @author David Blevins
+ */
+public final class AnnotationTypeSet {
+
+    private static final ReferenceQueue<Class<?>> unloaded = new ReferenceQueue<Class<?>>();
+
+    /**
+     * Keeps the ids reachable until their type is unloaded and they are enqueued
+     */
+    private static final Set<Id> live = Collections.newSetFromMap(new ConcurrentHashMap<Id, Boolean>());
+
+    private static final Deque<Integer> free = new ArrayDeque<Integer>();
+    private static int next;
+
+    private static final ClassValue<Id> ids = new ClassValue<Id>() {
+        @Override
+        protected Id computeValue(Class<?> type) {
+            final Id id = new Id(type, allocate());
+            live.add(id);
+            return id;
+        }
+    };
+
+    /**
+     * Held so that the types, and with them their ids, outlive the set
+     */
+    private final Class<?>[] types;
+    private final long[] bits;
+
+    private AnnotationTypeSet(Class<?>[] types) {
+        this.types = types;
+        this.bits = bits(types);
+    }
+
+    @SafeVarargs
+    public static AnnotationTypeSet of(Class<? extends Annotation>... types) {
+        final Class<?>[] copy = new Class<?>[types.length];
+        for (int i = 0; i < types.length; i++) {
+            copy[i] = types[i];
+        }
+        return new AnnotationTypeSet(copy);
+    }
+
+    static int id(Class<? extends Annotation> type) {
+        return ids.get(type).id;
+    }
+
+    /**
+     * The types as a bitset, bit n of word n / 64 is set for the type with id n
+     */
+    static long[] bits(Class<?>[] types) {
+        final int[] ids = new int[types.length];
+
+        int max = -1;
+        for (int i = 0; i < types.length; i++) {
+            ids[i] = AnnotationTypeSet.ids.get(types[i]).id;
+            max = Math.max(max, ids[i]);
+        }
+
+        final long[] bits = new long[(max >> 6) + 1];
+        for (int id : ids) {
+            bits[id >> 6] |= 1L << id;
+        }
+        return bits;
+    }
+
+    private static synchronized int allocate() {
+        for (Reference<? extends Class<?>> reference; (reference = unloaded.poll()) != null; ) {
+            final Id id = (Id) reference;
+            live.remove(id);
+            free.push(id.id);
+        }
+
+        return free.isEmpty() ? next++ : free.pop();
+    }
+
+    /**
+     * True if the bitset shares at least one type with this set
+     */
+    boolean any(long[] present) {
+        final int words = Math.min(bits.length, present.length);
+        for (int i = 0; i < words; i++) {
+            if ((bits[i] & present[i]) != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * True if the bitset holds every type of this set
+     */
+    boolean all(long[] present) {
+        for (int i = 0; i < bits.length; i++) {
+            final long word = (i < present.length) ? present[i] : 0;
+            if ((bits[i] & word) != bits[i]) return false;
+        }
+        return true;
+    }
+
+    private static final class Id extends WeakReference<Class<?>> {
+        private final int id;
+
+        private Id(Class<?> type, int id) {
+            super(type, unloaded);
+            this.id = id;
+        }
+    }
+}
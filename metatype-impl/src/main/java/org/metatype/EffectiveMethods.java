@@ -0,0 +1,300 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The override collapsed methods of each class, see {@link MetaAnnotatedClass#getEffectiveMethods()}.
+ * <p/>
+ * Built from the class's own declared methods and the already built lists of
+ * its superclass and interfaces, in that order.  A method seen again further
+ * up is an overridden declaration and only adds the meta-annotation types the
+ * nearer declarations lack.  Methods that are neither merged nor overridden are
+ * the canonical MetaAnnotatedMethod instances.
+ * <p/>
+ * Static, private and synthetic methods are left out, and so are the methods of
+ * Object.  Methods are matched on name and parameter types, an override of a
+ * generic method is paired with it through the bridge method the compiler
+ * emitted for it, resolved from the generic signature of the overridden method, and a package-private method is only overridden from its own
+ * package.
+ *
+ * @author David Blevins
+ */
+final class EffectiveMethods {
+
+    private static final ClassValue<List<MetaAnnotatedMethod>> methods = new ClassValue<List<MetaAnnotatedMethod>>() {
+        @Override
+        protected List<MetaAnnotatedMethod> computeValue(Class<?> type) {
+            return Collections.unmodifiableList(new ArrayList<MetaAnnotatedMethod>(resolve(type).values()));
+        }
+    };
+
+    private EffectiveMethods() {
+    }
+
+    static List<MetaAnnotatedMethod> of(Class<?> clazz) {
+        return methods.get(clazz);
+    }
+
+    private static Map<String, MetaAnnotatedMethod> resolve(Class<?> type) {
+        final Map<String, MetaAnnotatedMethod> effective = new LinkedHashMap<String, MetaAnnotatedMethod>();
+
+        if (type == Object.class) return effective;
+
+        // the erased signatures the bridges stand for, mapped to the overriding method's
+        final Map<String, String> bridged = new HashMap<String, String>();
+
+        for (Method method : type.getDeclaredMethods()) {
+            if (Modifier.isStatic(method.getModifiers()) || Modifier.isPrivate(method.getModifiers())) continue;
+
+            if (method.isBridge()) {
+                final Method target = bridged(method, type);
+                if (target != null) bridged.put(key(method), key(target));
+                continue;
+            }
+
+            if (method.isSynthetic()) continue;
+
+            effective.put(key(method), MetaAnnotatedMethod.of(method));
+        }
+
+        if (type.getSuperclass() != null) {
+            inherit(type, of(type.getSuperclass()), bridged, effective);
+        }
+
+        for (Class<?> interfce : type.getInterfaces()) {
+            inherit(type, of(interfce), bridged, effective);
+        }
+
+        return effective;
+    }
+
+    private static void inherit(Class<?> type, List<MetaAnnotatedMethod> inherited, Map<String, String> bridged, Map<String, MetaAnnotatedMethod> effective) {
+        for (MetaAnnotatedMethod method : inherited) {
+            String key = key(method.get());
+
+            if (bridged.containsKey(key)) key = bridged.get(key);
+
+            MetaAnnotatedMethod existing = effective.get(key);
+
+            // a package-private method is overridden by a wider one from its own package
+            if (existing == null && isPackagePrivate(method.get()) && packageName(type).equals(packageName(method.getDeclaringClass()))) {
+                final String widened = signature(method.get());
+                if (effective.containsKey(widened)) {
+                    key = widened;
+                    existing = effective.get(widened);
+                }
+            }
+
+            if (existing == null) {
+                effective.put(key, method);
+            } else {
+                effective.put(key, merge(existing, method));
+            }
+        }
+    }
+    private static MetaAnnotatedMethod merge(MetaAnnotatedMethod method, MetaAnnotatedMethod overridden) {
+        final MetaAnnotationTable table = method.annotations();
+        final MetaAnnotationTable inherited = overridden.annotations();
+
+        final Map<Class<? extends Annotation>, MetaAnnotation<?>> merged = new LinkedHashMap<Class<? extends Annotation>, MetaAnnotation<?>>();
+
+        for (int i = 0; i < table.size(); i++) {
+            merged.put(table.type(i), table.get(i));
+        }
+
+        for (int i = 0; i < inherited.size(); i++) {
+            if (!merged.containsKey(inherited.type(i))) merged.put(inherited.type(i), inherited.get(i));
+        }
+
+        // nothing new, keep what we have
+        if (merged.size() == table.size()) return method;
+
+        return new MetaAnnotatedMethod(method.get(), merged);
+    }
+
+    /**
+     * The method a bridge forwards to: the one with the bridge's parameters for a
+     * covariant return, otherwise the one with the parameters of the overridden
+     * generic method as the supertypes bind them.  Failing that, the one most
+     * specific declaration the bridge's erased types accept, if there is one.
+     */
+    private static Method bridged(Method bridge, Class<?> type) {
+        final Class<?>[] erased = bridge.getParameterTypes();
+
+        final List<Method> candidates = new ArrayList<Method>();
+        for (Method method : type.getDeclaredMethods()) {
+            if (method.isBridge() || method.isSynthetic() || !method.getName().equals(bridge.getName())) continue;
+
+            final Class<?>[] parameters = method.getParameterTypes();
+            if (parameters.length != erased.length || !bridge.getReturnType().isAssignableFrom(method.getReturnType())) continue;
+
+            if (Arrays.equals(parameters, erased)) return method;
+
+            boolean accepts = true;
+            for (int i = 0; i < parameters.length && accepts; i++) {
+                accepts = erased[i].isAssignableFrom(parameters[i]);
+            }
+
+            if (accepts) candidates.add(method);
+        }
+
+        final Class<?>[] resolved = overridden(bridge, type, new HashMap<TypeVariable<?>, Type>());
+        if (resolved != null) {
+            for (Method candidate : candidates) {
+                if (Arrays.equals(candidate.getParameterTypes(), resolved)) return candidate;
+            }
+        }
+
+        return mostSpecific(candidates);
+    }
+
+    /**
+     * The parameters of the generic method the bridge overrides, with the type
+     * variables the supertypes of the type bind replaced by their erasure
+     */
+    private static Class<?>[] overridden(Method bridge, Class<?> type, Map<TypeVariable<?>, Type> variables) {
+        final List<Type> supertypes = new ArrayList<Type>();
+        if (type.getGenericSuperclass() != null) supertypes.add(type.getGenericSuperclass());
+        supertypes.addAll(Arrays.asList(type.getGenericInterfaces()));
+
+        for (Type supertype : supertypes) {
+            final Map<TypeVariable<?>, Type> bound = new HashMap<TypeVariable<?>, Type>(variables);
+
+            final Class<?> raw;
+            if (supertype instanceof ParameterizedType) {
+                final ParameterizedType parameterized = (ParameterizedType) supertype;
+                raw = (Class<?>) parameterized.getRawType();
+
+                final TypeVariable<?>[] parameters = raw.getTypeParameters();
+                final Type[] arguments = parameterized.getActualTypeArguments();
+                for (int i = 0; i < parameters.length; i++) {
+                    bound.put(parameters[i], arguments[i]);
+                }
+            } else {
+                raw = (Class<?>) supertype;
+            }
+
+            for (Method method : raw.getDeclaredMethods()) {
+                if (method.isBridge() || method.isSynthetic() || Modifier.isStatic(method.getModifiers())) continue;
+                if (!method.getName().equals(bridge.getName()) || !Arrays.equals(method.getParameterTypes(), bridge.getParameterTypes())) continue;
+
+                final Type[] generic = method.getGenericParameterTypes();
+                final Class<?>[] resolved = new Class<?>[generic.length];
+                for (int i = 0; i < generic.length; i++) {
+                    resolved[i] = erase(generic[i], new HashMap<TypeVariable<?>, Type>(bound));
+                }
+
+                if (!Arrays.equals(resolved, bridge.getParameterTypes())) return resolved;
+            }
+
+            final Class<?>[] resolved = overridden(bridge, raw, bound);
+            if (resolved != null) return resolved;
+        }
+
+        return null;
+    }
+
+    /**
+     * Each variable is followed once, the map is used up as they are
+     */
+    private static Class<?> erase(Type type, Map<TypeVariable<?>, Type> variables) {
+        if (type instanceof Class) return (Class<?>) type;
+
+        if (type instanceof ParameterizedType) return erase(((ParameterizedType) type).getRawType(), variables);
+
+        if (type instanceof GenericArrayType) {
+            final Class<?> component = erase(((GenericArrayType) type).getGenericComponentType(), variables);
+            return Array.newInstance(component, 0).getClass();
+        }
+
+        if (type instanceof WildcardType) return erase(((WildcardType) type).getUpperBounds()[0], variables);
+
+        final TypeVariable<?> variable = (TypeVariable<?>) type;
+        final Type bound = variables.remove(variable);
+        return erase((bound != null) ? bound : variable.getBounds()[0], variables);
+    }
+
+    /**
+     * The candidate whose parameters all the others accept, or null when there is
+     * no single one
+     */
+    private static Method mostSpecific(List<Method> candidates) {
+        Method found = null;
+
+        for (Method candidate : candidates) {
+            boolean specific = true;
+            for (Method other : candidates) {
+                if (other == candidate) continue;
+
+                final Class<?>[] parameters = candidate.getParameterTypes();
+                final Class<?>[] accepting = other.getParameterTypes();
+                for (int i = 0; i < parameters.length && specific; i++) {
+                    specific = accepting[i].isAssignableFrom(parameters[i]);
+                }
+            }
+
+            if (!specific) continue;
+            if (found != null) return null;
+            found = candidate;
+        }
+
+        return found;
+    }
+
+    /**
+     * The signature, qualified by the package for package-private methods so that
+     * a same named method of another package does not collapse with it
+     */
+    private static String key(Method method) {
+        final String signature = signature(method);
+        return isPackagePrivate(method) ? signature + packageName(method.getDeclaringClass()) : signature;
+    }
+
+    private static boolean isPackagePrivate(Method method) {
+        return (method.getModifiers() & (Modifier.PUBLIC | Modifier.PROTECTED | Modifier.PRIVATE)) == 0;
+    }
+
+    private static String packageName(Class<?> clazz) {
+        final String name = clazz.getName();
+        final int dot = name.lastIndexOf('.');
+        return (dot < 0) ? "" : name.substring(0, dot);
+    }
+
+    private static String signature(Method method) {
+        final StringBuilder sb = new StringBuilder(method.getName()).append('(');
+        for (Class<?> type : method.getParameterTypes()) {
+            sb.append(type.getName()).append(',');
+        }
+        return sb.append(')').toString();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Inherited;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The meta-annotations of a class plus the {@link Inherited} ones of its
+ * superclass chain, see {@link MetaAnnotatedClass#getInherited()}.
+ * <p/>
+ * As with Class.getAnnotations(), only annotation types marked {@link Inherited}
+ * are taken from superclasses and nothing is taken from interfaces.  Of two
+ * annotations of one type the one at the smaller depth wins, the subclass's on a
+ * tie.  The merged table is built once per class from the already merged table of
+ * its superclass.
+ *
+ * @author David Blevins
+ */
+final class InheritedMetaAnnotations<T> extends MetaAnnotatedObject<Class<T>> {
+
+    private static final ClassValue<MetaAnnotationTable> tables = new ClassValue<MetaAnnotationTable>() {
+        @Override
+        protected MetaAnnotationTable computeValue(Class<?> type) {
+            return MetaAnnotationTable.of(merge(type));
+        }
+    };
+
+    InheritedMetaAnnotations(Class<T> clazz) {
+        super(clazz, tables.get(clazz));
+    }
+
+    public Annotation[] getDeclaredAnnotations() {
+        return target.getDeclaredAnnotations();
+    }
+
+    private static Map<Class<? extends Annotation>, MetaAnnotation<?>> merge(Class<?> type) {
+        final Map<Class<? extends Annotation>, MetaAnnotation<?>> merged = new LinkedHashMap<Class<? extends Annotation>, MetaAnnotation<?>>();
+
+        final MetaAnnotationTable declared = MetaAnnotatedClass.of(type).annotations();
+        for (int i = 0; i < declared.size(); i++) {
+            merged.put(declared.type(i), declared.get(i));
+        }
+
+        // interfaces never pass their annotations on
+        if (type.isInterface() || type.getSuperclass() == null) return merged;
+
+        final MetaAnnotationTable inherited = tables.get(type.getSuperclass());
+        for (int i = 0; i < inherited.size(); i++) {
+            final Class<? extends Annotation> annotationType = inherited.type(i);
+            if (!annotationType.isAnnotationPresent(Inherited.class)) continue;
+
+            final MetaAnnotation<?> existing = merged.get(annotationType);
+
+            // the closer one wins, the subclass on a tie
+            if (existing == null || existing.getDepth() > inherited.get(i).getDepth()) {
+                merged.put(annotationType, inherited.get(i));
+            }
+        }
+
+        return merged;
+    }
+}
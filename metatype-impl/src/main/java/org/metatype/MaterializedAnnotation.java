@@ -0,0 +1,189 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base class of the generated annotation implementations.
+ * <p/>
+ * The JDK implements annotations with proxies, so every attribute read is a
+ * reflective dispatch that also copies array values.  {@link #of(Annotation)}
+ * reads every attribute of an annotation once and hands back an equal instance
+ * of a class generated for its annotation type, a final class with one field per
+ * attribute whose accessors just return the field.  {@link #of(Class, Map)} builds
+ * one from values alone, filling in the defaults.  Array attributes are shared,
+ * not copied, so callers must not modify them.  equals, hashCode and toString
+ * follow the Annotation contract, so the result can stand in for an annotation
+ * from the JDK.
+ * <p/>
+ * Nothing is materialized unless asked for.  Setting the system property
+ * {@code org.metatype.materialize} to true makes getAnnotation and friends of
+ * MetaAnnotatedObject hand out materialized annotations.
+ *
+ * @author David Blevins
+ */
+public abstract class MaterializedAnnotation implements Annotation {
+
+    private static final Map<Class<?>, Class<?>> BOXES = new HashMap<Class<?>, Class<?>>();
+
+    static {
+        BOXES.put(boolean.class, Boolean.class);
+        BOXES.put(byte.class, Byte.class);
+        BOXES.put(char.class, Character.class);
+        BOXES.put(short.class, Short.class);
+        BOXES.put(int.class, Integer.class);
+        BOXES.put(long.class, Long.class);
+        BOXES.put(float.class, Float.class);
+        BOXES.put(double.class, Double.class);
+    }
+
+    private final Class<? extends Annotation> type;
+
+    /**
+     * The attribute values in the order of {@link AnnotationAttributes#getNames}
+     */
+    private final Object[] values;
+
+    protected MaterializedAnnotation(Class<? extends Annotation> type, Object[] values) {
+        this.type = type;
+        this.values = values;
+    }
+
+    /**
+     * An equal annotation backed by a generated class, or the annotation itself if it already is one
+     */
+    public static <A extends Annotation> A of(A annotation) {
+        if (annotation == null || annotation instanceof MaterializedAnnotation || MaterializedAnnotations.isProxy(annotation)) return annotation;
+
+        final Class<? extends Annotation> type = annotation.annotationType();
+        final List<String> names = AnnotationAttributes.getNames(type);
+
+        final Object[] values = new Object[names.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = copy(AnnotationAttributes.readAttribute(annotation, names.get(i)));
+        }
+
+        return (A) MaterializedAnnotations.create(type, values);
+    }
+
+    /**
+     * An annotation of the type with the given attribute values, defaults filling
+     * in the ones left out
+     *
+     * @throws IllegalArgumentException if a value is missing, unknown or of the wrong type
+     */
+    public static <A extends Annotation> A of(Class<A> type, Map<String, ?> values) {
+        final Method[] attributes = AnnotationAttributes.getMethods(type);
+        final Object[] resolved = new Object[attributes.length];
+
+        for (int i = 0; i < attributes.length; i++) {
+            final String name = attributes[i].getName();
+            final Object value = values.containsKey(name) ? values.get(name) : attributes[i].getDefaultValue();
+
+            if (value == null) throw new IllegalArgumentException("@" + type.getName() + " needs a value for " + name);
+
+            final Class<?> returnType = attributes[i].getReturnType();
+            final Class<?> expected = BOXES.containsKey(returnType) ? BOXES.get(returnType) : returnType;
+            if (!expected.isInstance(value)) {
+                throw new IllegalArgumentException("@" + type.getName() + " " + name + " must be a " + expected.getName() + ", not " + value.getClass().getName());
+            }
+
+            resolved[i] = copy(value);
+        }
+
+        final List<String> names = AnnotationAttributes.getNames(type);
+        for (String name : values.keySet()) {
+            if (!names.contains(name)) throw new IllegalArgumentException("@" + type.getName() + " has no attribute " + name);
+        }
+
+        return type.cast(MaterializedAnnotations.create(type, resolved));
+    }
+
+    public final Class<? extends Annotation> annotationType() {
+        return type;
+    }
+
+    final Object value(int i) {
+        return values[i];
+    }
+
+    public final boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (!type.isInstance(obj)) return false;
+
+        if (obj instanceof MaterializedAnnotation) {
+            final Object[] other = ((MaterializedAnnotation) obj).values;
+
+            for (int i = 0; i < values.length; i++) {
+                if (!MaterializedAnnotations.equals(values[i], other[i])) return false;
+            }
+            return true;
+        }
+
+        final List<String> names = AnnotationAttributes.getNames(type);
+
+        for (int i = 0; i < values.length; i++) {
+            if (!MaterializedAnnotations.equals(values[i], AnnotationAttributes.readAttribute((Annotation) obj, names.get(i)))) return false;
+        }
+        return true;
+    }
+
+    public final int hashCode() {
+        final List<String> names = AnnotationAttributes.getNames(type);
+
+        int hash = 0;
+        for (int i = 0; i < values.length; i++) {
+            hash += (127 * names.get(i).hashCode()) ^ MaterializedAnnotations.hashCode(values[i]);
+        }
+        return hash;
+    }
+
+    public final String toString() {
+        final List<String> names = AnnotationAttributes.getNames(type);
+
+        final StringBuilder sb = new StringBuilder("@").append(type.getName()).append('(');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) sb.append(", ");
+
+            // covers primitive arrays too
+            final String value = Arrays.deepToString(new Object[]{values[i]});
+            sb.append(names.get(i)).append('=').append(value, 1, value.length() - 1);
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * The values are taken over once, so that no caller's array is shared
+     */
+    private static Object copy(Object value) {
+        if (value instanceof Object[]) return ((Object[]) value).clone();
+        if (value instanceof boolean[]) return ((boolean[]) value).clone();
+        if (value instanceof byte[]) return ((byte[]) value).clone();
+        if (value instanceof char[]) return ((char[]) value).clone();
+        if (value instanceof short[]) return ((short[]) value).clone();
+        if (value instanceof int[]) return ((int[]) value).clone();
+        if (value instanceof long[]) return ((long[]) value).clone();
+        if (value instanceof float[]) return ((float[]) value).clone();
+        if (value instanceof double[]) return ((double[]) value).clone();
+        return value;
+    }
+}
@@ -0,0 +1,470 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Generates the {@link MaterializedAnnotation} subclass of each annotation type.
+ * <p/>
+ * The generated class is written directly as a class file, there is no bytecode
+ * library on the classpath.  For an annotation type Color with a String value()
+ * it amounts to:
+ * <pre>
+ * public final class org.metatype.generated.Color extends MaterializedAnnotation implements Color {
+ *     private final String f0;
+ *
+ *     public Color(Class type, Object[] values) {
+ *         super(type, values);
+ *         this.f0 = (String) values[0];
+ *     }
+ *
+ *     public String value() {
+ *         return f0;
+ *     }
+ * }
+ * </pre>
+ * Each class gets its own loader, parented by the annotation type's loader,
+ * so it goes away with the annotation type.  A class in another loader cannot
+ * implement a type that is not public, those get a proxy over the same values.
+ *
+ * @author David Blevins
+ */
+final class MaterializedAnnotations {
+
+    static final boolean ENABLED = Boolean.getBoolean("org.metatype.materialize");
+
+    private static final String PREFIX = "org.metatype.generated.";
+
+    private static final String BASE = MaterializedAnnotation.class.getName().replace('.', '/');
+
+    private static final Map<Class<?>, Class<?>> BOXES = new HashMap<Class<?>, Class<?>>();
+
+    static {
+        BOXES.put(boolean.class, Boolean.class);
+        BOXES.put(byte.class, Byte.class);
+        BOXES.put(char.class, Character.class);
+        BOXES.put(short.class, Short.class);
+        BOXES.put(int.class, Integer.class);
+        BOXES.put(long.class, Long.class);
+        BOXES.put(float.class, Float.class);
+        BOXES.put(double.class, Double.class);
+    }
+
+    /**
+     * The constructor of the generated class of each annotation type, null if it cannot have one
+     */
+    private static final ClassValue<Constructor<?>> constructors = new ClassValue<Constructor<?>>() {
+        @Override
+        protected Constructor<?> computeValue(Class<?> type) {
+            if (!supported(type)) return null;
+
+            try {
+                final Class<?> generated = new Loader(type.getClassLoader()).define(PREFIX + type.getName(), generate(type.asSubclass(Annotation.class)));
+                return generated.getConstructor(Class.class, Object[].class);
+            } catch (LinkageError e) {
+                // e.g. the type is in a module that does not export it
+                return null;
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private MaterializedAnnotations() {
+    }
+
+    /**
+     * An instance of the generated class of the type, or a proxy if it has none
+     *
+     * @param values the attribute values in the order of {@link AnnotationAttributes#getNames}
+     */
+    static Annotation create(Class<? extends Annotation> type, Object[] values) {
+        final Constructor<?> constructor = constructors.get(type);
+
+        if (constructor == null) {
+            final Values handler = new Values(type, values);
+            return (Annotation) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+        }
+
+        try {
+            return (Annotation) constructor.newInstance(type, values);
+        } catch (InstantiationException e) {
+            throw new IllegalStateException(e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * True for the proxies standing in for the generated classes
+     */
+    static boolean isProxy(Object annotation) {
+        return Proxy.isProxyClass(annotation.getClass()) && Proxy.getInvocationHandler(annotation) instanceof Values;
+    }
+
+    static boolean equals(Object a, Object b) {
+        if (a instanceof Object[] && b instanceof Object[]) return Arrays.deepEquals((Object[]) a, (Object[]) b);
+        if (a != null && a.getClass().isArray()) return Arrays.deepEquals(new Object[]{a}, new Object[]{b});
+        return a.equals(b);
+    }
+
+    static int hashCode(Object value) {
+        if (value instanceof Object[]) return Arrays.hashCode((Object[]) value);
+        // deepHashCode of a one element array is 31 + the hash of the element
+        if (value.getClass().isArray()) return Arrays.deepHashCode(new Object[]{value}) - 31;
+        return value.hashCode();
+    }
+
+    private static boolean supported(Class<?> type) {
+        if (!Modifier.isPublic(type.getModifiers())) return false;
+
+        for (Method method : AnnotationAttributes.getMethods(type.asSubclass(Annotation.class))) {
+            Class<?> returnType = method.getReturnType();
+            while (returnType.isArray()) returnType = returnType.getComponentType();
+
+            if (!Modifier.isPublic(returnType.getModifiers())) return false;
+        }
+
+        return true;
+    }
+
+    // ------------------------------------------------------------------ class file
+
+    private static byte[] generate(Class<? extends Annotation> type) {
+        final Method[] methods = AnnotationAttributes.getMethods(type);
+
+        final ConstantPool pool = new ConstantPool();
+        final String name = (PREFIX + type.getName()).replace('.', '/');
+
+        final int thisClass = pool.clazz(name);
+        final int superClass = pool.clazz(BASE);
+        final int annotationType = pool.clazz(type.getName().replace('.', '/'));
+        final int code = pool.utf8("Code");
+
+        final int[] fields = new int[methods.length];
+        final int[] accessors = new int[methods.length];
+        final int[] descriptors = new int[methods.length];
+        final byte[][] bodies = new byte[methods.length][];
+
+        for (int i = 0; i < methods.length; i++) {
+            final Class<?> returnType = methods[i].getReturnType();
+            final String descriptor = descriptor(returnType);
+
+            fields[i] = pool.utf8("f" + i);
+            descriptors[i] = pool.utf8(descriptor);
+            accessors[i] = pool.utf8(methods[i].getName());
+            bodies[i] = accessor(pool, name, i, returnType);
+        }
+
+        final byte[] constructor = constructor(pool, name, methods);
+
+        final int init = pool.utf8("<init>");
+        final int initDescriptor = pool.utf8("(Ljava/lang/Class;[Ljava/lang/Object;)V");
+        final int[] accessorDescriptors = new int[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            accessorDescriptors[i] = pool.utf8("()" + descriptor(methods[i].getReturnType()));
+        }
+
+        // the pool is complete, everything below only refers to it
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(50);
+
+            pool.write(out);
+
+            out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(annotationType);
+
+            out.writeShort(methods.length);
+            for (int i = 0; i < methods.length; i++) {
+                out.writeShort(0x0002 | 0x0010); // private final
+                out.writeShort(fields[i]);
+                out.writeShort(descriptors[i]);
+                out.writeShort(0);
+            }
+
+            out.writeShort(methods.length + 1);
+
+            out.writeShort(0x0001); // public
+            out.writeShort(init);
+            out.writeShort(initDescriptor);
+            writeCode(out, code, 3, 3, constructor);
+
+            for (int i = 0; i < methods.length; i++) {
+                out.writeShort(0x0001 | 0x0010); // public final
+                out.writeShort(accessors[i]);
+                out.writeShort(accessorDescriptors[i]);
+                writeCode(out, code, 2, 1, bodies[i]);
+            }
+
+            out.writeShort(0); // class attributes
+
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeCode(DataOutputStream out, int code, int maxStack, int maxLocals, byte[] bytecode) throws IOException {
+        out.writeShort(1);
+        out.writeShort(code);
+        out.writeInt(2 + 2 + 4 + bytecode.length + 2 + 2);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(bytecode.length);
+        out.write(bytecode);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+
+    private static byte[] constructor(ConstantPool pool, String name, Method[] methods) {
+        final Bytecode code = new Bytecode();
+
+        code.op(0x2a); // aload_0
+        code.op(0x2b); // aload_1
+        code.op(0x2c); // aload_2
+        code.op(0xb7).u2(pool.methodref(BASE, "<init>", "(Ljava/lang/Class;[Ljava/lang/Object;)V")); // invokespecial
+
+        for (int i = 0; i < methods.length; i++) {
+            final Class<?> type = methods[i].getReturnType();
+
+            code.op(0x2a); // aload_0
+            code.op(0x2c); // aload_2
+            code.push(i);
+            code.op(0x32); // aaload
+
+            if (type.isPrimitive()) {
+                final String box = BOXES.get(type).getName().replace('.', '/');
+                code.op(0xc0).u2(pool.clazz(box)); // checkcast
+                code.op(0xb6).u2(pool.methodref(box, type.getName() + "Value", "()" + descriptor(type))); // invokevirtual
+            } else {
+                code.op(0xc0).u2(pool.clazz(internalName(type))); // checkcast
+            }
+
+            code.op(0xb5).u2(pool.fieldref(name, "f" + i, descriptor(type))); // putfield
+        }
+
+        code.op(0xb1); // return
+
+        return code.toByteArray();
+    }
+
+    private static byte[] accessor(ConstantPool pool, String name, int i, Class<?> type) {
+        final Bytecode code = new Bytecode();
+
+        code.op(0x2a); // aload_0
+        code.op(0xb4).u2(pool.fieldref(name, "f" + i, descriptor(type))); // getfield
+
+        if (type == long.class) code.op(0xad); // lreturn
+        else if (type == float.class) code.op(0xae); // freturn
+        else if (type == double.class) code.op(0xaf); // dreturn
+        else if (type.isPrimitive()) code.op(0xac); // ireturn
+        else code.op(0xb0); // areturn
+
+        return code.toByteArray();
+    }
+
+    private static String internalName(Class<?> type) {
+        return type.isArray() ? descriptor(type) : type.getName().replace('.', '/');
+    }
+
+    private static String descriptor(Class<?> type) {
+        if (type.isArray()) return type.getName().replace('.', '/');
+        if (type == boolean.class) return "Z";
+        if (type == byte.class) return "B";
+        if (type == char.class) return "C";
+        if (type == short.class) return "S";
+        if (type == int.class) return "I";
+        if (type == long.class) return "J";
+        if (type == float.class) return "F";
+        if (type == double.class) return "D";
+        return "L" + type.getName().replace('.', '/') + ";";
+    }
+
+    private static final class Bytecode {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private Bytecode op(int op) {
+            bytes.write(op);
+            return this;
+        }
+
+        private Bytecode u2(int value) {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+            return this;
+        }
+
+        private void push(int value) {
+            if (value <= 5) {
+                op(0x03 + value); // iconst_n
+            } else if (value <= Byte.MAX_VALUE) {
+                op(0x10).op(value); // bipush
+            } else {
+                op(0x11).u2(value); // sipush
+            }
+        }
+
+        private byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> entries = new HashMap<String, Integer>();
+        private int count = 1;
+
+        private int utf8(String value) {
+            final Integer existing = entries.get("U" + value);
+            if (existing != null) return existing;
+
+            try {
+                out.writeByte(1);
+                out.writeUTF(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return add("U" + value);
+        }
+
+        private int clazz(String internalName) {
+            final Integer existing = entries.get("C" + internalName);
+            if (existing != null) return existing;
+
+            final int name = utf8(internalName);
+            write(7, name);
+            return add("C" + internalName);
+        }
+
+        private int nameAndType(String name, String descriptor) {
+            final String key = "N" + name + " " + descriptor;
+            final Integer existing = entries.get(key);
+            if (existing != null) return existing;
+
+            final int n = utf8(name);
+            final int d = utf8(descriptor);
+            write(12, n, d);
+            return add(key);
+        }
+
+        private int fieldref(String owner, String name, String descriptor) {
+            return ref(9, owner, name, descriptor);
+        }
+
+        private int methodref(String owner, String name, String descriptor) {
+            return ref(10, owner, name, descriptor);
+        }
+
+        private int ref(int tag, String owner, String name, String descriptor) {
+            final String key = tag + owner + "." + name + " " + descriptor;
+            final Integer existing = entries.get(key);
+            if (existing != null) return existing;
+
+            final int c = clazz(owner);
+            final int nt = nameAndType(name, descriptor);
+            write(tag, c, nt);
+            return add(key);
+        }
+
+        private void write(int tag, int... indexes) {
+            try {
+                out.writeByte(tag);
+                for (int index : indexes) {
+                    out.writeShort(index);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private int add(String key) {
+            entries.put(key, count);
+            return count++;
+        }
+
+        private void write(DataOutputStream to) throws IOException {
+            to.writeShort(count);
+            to.write(bytes.toByteArray());
+        }
+    }
+
+    /**
+     * The values behind a proxy of a type that is not public.  Attribute reads look
+     * the name up, the rest goes to a MaterializedAnnotation over the same values.
+     */
+    private static final class Values extends MaterializedAnnotation implements InvocationHandler {
+
+        private Values(Class<? extends Annotation> type, Object[] values) {
+            super(type, values);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getDeclaringClass() == annotationType()) {
+                return value(AnnotationAttributes.getNames(annotationType()).indexOf(method.getName()));
+            }
+
+            if (args != null && args.length == 1 && "equals".equals(method.getName())) return proxy == args[0] || equals(args[0]);
+            if ("hashCode".equals(method.getName())) return hashCode();
+            if ("toString".equals(method.getName())) return toString();
+            return annotationType();
+        }
+    }
+
+    /**
+     * Sees the annotation type through its parent and MaterializedAnnotation through ours
+     */
+    private static final class Loader extends ClassLoader {
+
+        private Loader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.equals(MaterializedAnnotation.class.getName())) return MaterializedAnnotation.class;
+            return super.loadClass(name, resolve);
+        }
+
+        private Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import java.lang.reflect.Member;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Canonical wrappers for the members of each class.  The wrappers are kept
+ * with the declaring class, so they are released along with its class loader.
+ *
+ * @author David Blevins
+ */
+abstract class MemberWrappers<M extends Member, W> extends ClassValue<ConcurrentMap<M, W>> {
+
+    @Override
+    protected ConcurrentMap<M, W> computeValue(Class<?> type) {
+        return new ConcurrentHashMap<M, W>();
+    }
+
+    public W of(M member) {
+        final ConcurrentMap<M, W> wrappers = get(member.getDeclaringClass());
+
+        final W existing = wrappers.get(member);
+        if (existing != null) return existing;
+
+        final W wrapper = create(member);
+        final W raced = wrappers.putIfAbsent(member, wrapper);
+
+        return (raced != null) ? raced : wrapper;
+    }
+
+    protected abstract W create(M member);
+}
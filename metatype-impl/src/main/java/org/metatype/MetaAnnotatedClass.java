@@ -24,26 +24,68 @@ import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.net.URL;
 import java.security.ProtectionDomain;
+import java.util.List;
 
 /**
  * @author David Blevins
  */
 public class MetaAnnotatedClass<T> extends MetaAnnotatedObject<Class<T>> {
 
+    private static final ClassValue<MetaAnnotatedClass<?>> instances = new ClassValue<MetaAnnotatedClass<?>>() {
+        @Override
+        protected MetaAnnotatedClass<?> computeValue(Class<?> type) {
+            return new MetaAnnotatedClass(type);
+        }
+    };
+
+    private volatile MetaAnnotated<Class<T>> inherited;
+
     public MetaAnnotatedClass(Class<T> clazz) {
-        super(clazz, unroll(clazz));
+        super(clazz);
+    }
+
+    /**
+     * Returns the canonical wrapper for the class.  The wrapper is held by the
+     * class itself, so it does not outlive the class loader.
+     */
+    public static <T> MetaAnnotatedClass<T> of(Class<T> clazz) {
+        return (MetaAnnotatedClass<T>) instances.get(clazz);
     }
 
     public Annotation[] getDeclaredAnnotations() {
         return target.getDeclaredAnnotations();
     }
 
+    /**
+     * A view that also holds the {@link java.lang.annotation.Inherited} meta-annotations
+     * of the superclasses, the one at the smallest depth winning.  Interfaces are not
+     * consulted.  Built once per wrapper, from tables shared per class.
+     */
+    public MetaAnnotated<Class<T>> getInherited() {
+        MetaAnnotated<Class<T>> inherited = this.inherited;
+        if (inherited == null) {
+            inherited = new InheritedMetaAnnotations<T>(target);
+            this.inherited = inherited;
+        }
+        return inherited;
+    }
+
+    /**
+     * One method per overridden method across the class, its superclasses and
+     * interfaces, Object excepted, carrying the meta-annotations of the most specific
+     * declaration merged with those of the declarations it overrides.  Computed once
+     * per class.
+     */
+    public List<MetaAnnotatedMethod> getEffectiveMethods() {
+        return EffectiveMethods.of(target);
+    }
+
     public MetaAnnotatedClass<?> forName(String className) throws ClassNotFoundException {
         return to(target.forName(className));
     }
 
     private MetaAnnotatedClass<?> to(Class<?> clazz) {
-        return new MetaAnnotatedClass(clazz);
+        return (clazz == null) ? null : of(clazz);
     }
 
     public MetaAnnotatedClass<?> forName(String name, boolean initialize, ClassLoader loader) throws ClassNotFoundException {
@@ -95,7 +137,7 @@ public class MetaAnnotatedClass<T> extends MetaAnnotatedObject<Class<T>> {
     }
 
     public MetaAnnotatedClass<? super T> getSuperclass() {
-        return new MetaAnnotatedClass(target.getSuperclass());
+        return (MetaAnnotatedClass<? super T>) to(target.getSuperclass());
     }
 
     public Type getGenericSuperclass() {
@@ -187,7 +229,7 @@ public class MetaAnnotatedClass<T> extends MetaAnnotatedObject<Class<T>> {
     }
 
     public MetaAnnotatedConstructor<T> getConstructor(Class<?>... parameterTypes) throws NoSuchMethodException, SecurityException {
-        return new MetaAnnotatedConstructor(target.getConstructor(parameterTypes));
+        return MetaAnnotatedConstructor.of(target.getConstructor(parameterTypes));
     }
 
     public MetaAnnotatedClass<?>[] getDeclaredClasses() throws SecurityException {
@@ -215,7 +257,7 @@ public class MetaAnnotatedClass<T> extends MetaAnnotatedObject<Class<T>> {
     }
 
     public MetaAnnotatedConstructor<T> getDeclaredConstructor(Class<?>... parameterTypes) throws NoSuchMethodException, SecurityException {
-        return new MetaAnnotatedConstructor(target.getDeclaredConstructor(parameterTypes));
+        return MetaAnnotatedConstructor.of(target.getDeclaredConstructor(parameterTypes));
     }
 
     public InputStream getResourceAsStream(String name) {
@@ -253,25 +295,25 @@ public class MetaAnnotatedClass<T> extends MetaAnnotatedObject<Class<T>> {
     private MetaAnnotatedMethod[] to(Method[] a) {
         MetaAnnotatedMethod[] b = new MetaAnnotatedMethod[a.length];
         for (int i = 0; i < a.length; i++) {
-            b[i] = new MetaAnnotatedMethod(a[i]);
+            b[i] = to(a[i]);
         }
         return b;
     }
 
     private MetaAnnotatedMethod to(Method method) {
-        return new MetaAnnotatedMethod(method);
+        return (method == null) ? null : MetaAnnotatedMethod.of(method);
     }
 
     private MetaAnnotatedConstructor<?>[] to(Constructor<?>[] a) {
         MetaAnnotatedConstructor<?>[] b = new MetaAnnotatedConstructor[a.length];
         for (int i = 0; i < a.length; i++) {
-            b[i] = new MetaAnnotatedConstructor(a[i]);
+            b[i] = to(a[i]);
         }
         return b;
     }
 
     private MetaAnnotatedConstructor<?> to(Constructor<?> constructor) {
-        return new MetaAnnotatedConstructor(constructor);
+        return (constructor == null) ? null : MetaAnnotatedConstructor.of(constructor);
     }
 
     private MetaAnnotatedClass<?>[] to(Class<?>[] a) {
@@ -285,13 +327,13 @@ public class MetaAnnotatedClass<T> extends MetaAnnotatedObject<Class<T>> {
     private MetaAnnotatedField[] to(Field[] a) {
         MetaAnnotatedField[] b = new MetaAnnotatedField[a.length];
         for (int i = 0; i < a.length; i++) {
-            b[i] = new MetaAnnotatedField(a[i]);
+            b[i] = to(a[i]);
         }
         return b;
     }
 
     private MetaAnnotatedField to(Field field) {
-        return new MetaAnnotatedField(field);
+        return (field == null) ? null : MetaAnnotatedField.of(field);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.metatype.scan.MetatypeScanner;
+
+/**
+ * Resolves many classes at once, spreading the wrapper creation and the
+ * unrolling of each class and its declared members over a ForkJoinPool.
+ * <p/>
+ * The results are the canonical wrappers of {@link MetaAnnotatedClass#of},
+ * fully unrolled, in the order the classes were given.  All workers share the
+ * per annotation type caches, so each meta-annotation is still unrolled once.
+ *
+ * @author David Blevins
+ */
+public final class MetaAnnotatedClasses {
+
+    /**
+     * Classes per task below which a task stops splitting
+     */
+    private static final int THRESHOLD = 8;
+
+    private MetaAnnotatedClasses() {
+    }
+
+    public static List<MetaAnnotatedClass<?>> resolve(Collection<? extends Class<?>> classes) {
+        final ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return resolve(classes, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public static List<MetaAnnotatedClass<?>> resolve(Collection<? extends Class<?>> classes, ForkJoinPool pool) {
+        final Class<?>[] input = classes.toArray(new Class<?>[classes.size()]);
+        final MetaAnnotatedClass<?>[] resolved = new MetaAnnotatedClass<?>[input.length];
+
+        pool.invoke(new Resolve(input, null, null, resolved, 0, input.length));
+
+        return Collections.unmodifiableList(Arrays.asList(resolved));
+    }
+
+    /**
+     * Loads, without initializing, and resolves every class in the jar, ordered by class name.
+     * Classes that cannot be loaded or linked are left out.
+     */
+    public static List<MetaAnnotatedClass<?>> resolve(File jar, ClassLoader loader) throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return resolve(jar, loader, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public static List<MetaAnnotatedClass<?>> resolve(File jar, ClassLoader loader, ForkJoinPool pool) throws IOException {
+        return resolve(jar, loader, pool, new ArrayList<String>());
+    }
+
+    /**
+     * As {@link #resolve(File, ClassLoader, ForkJoinPool)}, adding the names of the
+     * classes left out to unloadable
+     */
+    public static List<MetaAnnotatedClass<?>> resolve(File jar, ClassLoader loader, ForkJoinPool pool, Collection<? super String> unloadable) throws IOException {
+        final String[] names = classNames(jar);
+        final MetaAnnotatedClass<?>[] resolved = new MetaAnnotatedClass<?>[names.length];
+
+        pool.invoke(new Resolve(new Class<?>[names.length], names, loader, resolved, 0, names.length));
+
+        final List<MetaAnnotatedClass<?>> loaded = new ArrayList<MetaAnnotatedClass<?>>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            if (resolved[i] != null) {
+                loaded.add(resolved[i]);
+            } else {
+                unloadable.add(names[i]);
+            }
+        }
+
+        return Collections.unmodifiableList(loaded);
+    }
+
+    /**
+     * Unrolls the annotations of the class, its declared fields, methods and
+     * constructors and their parameters
+     */
+    static void unroll(MetaAnnotatedClass<?> clazz) {
+        clazz.getMetaAnnotations();
+
+        for (MetaAnnotatedField field : clazz.getDeclaredFields()) {
+            field.getMetaAnnotations();
+        }
+
+        for (MetaAnnotatedMethod method : clazz.getDeclaredMethods()) {
+            method.getMetaAnnotations();
+            method.getParameterAnnotations();
+        }
+
+        for (MetaAnnotatedConstructor<?> constructor : clazz.getDeclaredConstructors()) {
+            constructor.getMetaAnnotations();
+            constructor.getParameterAnnotations();
+        }
+    }
+
+    private static String[] classNames(File jar) throws IOException {
+        final List<String> names = new ArrayList<String>();
+
+        final JarFile file = new JarFile(jar);
+        try {
+            final Enumeration<JarEntry> entries = file.entries();
+            while (entries.hasMoreElements()) {
+                final String name = entries.nextElement().getName();
+
+                if (!MetatypeScanner.isClassFile(name)) continue;
+
+                names.add(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+            }
+        } finally {
+            file.close();
+        }
+
+        Collections.sort(names);
+
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Each task owns the slots [from, to) of the result array, which is what
+     * keeps the output in input order however the work is stolen.
+     */
+    private static final class Resolve extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Class<?>[] classes;
+        private final String[] names;
+        private final ClassLoader loader;
+        private final MetaAnnotatedClass<?>[] resolved;
+        private final int from;
+        private final int to;
+
+        private Resolve(Class<?>[] classes, String[] names, ClassLoader loader, MetaAnnotatedClass<?>[] resolved, int from, int to) {
+            this.classes = classes;
+            this.names = names;
+            this.loader = loader;
+            this.resolved = resolved;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    resolved[i] = (names == null) ? resolve(classes[i]) : resolve(names[i]);
+                }
+                return;
+            }
+
+            final int middle = (from + to) >>> 1;
+
+            invokeAll(new Resolve(classes, names, loader, resolved, from, middle),
+                    new Resolve(classes, names, loader, resolved, middle, to));
+        }
+
+        private static MetaAnnotatedClass<?> resolve(Class<?> type) {
+            final MetaAnnotatedClass<?> clazz = MetaAnnotatedClass.of(type);
+            unroll(clazz);
+            return clazz;
+        }
+
+        /**
+         * Null, leaving the slot empty, if the class or one it refers to cannot be loaded
+         */
+        private MetaAnnotatedClass<?> resolve(String name) {
+            try {
+                return resolve(Class.forName(name, false, loader));
+            } catch (ClassNotFoundException e) {
+                return null;
+            } catch (LinkageError e) {
+                return null;
+            }
+        }
+    }
+}
@@ -23,11 +23,25 @@ import java.lang.reflect.Constructor;
  */
 public class MetaAnnotatedConstructor<T> extends MetaAnnotatedObject<Constructor<T>> implements AnnotatedMethod<Constructor<T>> {
 
-    private Annotation[][] parameterAnnotations;
+    private static final MemberWrappers<Constructor<?>, MetaAnnotatedConstructor<?>> instances = new MemberWrappers<Constructor<?>, MetaAnnotatedConstructor<?>>() {
+        @Override
+        protected MetaAnnotatedConstructor<?> create(Constructor<?> constructor) {
+            return new MetaAnnotatedConstructor(constructor);
+        }
+    };
+
+    private volatile UnrolledParameters parameters;
+
+    /**
+     * Returns the canonical wrapper for the constructor, the same instance
+     * for every equal Constructor.
+     */
+    public static <T> MetaAnnotatedConstructor<T> of(Constructor<T> constructor) {
+        return (MetaAnnotatedConstructor<T>) instances.of(constructor);
+    }
 
     public MetaAnnotatedConstructor(Constructor<T> target) {
-        super(target, unroll(target));
-        this.parameterAnnotations = unrollParameters(target.getParameterAnnotations());
+        super(target);
     }
 
     public Annotation[] getDeclaredAnnotations() {
@@ -35,7 +49,25 @@ public class MetaAnnotatedConstructor<T> extends MetaAnnotatedObject<Constructor
     }
 
     public Annotation[][] getParameterAnnotations() {
-        return parameterAnnotations;
+        return parameters().getAll();
+    }
+
+    /**
+     * The unrolled annotations of a single parameter, without unrolling the others
+     */
+    public Annotation[] getParameterAnnotations(int index) {
+        return parameters().get(index);
+    }
+
+    private UnrolledParameters parameters() {
+        UnrolledParameters parameters = this.parameters;
+
+        if (parameters == null) {
+            parameters = new UnrolledParameters(get().getParameterAnnotations());
+            this.parameters = parameters;
+        }
+
+        return parameters;
     }
 
     public Class<?> getDeclaringClass() {
@@ -23,8 +23,23 @@ import java.lang.reflect.Field;
  */
 public class MetaAnnotatedField extends MetaAnnotatedObject<Field> implements AnnotatedMember<Field> {
 
+    private static final MemberWrappers<Field, MetaAnnotatedField> instances = new MemberWrappers<Field, MetaAnnotatedField>() {
+        @Override
+        protected MetaAnnotatedField create(Field field) {
+            return new MetaAnnotatedField(field);
+        }
+    };
+
+    /**
+     * Returns the canonical wrapper for the field, the same instance
+     * for every equal Field.
+     */
+    public static MetaAnnotatedField of(Field field) {
+        return instances.of(field);
+    }
+
     public MetaAnnotatedField(Field field) {
-        super(field, unroll(field));
+        super(field);
     }
 
     public Annotation[] getDeclaredAnnotations() {
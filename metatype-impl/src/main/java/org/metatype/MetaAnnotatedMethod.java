@@ -26,12 +26,29 @@ import java.util.Map;
  */
 public class MetaAnnotatedMethod extends MetaAnnotatedObject<Method> implements AnnotatedMethod<Method> {
 
-    private final Annotation[][] parameterAnnotations;
+    private static final MemberWrappers<Method, MetaAnnotatedMethod> instances = new MemberWrappers<Method, MetaAnnotatedMethod>() {
+        @Override
+        protected MetaAnnotatedMethod create(Method method) {
+            return new MetaAnnotatedMethod(method);
+        }
+    };
+
+    private volatile UnrolledParameters parameters;
+
+    /**
+     * Returns the canonical wrapper for the method, the same instance
+     * for every equal Method.
+     */
+    public static MetaAnnotatedMethod of(Method method) {
+        return instances.of(method);
+    }
 
     public MetaAnnotatedMethod(Method method) {
-        super(method, unroll(method));
+        super(method);
+    }
 
-        this.parameterAnnotations = unrollParameters(method.getParameterAnnotations());
+    MetaAnnotatedMethod(Method method, Map<Class<? extends Annotation>, MetaAnnotation<?>> annotations) {
+        super(method, annotations);
     }
 
     public Annotation[] getDeclaredAnnotations() {
@@ -39,7 +56,25 @@ public class MetaAnnotatedMethod extends MetaAnnotatedObject<Method> implements
     }
 
     public Annotation[][] getParameterAnnotations() {
-        return parameterAnnotations;
+        return parameters().getAll();
+    }
+
+    /**
+     * The unrolled annotations of a single parameter, without unrolling the others
+     */
+    public Annotation[] getParameterAnnotations(int index) {
+        return parameters().get(index);
+    }
+
+    private UnrolledParameters parameters() {
+        UnrolledParameters parameters = this.parameters;
+
+        if (parameters == null) {
+            parameters = new UnrolledParameters(target.getParameterAnnotations());
+            this.parameters = parameters;
+        }
+
+        return parameters;
     }
 
     public Class<?> getDeclaringClass() {
@@ -18,7 +18,8 @@ package org.metatype;
 import javax.annotation.Metaroot;
 import javax.annotation.Metatype;
 
-import static java.util.Arrays.asList;
+import org.metatype.scan.MetatypeIndex;
+import org.metatype.scan.ScannedElement;
 
 import java.lang.annotation.Annotation;
 import java.lang.annotation.Documented;
@@ -27,24 +28,170 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * @author David Blevins
  */
 public abstract class MetaAnnotatedObject<T> implements MetaAnnotated<T> {
-    protected final Map<Class<? extends Annotation>, MetaAnnotation<?>> annotations = new HashMap<Class<? extends Annotation>, MetaAnnotation<?>>();
+
+    /**
+     * The unrolled meta-annotations of each annotation type, with depths relative
+     * to the annotation type itself.  The values hang off the annotation Class, so
+     * they are released along with the class loader that defined the annotation.
+     */
+    private static final ClassValue<Map<Class<? extends Annotation>, MetaAnnotation<?>>> closures = new ClassValue<Map<Class<? extends Annotation>, MetaAnnotation<?>>>() {
+        @Override
+        protected Map<Class<? extends Annotation>, MetaAnnotation<?>> computeValue(Class<?> type) {
+            final Class<? extends Annotation> annotationType = type.asSubclass(Annotation.class);
+
+            final MetatypeListener listener = MetatypeListeners.listener;
+            final boolean timed = listener != null && listener.wantsTiming();
+            final long start = timed ? System.nanoTime() : 0;
+
+            // meta-annotations compiled with the metatype-processor ship their closure
+            if (isMetaAnnotation(annotationType)) {
+                final Map<Class<? extends Annotation>, MetaAnnotation<?>> precomputed = PrecomputedClosures.load(annotationType);
+
+                if (precomputed != null) {
+                    if (listener != null) closureResolved(listener, annotationType, precomputed, true, timed, start);
+                    return Collections.unmodifiableMap(precomputed);
+                }
+            }
+
+            final Map<Class<? extends Annotation>, MetaAnnotation<?>> found = reflect(annotationType);
+
+            if (listener != null) closureResolved(listener, annotationType, found, false, timed, start);
+
+            return Collections.unmodifiableMap(found);
+        }
+    };
+
+    private static final Comparator<Annotation> BY_TYPE_NAME = new Comparator<Annotation>() {
+        public int compare(Annotation a, Annotation b) {
+            return a.annotationType().getName().compareTo(b.annotationType().getName());
+        }
+    };
+
+    /**
+     * The annotations each meta-annotation carries over, i.e. those declared on it
+     * plus those bound to it in its "$" definition class.  Computing this means
+     * looking up the definition class, which usually does not exist, so a miss is
+     * remembered just like a hit.
+     */
+    private static final ClassValue<Collection<Annotation>> declaredMetaAnnotations = new ClassValue<Collection<Annotation>>() {
+        @Override
+        protected Collection<Annotation> computeValue(Class<?> type) {
+            final Class<? extends Annotation> clazz = type.asSubclass(Annotation.class);
+
+            Map<Class, Annotation> map = new HashMap<Class, Annotation>();
+
+            // pull in the annotations declared on this annotation
+
+            for (Annotation annotation : clazz.getDeclaredAnnotations()) {
+                map.put(annotation.annotationType(), annotation);
+            }
+
+            Class<? extends Annotation> metatype = getMetatype(clazz);
+            if (metatype != null) {
+                for (Annotation[] annotations : getDefinitions(clazz)) {
+                    for (Annotation annotation : annotations) {
+                        map.put(annotation.annotationType(), annotation);
+                    }
+                }
+            }
+
+            // TODO: why not? maybe ignore all annotations that are not applicable
+            map.remove(Target.class);
+            map.remove(Retention.class);
+            map.remove(Documented.class);
+            // if the chicken is an egg, carry it forward
+            if (!isMetaAnnotation(metatype))
+                map.remove(metatype);
+            map.remove(clazz);
+
+            final List<Annotation> declared = new ArrayList<Annotation>(map.values());
+
+            // unrolled in type name order, as the metatype-processor does, so ties at one depth resolve the same
+            Collections.sort(declared, BY_TYPE_NAME);
+
+            return Collections.unmodifiableList(declared);
+        }
+    };
+
+    /**
+     * The metatype annotation (@Metatype or anything annotated @Metaroot) declared
+     * on each annotation type, or null if the annotation is not a meta-annotation.
+     */
+    private static final ClassValue<Class<? extends Annotation>> metatypes = new ClassValue<Class<? extends Annotation>>() {
+        @Override
+        protected Class<? extends Annotation> computeValue(Class<?> clazz) {
+            for (Annotation annotation : clazz.getDeclaredAnnotations()) {
+                Class<? extends Annotation> type = annotation.annotationType();
+
+                if (isMetatypeAnnotation(type)) return type;
+            }
+
+            return null;
+        }
+    };
+
+    /**
+     * Whether each annotation type is @Metatype or is itself annotated @Metaroot.
+     */
+    private static final ClassValue<Boolean> metatypeAnnotations = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            if (Metatype.class.equals(type)) return true;
+
+            for (Annotation annotation : type.getAnnotations()) {
+                if (Metaroot.class.equals(annotation.annotationType())) return true;
+            }
+
+            return false;
+        }
+    };
+
     protected final T target;
 
+    /**
+     * Unrolled on the first annotation query, see {@link #annotations()}
+     */
+    private volatile MetaAnnotationTable annotations;
+
+    /**
+     * The entry of a registered MetatypeIndex, looked up until one is found so an
+     * index registered after the wrapper was created is still used
+     */
+    private volatile ScannedElement indexed;
+
+    MetaAnnotatedObject(T target) {
+        this.target = target;
+
+        final MetatypeListener listener = MetatypeListeners.listener;
+        if (listener != null) listener.wrapperCreated((AnnotatedElement) target);
+    }
+
     MetaAnnotatedObject(T target, Map<Class<? extends Annotation>, MetaAnnotation<?>> annotations) {
+        this(target, MetaAnnotationTable.of(annotations));
+    }
+
+    MetaAnnotatedObject(T target, MetaAnnotationTable annotations) {
         this.target = target;
-        this.annotations.putAll(annotations);
+        this.annotations = annotations;
+
+        final MetatypeListener listener = MetatypeListeners.listener;
+        if (listener != null) listener.wrapperCreated((AnnotatedElement) target);
     }
 
     public T get() {
@@ -52,27 +199,98 @@ public abstract class MetaAnnotatedObject<T> implements MetaAnnotated<T> {
     }
 
     public boolean isAnnotationPresent(Class<? extends Annotation> annotationClass) {
-        return annotations.containsKey(annotationClass);
+        final MetaAnnotationTable annotations = this.annotations;
+        if (annotations != null) return annotations.contains(annotationClass);
+
+        // answered from the index without unrolling
+        final ScannedElement indexed = indexed();
+        if (indexed != null) return indexed.isAnnotationPresent(annotationClass.getName());
+
+        return annotations().contains(annotationClass);
+    }
+
+    /**
+     * True if at least one of the types is present, directly or through a metatype chain
+     */
+    public boolean anyOf(AnnotationTypeSet types) {
+        return annotations().anyOf(types);
+    }
+
+    /**
+     * True if every one of the types is present, directly or through a metatype chain
+     */
+    public boolean allOf(AnnotationTypeSet types) {
+        return annotations().allOf(types);
+    }
+
+    /**
+     * True if none of the types is present, directly or through a metatype chain
+     */
+    public boolean noneOf(AnnotationTypeSet types) {
+        return !annotations().anyOf(types);
     }
 
     public <T extends Annotation> T getAnnotation(Class<T> annotationClass) {
-        MetaAnnotation<T> annotation = (MetaAnnotation<T>) annotations.get(annotationClass);
+        MetaAnnotation<T> annotation = (MetaAnnotation<T>) annotations().get(annotationClass);
         return (annotation == null) ? null : annotation.get();
     }
 
     public Annotation[] getAnnotations() {
-        Annotation[] annotations = new Annotation[this.annotations.size()];
+        final Annotation[] annotations = annotations().annotations();
+
+        // an empty array cannot be modified, no need to copy it
+        return (annotations.length == 0) ? annotations : annotations.clone();
+    }
+
+    /**
+     * The same annotations as {@link #getAnnotations()} as an unmodifiable list.
+     * The list is built once, so repeated calls do not allocate.
+     */
+    public List<Annotation> getAnnotationList() {
+        return annotations().annotationList();
+    }
+
+    public Collection<MetaAnnotation<?>> getMetaAnnotations() {
+        return annotations().values();
+    }
+
+    /**
+     * Wrappers are cheap to create and only pay for unrolling when asked about
+     * their annotations.  Two threads racing here compute the same result, the
+     * volatile write makes the fully built table visible to both.
+     */
+    MetaAnnotationTable annotations() {
+        MetaAnnotationTable annotations = this.annotations;
+
+        if (annotations == null) {
+            final ScannedElement indexed = indexed();
+
+            if (indexed != null && indexed.getAnnotations().isEmpty()) {
+                annotations = MetaAnnotationTable.EMPTY;
+            } else {
+                final MetatypeListener listener = MetatypeListeners.listener;
+                final boolean timed = listener != null && listener.wantsTiming();
+                final long start = timed ? System.nanoTime() : 0;
+
+                annotations = MetaAnnotationTable.of(unroll((AnnotatedElement) target));
 
-        int i = 0;
-        for (MetaAnnotation annotation : this.annotations.values()) {
-            annotations[i++] = annotation.get();
+                if (listener != null) listener.elementUnrolled((AnnotatedElement) target, annotations.size(), timed ? System.nanoTime() - start : 0);
+            }
+            this.annotations = annotations;
         }
 
         return annotations;
     }
 
-    public Collection<MetaAnnotation<?>> getMetaAnnotations() {
-        return Collections.unmodifiableCollection(annotations.values());
+    private ScannedElement indexed() {
+        ScannedElement indexed = this.indexed;
+
+        if (indexed == null) {
+            indexed = MetatypeIndex.lookup((AnnotatedElement) target);
+            this.indexed = indexed;
+        }
+
+        return indexed;
     }
 
     @Override
@@ -91,6 +309,21 @@ public abstract class MetaAnnotatedObject<T> implements MetaAnnotated<T> {
     }
 
 
+    /**
+     * The closure of the annotation type computed by reflection, never from the
+     * metatype-processor output
+     */
+    static Map<Class<? extends Annotation>, MetaAnnotation<?>> reflect(Class<? extends Annotation> type) {
+        final Map<Class<? extends Annotation>, MetaAnnotation<?>> found = new LinkedHashMap<Class<? extends Annotation>, MetaAnnotation<?>>();
+
+        unroll(type, 1, found);
+
+        // circular chains can lead back to the annotation itself, it is always at depth 0
+        found.remove(type);
+
+        return found;
+    }
+
     private static void unroll(Class<? extends Annotation> clazz, int depth, Map<Class<? extends Annotation>, MetaAnnotation<?>> found) {
         if (!isMetaAnnotation(clazz)) return;
 
@@ -120,7 +353,10 @@ public abstract class MetaAnnotatedObject<T> implements MetaAnnotated<T> {
                     // CONFLICT
 
                     // They are the same depth and therefore conflicting
-                    existing.getConflicts().add(new MetaAnnotation(annotation, depth));
+                    found.put(type, existing.withConflict(new MetaAnnotation(annotation, depth)));
+
+                    final MetatypeListener listener = MetatypeListeners.listener;
+                    if (listener != null) listener.conflict(type, depth);
 
                 }
 
@@ -136,67 +372,91 @@ public abstract class MetaAnnotatedObject<T> implements MetaAnnotated<T> {
         }
     }
 
-    private static Collection<Annotation> getDeclaredMetaAnnotations(Class<? extends Annotation> clazz) {
+    private static void closureResolved(MetatypeListener listener, Class<? extends Annotation> type, Map<Class<? extends Annotation>, MetaAnnotation<?>> closure, boolean precomputed, boolean timed, long start) {
+        int maxDepth = 0;
+        for (MetaAnnotation<?> metaAnnotation : closure.values()) {
+            maxDepth = Math.max(maxDepth, metaAnnotation.getDepth());
+        }
 
-        Map<Class, Annotation> map = new HashMap<Class, Annotation>();
+        listener.closureResolved(type, closure.size(), maxDepth, precomputed, timed ? System.nanoTime() - start : 0);
+    }
 
-        // pull in the annotations declared on this annotation
+    private static Collection<Annotation> getDeclaredMetaAnnotations(Class<? extends Annotation> clazz) {
+        return declaredMetaAnnotations.get(clazz);
+    }
 
-        for (Annotation annotation : clazz.getDeclaredAnnotations()) {
-            map.put(annotation.annotationType(), annotation);
+    /**
+     * Gathers the annotations the metatype definition class (the nested "$" class)
+     * applies alongside the given annotation, from its fields, constructors, methods
+     * and parameters.  Returns an empty list when there is no definition class.
+     * <p/>
+     * The groups come in the order of their member names, e.g. "method:m(int)@0",
+     * as the metatype-processor sorts them, since later groups win.
+     */
+    private static List<Annotation[]> getDefinitions(Class<? extends Annotation> clazz) {
+        final MetatypeListener listener = MetatypeListeners.listener;
+
+        final Class<?> def;
+        try {
+            def = Class.forName(clazz.getName() + "$$", false, clazz.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            // inner class is optional
+            if (listener != null) listener.definitionLookup(clazz, false);
+            return Collections.emptyList();
         }
 
-        List<Annotation[]> groups = new ArrayList<Annotation[]>();
+        if (listener != null) listener.definitionLookup(clazz, true);
 
-        Class<? extends Annotation> metatype = getMetatype(clazz);
-        if (metatype != null) {
-            try {
-                Class<?> def = clazz.getClassLoader().loadClass(clazz.getName() + "$$");
+        final List<Annotation[]> definitions = new ArrayList<Annotation[]>();
 
-                List<AnnotatedElement> elements = new ArrayList<AnnotatedElement>();
+        for (Annotation[] annotations : members(def).values()) {
+            if (contains(annotations, clazz)) definitions.add(annotations);
+        }
 
-                elements.addAll(asList(def.getDeclaredFields()));
-                elements.addAll(asList(def.getDeclaredConstructors()));
-                elements.addAll(asList(def.getDeclaredMethods()));
+        return definitions;
+    }
 
-                for (Method method : def.getDeclaredMethods()) {
-                    for (Annotation[] array : method.getParameterAnnotations()) {
-                        groups.add(array);
-                    }
-                }
+    /**
+     * The annotations of each member and parameter of a definition class, keyed
+     * and ordered by member name, e.g. "method:m(int)@0"
+     */
+    static Map<String, Annotation[]> members(Class<?> def) {
+        final Map<String, Annotation[]> groups = new TreeMap<String, Annotation[]>();
 
-                for (Constructor constructor : def.getDeclaredConstructors()) {
-                    for (Annotation[] array : constructor.getParameterAnnotations()) {
-                        groups.add(array);
-                    }
-                }
+        for (Method method : def.getDeclaredMethods()) {
+            final String member = "method:" + method.getName() + parameters(method.getParameterTypes());
+            groups.put(member, method.getDeclaredAnnotations());
 
-                for (AnnotatedElement element : elements) {
-                    groups.add(element.getDeclaredAnnotations());
-                }
+            final Annotation[][] parameters = method.getParameterAnnotations();
+            for (int i = 0; i < parameters.length; i++) {
+                groups.put(member + "@" + i, parameters[i]);
+            }
+        }
 
-                for (Annotation[] annotations : groups) {
-                    if (contains(annotations, clazz)) {
-                        for (Annotation annotation : annotations) {
-                            map.put(annotation.annotationType(), annotation);
-                        }
-                    }
-                }
-            } catch (ClassNotFoundException e) {
-                // inner class is optional
+        for (Constructor constructor : def.getDeclaredConstructors()) {
+            final String member = "constructor:" + parameters(constructor.getParameterTypes());
+            groups.put(member, constructor.getDeclaredAnnotations());
+
+            final Annotation[][] parameters = constructor.getParameterAnnotations();
+            for (int i = 0; i < parameters.length; i++) {
+                groups.put(member + "@" + i, parameters[i]);
             }
         }
 
-        // TODO: why not? maybe ignore all annotations that are not applicable
-        map.remove(Target.class);
-        map.remove(Retention.class);
-        map.remove(Documented.class);
-        // if the chicken is an egg, carry it forward
-        if (!isMetaAnnotation(metatype))
-            map.remove(metatype);
-        map.remove(clazz);
+        for (Field field : def.getDeclaredFields()) {
+            groups.put("field:" + field.getName(), field.getDeclaredAnnotations());
+        }
+
+        return groups;
+    }
 
-        return map.values();
+    private static String parameters(Class<?>[] types) {
+        final StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < types.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(types[i].getName());
+        }
+        return sb.append(')').toString();
     }
 
     private static boolean contains(Annotation[] annotations, Class<? extends Annotation> clazz) {
@@ -207,31 +467,15 @@ public abstract class MetaAnnotatedObject<T> implements MetaAnnotated<T> {
     }
 
     private static Class<? extends Annotation> getMetatype(Class<? extends Annotation> clazz) {
-        for (Annotation annotation : clazz.getDeclaredAnnotations()) {
-            Class<? extends Annotation> type = annotation.annotationType();
-
-            if (isMetatypeAnnotation(type)) return type;
-        }
-
-        return null;
+        return metatypes.get(clazz);
     }
 
     private static boolean isMetaAnnotation(Class<? extends Annotation> clazz) {
-        for (Annotation annotation : clazz.getDeclaredAnnotations()) {
-            if (isMetatypeAnnotation(annotation.annotationType())) return true;
-        }
-
-        return false;
+        return metatypes.get(clazz) != null;
     }
 
     private static boolean isMetatypeAnnotation(Class<? extends Annotation> type) {
-        if (Metatype.class.equals(type)) return true;
-
-        for (Annotation annotation : type.getAnnotations()) {
-            if (Metaroot.class.equals(annotation.annotationType())) return true;
-        }
-
-        return false;
+        return metatypeAnnotations.get(type);
     }
 
     private static boolean validTarget(Class<? extends Annotation> type) {
@@ -252,32 +496,53 @@ public abstract class MetaAnnotatedObject<T> implements MetaAnnotated<T> {
         final Map<Class<? extends Annotation>, MetaAnnotation<?>> map = new HashMap<Class<? extends Annotation>, MetaAnnotation<?>>();
 
         for (Annotation annotation : annotations) {
-
             map.put(annotation.annotationType(), new MetaAnnotation(annotation, 0));
+        }
 
-            unroll(annotation.annotationType(), 1, map);
-
+        for (Annotation annotation : annotations) {
+            merge(closures.get(annotation.annotationType()), map);
         }
 
         return map;
     }
 
-    protected Annotation[][] unrollParameters(Annotation[][] parameterAnnotations) {
-        final Annotation[][] unrolledParameters = new Annotation[parameterAnnotations.length][];
+    private static void merge(Map<Class<? extends Annotation>, MetaAnnotation<?>> closure, Map<Class<? extends Annotation>, MetaAnnotation<?>> found) {
+        for (Map.Entry<Class<? extends Annotation>, MetaAnnotation<?>> entry : closure.entrySet()) {
+            final MetaAnnotation candidate = entry.getValue();
+
+            final MetaAnnotation existing = found.get(entry.getKey());
+
+            if (existing == null || existing.getDepth() > candidate.getDepth()) {
+
+                // NEW or OVERWRITE
+
+                // immutable, so the cached closure entry can be shared
+                found.put(entry.getKey(), candidate);
 
-        int i = 0;
-        for (Annotation[] annotations : parameterAnnotations) {
-            final Map<Class<? extends Annotation>, MetaAnnotation<?>> map = unroll(annotations);
+            } else if (existing.getDepth() == candidate.getDepth() && existing.get() != candidate.get()) {
 
-            int j = 0;
+                // CONFLICT
+
+                // Reached through two different paths at the same depth
+                found.put(entry.getKey(), existing.withConflict(candidate));
+
+                final MetatypeListener listener = MetatypeListeners.listener;
+                if (listener != null) listener.conflict(entry.getKey(), candidate.getDepth());
 
-            final Annotation[] unrolled = new Annotation[map.size()];
-            for (MetaAnnotation<?> metaAnnotation : map.values()) {
-                unrolled[j++] = metaAnnotation.get();
             }
+        }
+    }
 
-            unrolledParameters[i++] = unrolled;
+    static Annotation[] unrollParameter(Annotation[] annotations) {
+        final Map<Class<? extends Annotation>, MetaAnnotation<?>> map = unroll(annotations);
+
+        int j = 0;
+
+        final Annotation[] unrolled = new Annotation[map.size()];
+        for (MetaAnnotation<?> metaAnnotation : map.values()) {
+            unrolled[j++] = MaterializedAnnotations.ENABLED ? MaterializedAnnotation.of(metaAnnotation.get()) : metaAnnotation.get();
         }
-        return unrolledParameters;
+
+        return unrolled;
     }
 }
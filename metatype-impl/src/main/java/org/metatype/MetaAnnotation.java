@@ -17,20 +17,49 @@ package org.metatype;
 
 import java.lang.annotation.Annotation;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
+ * Immutable once built, so resolved tables can be cached and shared between
+ * threads.  Resolution records a conflict by replacing the entry with a copy,
+ * see {@link #withConflict}.
+ *
  * @author David Blevins
  */
-public class MetaAnnotation<T extends Annotation> {
+public final class MetaAnnotation<T extends Annotation> {
     private final T annotation;
     private final int depth;
 
-    private final List<MetaAnnotation<T>> conflicts = new ArrayList<MetaAnnotation<T>>();
+    private final List<MetaAnnotation<T>> conflicts;
 
     MetaAnnotation(T annotation, int depth) {
+        this(annotation, depth, Collections.<MetaAnnotation<T>>emptyList());
+    }
+
+    private MetaAnnotation(T annotation, int depth, List<MetaAnnotation<T>> conflicts) {
         this.annotation = annotation;
         this.depth = depth;
+        this.conflicts = conflicts;
+    }
+
+    /**
+     * A copy that also lists the other annotation, and whatever it conflicted with, as conflicts
+     */
+    MetaAnnotation<T> withConflict(MetaAnnotation<T> other) {
+        final List<MetaAnnotation<T>> list = new ArrayList<MetaAnnotation<T>>(conflicts.size() + 1 + other.conflicts.size());
+        list.addAll(conflicts);
+        list.add(other);
+        list.addAll(other.conflicts);
+
+        return new MetaAnnotation<T>(annotation, depth, Collections.unmodifiableList(list));
+    }
+
+    /**
+     * A copy holding an equal annotation, see {@link MaterializedAnnotation}
+     */
+    MetaAnnotation<T> with(T annotation) {
+        return new MetaAnnotation<T>(annotation, depth, conflicts);
     }
 
     public T get() {
@@ -41,6 +70,9 @@ public class MetaAnnotation<T extends Annotation> {
         return depth;
     }
 
+    /**
+     * The annotations of the same type found at the same depth, unmodifiable
+     */
     public List<MetaAnnotation<T>> getConflicts() {
         return conflicts;
     }
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps each resolved annotation type, including those only reached through
+ * metatype chains, to the classes, fields, methods, constructors and parameters
+ * that carry it.  Built once from a set of classes, lookups are a single hash
+ * lookup.
+ *
+ * @author David Blevins
+ */
+public final class MetaAnnotationIndex {
+
+    private final Map<Class<? extends Annotation>, Entry> entries;
+
+    private MetaAnnotationIndex(Map<Class<? extends Annotation>, Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Indexes the classes and their declared members, resolving them in parallel
+     * with {@link MetaAnnotatedClasses#resolve(Collection)}
+     */
+    public static MetaAnnotationIndex of(Collection<? extends Class<?>> classes) {
+        final Map<Class<? extends Annotation>, Entry> entries = new HashMap<Class<? extends Annotation>, Entry>();
+
+        for (MetaAnnotatedClass<?> clazz : MetaAnnotatedClasses.resolve(classes)) {
+            for (MetaAnnotation<?> annotation : clazz.getMetaAnnotations()) {
+                entry(entries, annotation).classes.add(clazz);
+            }
+
+            for (MetaAnnotatedField field : clazz.getDeclaredFields()) {
+                for (MetaAnnotation<?> annotation : field.getMetaAnnotations()) {
+                    entry(entries, annotation).fields.add(field);
+                }
+            }
+
+            for (MetaAnnotatedMethod method : clazz.getDeclaredMethods()) {
+                for (MetaAnnotation<?> annotation : method.getMetaAnnotations()) {
+                    entry(entries, annotation).methods.add(method);
+                }
+                parameters(entries, method, method.getParameterAnnotations());
+            }
+
+            for (MetaAnnotatedConstructor<?> constructor : clazz.getDeclaredConstructors()) {
+                for (MetaAnnotation<?> annotation : constructor.getMetaAnnotations()) {
+                    entry(entries, annotation).constructors.add(constructor);
+                }
+                parameters(entries, constructor, constructor.getParameterAnnotations());
+            }
+        }
+
+        for (Entry entry : entries.values()) {
+            entry.freeze();
+        }
+
+        return new MetaAnnotationIndex(entries);
+    }
+
+    /**
+     * The annotation types carried by at least one indexed element
+     */
+    public Set<Class<? extends Annotation>> getAnnotationTypes() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    public List<MetaAnnotatedClass<?>> getClasses(Class<? extends Annotation> type) {
+        final Entry entry = entries.get(type);
+        return (entry == null) ? Collections.<MetaAnnotatedClass<?>>emptyList() : entry.classes;
+    }
+
+    public List<MetaAnnotatedField> getFields(Class<? extends Annotation> type) {
+        final Entry entry = entries.get(type);
+        return (entry == null) ? Collections.<MetaAnnotatedField>emptyList() : entry.fields;
+    }
+
+    public List<MetaAnnotatedMethod> getMethods(Class<? extends Annotation> type) {
+        final Entry entry = entries.get(type);
+        return (entry == null) ? Collections.<MetaAnnotatedMethod>emptyList() : entry.methods;
+    }
+
+    public List<MetaAnnotatedConstructor<?>> getConstructors(Class<? extends Annotation> type) {
+        final Entry entry = entries.get(type);
+        return (entry == null) ? Collections.<MetaAnnotatedConstructor<?>>emptyList() : entry.constructors;
+    }
+
+    public List<Parameter> getParameters(Class<? extends Annotation> type) {
+        final Entry entry = entries.get(type);
+        return (entry == null) ? Collections.<Parameter>emptyList() : entry.parameters;
+    }
+
+    private static void parameters(Map<Class<? extends Annotation>, Entry> entries, AnnotatedMethod<?> method, Annotation[][] parameterAnnotations) {
+        for (int i = 0; i < parameterAnnotations.length; i++) {
+            if (parameterAnnotations[i].length == 0) continue;
+
+            final Parameter parameter = new Parameter(method, i, parameterAnnotations[i]);
+
+            for (Annotation annotation : parameterAnnotations[i]) {
+                entry(entries, annotation.annotationType()).parameters.add(parameter);
+            }
+        }
+    }
+
+    private static Entry entry(Map<Class<? extends Annotation>, Entry> entries, MetaAnnotation<?> annotation) {
+        return entry(entries, annotation.get().annotationType());
+    }
+
+    private static Entry entry(Map<Class<? extends Annotation>, Entry> entries, Class<? extends Annotation> type) {
+        Entry entry = entries.get(type);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(type, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * A parameter of an indexed method or constructor and its unrolled annotations
+     */
+    public static final class Parameter {
+        private final AnnotatedMethod<?> method;
+        private final int index;
+        private final Annotation[] annotations;
+
+        private Parameter(AnnotatedMethod<?> method, int index, Annotation[] annotations) {
+            this.method = method;
+            this.index = index;
+            this.annotations = annotations;
+        }
+
+        /**
+         * The MetaAnnotatedMethod or MetaAnnotatedConstructor declaring the parameter
+         */
+        public AnnotatedMethod<?> getMethod() {
+            return method;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Annotation[] getAnnotations() {
+            return annotations.clone();
+        }
+
+        public String toString() {
+            return method + "[" + index + "]";
+        }
+    }
+
+    private static final class Entry {
+        private List<MetaAnnotatedClass<?>> classes = new ArrayList<MetaAnnotatedClass<?>>();
+        private List<MetaAnnotatedField> fields = new ArrayList<MetaAnnotatedField>();
+        private List<MetaAnnotatedMethod> methods = new ArrayList<MetaAnnotatedMethod>();
+        private List<MetaAnnotatedConstructor<?>> constructors = new ArrayList<MetaAnnotatedConstructor<?>>();
+        private List<Parameter> parameters = new ArrayList<Parameter>();
+
+        private void freeze() {
+            classes = Collections.unmodifiableList(classes);
+            fields = Collections.unmodifiableList(fields);
+            methods = Collections.unmodifiableList(methods);
+            constructors = Collections.unmodifiableList(constructors);
+            parameters = Collections.unmodifiableList(parameters);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, array based lookup of the unrolled annotations of an element.
+ * <p/>
+ * Most elements carry a handful of annotations, those are found with a
+ * linear scan.  Larger tables get an open addressing index on top of the
+ * arrays.
+ *
+ * @author David Blevins
+ */
+final class MetaAnnotationTable {
+
+    /**
+     * Above this size lookups go through the hash index instead of a scan
+     */
+    private static final int LINEAR = 8;
+
+    static final MetaAnnotationTable EMPTY = new MetaAnnotationTable(new Class[0], new MetaAnnotation[0]);
+
+    private final Class<? extends Annotation>[] types;
+    private final MetaAnnotation<?>[] annotations;
+
+    /**
+     * The resolved annotations themselves, in the same order, built on the first
+     * request.  Never handed out unless the caller promises not to modify it, see
+     * {@link #annotations()}
+     */
+    private volatile Annotation[] resolved;
+
+    private volatile List<Annotation> resolvedView;
+    private volatile List<MetaAnnotation<?>> annotationsView;
+
+    /**
+     * Positions in the arrays plus one, zero marks a free slot.  Null for small tables.
+     */
+    private final int[] index;
+
+    /**
+     * The types present as a bitset of their {@link AnnotationTypeSet#id ids}, built
+     * on the first set query.  Racing threads compute the same array.
+     */
+    private volatile long[] bits;
+
+    private MetaAnnotationTable(Class<? extends Annotation>[] types, MetaAnnotation<?>[] annotations) {
+        this.types = types;
+        this.annotations = annotations;
+        this.index = (types.length > LINEAR) ? index(types) : null;
+    }
+
+    public static MetaAnnotationTable of(Map<Class<? extends Annotation>, MetaAnnotation<?>> map) {
+        if (map.isEmpty()) return EMPTY;
+
+        final Class<? extends Annotation>[] types = new Class[map.size()];
+        final MetaAnnotation<?>[] annotations = new MetaAnnotation[map.size()];
+
+        int i = 0;
+        for (Map.Entry<Class<? extends Annotation>, MetaAnnotation<?>> entry : map.entrySet()) {
+            types[i] = entry.getKey();
+            annotations[i++] = MaterializedAnnotations.ENABLED ? materialize(entry.getValue()) : entry.getValue();
+        }
+
+        return new MetaAnnotationTable(types, annotations);
+    }
+
+    private static <A extends Annotation> MetaAnnotation<A> materialize(MetaAnnotation<A> metaAnnotation) {
+        final A materialized = MaterializedAnnotation.of(metaAnnotation.get());
+        return (materialized == metaAnnotation.get()) ? metaAnnotation : metaAnnotation.with(materialized);
+    }
+
+    public int size() {
+        return types.length;
+    }
+
+    public boolean contains(Class<? extends Annotation> type) {
+        return indexOf(type) >= 0;
+    }
+
+    public MetaAnnotation<?> get(Class<? extends Annotation> type) {
+        final int i = indexOf(type);
+        return (i < 0) ? null : annotations[i];
+    }
+
+    public MetaAnnotation<?> get(int i) {
+        return annotations[i];
+    }
+
+    public Class<? extends Annotation> type(int i) {
+        return types[i];
+    }
+
+    public List<MetaAnnotation<?>> values() {
+        List<MetaAnnotation<?>> view = annotationsView;
+        if (view == null) {
+            view = Collections.unmodifiableList(Arrays.asList(annotations));
+            annotationsView = view;
+        }
+        return view;
+    }
+
+    /**
+     * The resolved annotations, shared and not copied.  Callers must not modify it.
+     */
+    public Annotation[] annotations() {
+        Annotation[] resolved = this.resolved;
+        if (resolved == null) {
+            resolved = new Annotation[annotations.length];
+            for (int i = 0; i < annotations.length; i++) {
+                resolved[i] = annotations[i].get();
+            }
+            this.resolved = resolved;
+        }
+        return resolved;
+    }
+
+    public List<Annotation> annotationList() {
+        List<Annotation> view = resolvedView;
+        if (view == null) {
+            view = Collections.unmodifiableList(Arrays.asList(annotations()));
+            resolvedView = view;
+        }
+        return view;
+    }
+
+    public boolean anyOf(AnnotationTypeSet set) {
+        return set.any(bits());
+    }
+
+    public boolean allOf(AnnotationTypeSet set) {
+        return set.all(bits());
+    }
+
+    private long[] bits() {
+        long[] bits = this.bits;
+        if (bits == null) {
+            bits = AnnotationTypeSet.bits(types);
+            this.bits = bits;
+        }
+        return bits;
+    }
+
+    private int indexOf(Class<? extends Annotation> type) {
+        if (index == null) {
+            for (int i = 0; i < types.length; i++) {
+                if (types[i] == type) return i;
+            }
+            return -1;
+        }
+
+        final int mask = index.length - 1;
+
+        for (int slot = spread(type) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+            final int i = index[slot] - 1;
+            if (types[i] == type) return i;
+        }
+
+        return -1;
+    }
+
+    private static int[] index(Class<? extends Annotation>[] types) {
+        // at most half full
+        final int[] index = new int[Integer.highestOneBit(types.length) << 2];
+        final int mask = index.length - 1;
+
+        for (int i = 0; i < types.length; i++) {
+            int slot = spread(types[i]) & mask;
+
+            while (index[slot] != 0) slot = (slot + 1) & mask;
+
+            index[slot] = i + 1;
+        }
+
+        return index;
+    }
+
+    private static int spread(Class<?> type) {
+        final int h = (type == null) ? 0 : type.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+
+/**
+ * Told about the work of the unroll engine.  Implementations are registered
+ * with {@link MetatypeListeners}, either programmatically or through a
+ * META-INF/services/org.metatype.MetatypeListener file.  They are called on the
+ * resolving thread and must be thread safe and quick.
+ * <p/>
+ * With no listener registered each call site costs a single volatile read, and
+ * the clock is only read for listeners that {@link #wantsTiming want the times}.
+ *
+ * @author David Blevins
+ */
+public interface MetatypeListener {
+
+    /**
+     * Asked before each timed piece of work.  When false System.nanoTime is not
+     * called and the nanos passed for that piece of work are 0.
+     */
+    boolean wantsTiming();
+
+    /**
+     * A wrapper was created, its annotations are not resolved yet
+     */
+    void wrapperCreated(AnnotatedElement target);
+
+    /**
+     * The annotations of a class or member were unrolled
+     *
+     * @param annotations the number of resolved annotations
+     */
+    void elementUnrolled(AnnotatedElement element, int annotations, long nanos);
+
+    /**
+     * The closure of an annotation type was computed, this happens once per type
+     *
+     * @param maxDepth    the deepest level of the metatype chains, 0 if there are none
+     * @param precomputed whether it came from the metatype-processor instead of reflection
+     */
+    void closureResolved(Class<? extends Annotation> type, int size, int maxDepth, boolean precomputed, long nanos);
+
+    /**
+     * The "$" definition class of a meta-annotation was looked up
+     */
+    void definitionLookup(Class<? extends Annotation> type, boolean found);
+
+    /**
+     * Two different annotations of the type were found at the same depth
+     */
+    void conflict(Class<? extends Annotation> type, int depth);
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * The registered {@link MetatypeListener}s.  Those listed in
+ * META-INF/services/org.metatype.MetatypeListener are registered the first
+ * time this class is used.
+ *
+ * @author David Blevins
+ */
+public final class MetatypeListeners {
+
+    private static final List<MetatypeListener> listeners = new ArrayList<MetatypeListener>();
+
+    /**
+     * The listener to call, null when there is none, a Composite for several
+     */
+    static volatile MetatypeListener listener;
+
+    static {
+        addAll(ServiceLoader.load(MetatypeListener.class, MetatypeListener.class.getClassLoader()).iterator());
+    }
+
+    private MetatypeListeners() {
+    }
+
+    /**
+     * Adds the providers, skipping the ones that fail to load
+     */
+    static void addAll(Iterator<MetatypeListener> services) {
+        while (true) {
+            try {
+                if (!services.hasNext()) break;
+            } catch (ServiceConfigurationError e) {
+                // the configuration itself cannot be read, retrying would fail the same way
+                break;
+            }
+
+            try {
+                add(services.next());
+            } catch (ServiceConfigurationError e) {
+                // a broken provider must not break resolution
+            }
+        }
+    }
+
+    public static synchronized void add(MetatypeListener listener) {
+        if (listener == null) throw new NullPointerException("listener");
+
+        listeners.add(listener);
+        update();
+    }
+
+    public static synchronized void remove(MetatypeListener listener) {
+        listeners.remove(listener);
+        update();
+    }
+
+    private static void update() {
+        if (listeners.isEmpty()) {
+            listener = null;
+        } else if (listeners.size() == 1) {
+            listener = listeners.get(0);
+        } else {
+            listener = new Composite(listeners.toArray(new MetatypeListener[listeners.size()]));
+        }
+    }
+
+    private static final class Composite implements MetatypeListener {
+        private final MetatypeListener[] listeners;
+
+        private Composite(MetatypeListener[] listeners) {
+            this.listeners = listeners;
+        }
+
+        public boolean wantsTiming() {
+            for (MetatypeListener listener : listeners) {
+                if (listener.wantsTiming()) return true;
+            }
+            return false;
+        }
+
+        public void wrapperCreated(AnnotatedElement target) {
+            for (MetatypeListener listener : listeners) {
+                listener.wrapperCreated(target);
+            }
+        }
+
+        public void elementUnrolled(AnnotatedElement element, int annotations, long nanos) {
+            for (MetatypeListener listener : listeners) {
+                listener.elementUnrolled(element, annotations, nanos);
+            }
+        }
+
+        public void closureResolved(Class<? extends Annotation> type, int size, int maxDepth, boolean precomputed, long nanos) {
+            for (MetatypeListener listener : listeners) {
+                listener.closureResolved(type, size, maxDepth, precomputed, nanos);
+            }
+        }
+
+        public void definitionLookup(Class<? extends Annotation> type, boolean found) {
+            for (MetatypeListener listener : listeners) {
+                listener.definitionLookup(type, found);
+            }
+        }
+
+        public void conflict(Class<? extends Annotation> type, int depth) {
+            for (MetatypeListener listener : listeners) {
+                listener.conflict(type, depth);
+            }
+        }
+    }
+}
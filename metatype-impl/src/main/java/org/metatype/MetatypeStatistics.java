@@ -0,0 +1,120 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A MetatypeListener that keeps running totals, e.g. to expose through JMX or
+ * to log at the end of a deployment.
+ *
+ * @author David Blevins
+ */
+public class MetatypeStatistics implements MetatypeListener {
+
+    private final AtomicLong wrappers = new AtomicLong();
+    private final AtomicLong unrolls = new AtomicLong();
+    private final AtomicLong unrollNanos = new AtomicLong();
+    private final AtomicLong closures = new AtomicLong();
+    private final AtomicLong precomputedClosures = new AtomicLong();
+    private final AtomicLong closureNanos = new AtomicLong();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final AtomicLong definitionLookups = new AtomicLong();
+    private final AtomicLong definitionMisses = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+
+    public boolean wantsTiming() {
+        return true;
+    }
+
+    public void wrapperCreated(AnnotatedElement target) {
+        wrappers.incrementAndGet();
+    }
+
+    public void elementUnrolled(AnnotatedElement element, int annotations, long nanos) {
+        unrolls.incrementAndGet();
+        unrollNanos.addAndGet(nanos);
+    }
+
+    public void closureResolved(Class<? extends Annotation> type, int size, int maxDepth, boolean precomputed, long nanos) {
+        closures.incrementAndGet();
+        if (precomputed) precomputedClosures.incrementAndGet();
+        closureNanos.addAndGet(nanos);
+
+        for (int max = this.maxDepth.get(); maxDepth > max; max = this.maxDepth.get()) {
+            if (this.maxDepth.compareAndSet(max, maxDepth)) break;
+        }
+    }
+
+    public void definitionLookup(Class<? extends Annotation> type, boolean found) {
+        definitionLookups.incrementAndGet();
+        if (!found) definitionMisses.incrementAndGet();
+    }
+
+    public void conflict(Class<? extends Annotation> type, int depth) {
+        conflicts.incrementAndGet();
+    }
+
+    public long getWrappers() {
+        return wrappers.get();
+    }
+
+    public long getUnrolls() {
+        return unrolls.get();
+    }
+
+    public long getUnrollNanos() {
+        return unrollNanos.get();
+    }
+
+    public long getClosures() {
+        return closures.get();
+    }
+
+    public long getPrecomputedClosures() {
+        return precomputedClosures.get();
+    }
+
+    public long getClosureNanos() {
+        return closureNanos.get();
+    }
+
+    public int getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    public long getDefinitionLookups() {
+        return definitionLookups.get();
+    }
+
+    public long getDefinitionMisses() {
+        return definitionMisses.get();
+    }
+
+    public long getConflicts() {
+        return conflicts.get();
+    }
+
+    public String toString() {
+        return "MetatypeStatistics{wrappers=" + wrappers + ", unrolls=" + unrolls + ", unrollNanos=" + unrollNanos
+                + ", closures=" + closures + ", precomputedClosures=" + precomputedClosures + ", closureNanos=" + closureNanos
+                + ", maxDepth=" + maxDepth + ", definitionLookups=" + definitionLookups + ", definitionMisses=" + definitionMisses
+                + ", conflicts=" + conflicts + "}";
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the closures the metatype-processor wrote at compile time, so the
+ * unrolling of a meta-annotation can skip the reflective walk and the "$"
+ * definition class lookups.
+ * <p/>
+ * Each line names the depth and type of a resolved annotation and the element
+ * the annotation instance is declared on, see MetatypeProcessor for the format.
+ * Check lines list the annotations each annotation type and definition member
+ * involved declared at compile time, and the definition members bound to each
+ * meta-annotation.  Anything that no longer matches the loaded classes, a missing
+ * element, a changed set of annotations or members, or a file that cannot be
+ * parsed, makes {@link #load} return null and the caller falls back to reflection.
+ *
+ * @author David Blevins
+ */
+final class PrecomputedClosures {
+
+    static final String INDEX = "META-INF/metatypes/";
+
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<String, Class<?>>();
+
+    static {
+        for (Class<?> type : new Class<?>[]{boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class, double.class}) {
+            PRIMITIVES.put(type.getName(), type);
+        }
+    }
+
+    private PrecomputedClosures() {
+    }
+
+    public static Map<Class<? extends Annotation>, MetaAnnotation<?>> load(Class<? extends Annotation> type) {
+        final ClassLoader loader = type.getClassLoader();
+
+        final InputStream in = (loader == null)
+                ? ClassLoader.getSystemResourceAsStream(INDEX + type.getName())
+                : loader.getResourceAsStream(INDEX + type.getName());
+
+        if (in == null) return null;
+
+        try {
+            return read(new BufferedReader(new InputStreamReader(in, "UTF-8")), loader);
+        } catch (IOException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            // out of date with the classes
+            return null;
+        } catch (RuntimeException e) {
+            // malformed, or naming a class that is no longer an annotation
+            return null;
+        } catch (LinkageError e) {
+            // a class it names cannot be linked any more
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    private static Map<Class<? extends Annotation>, MetaAnnotation<?>> read(BufferedReader reader, ClassLoader loader) throws IOException, ReflectiveOperationException {
+        final Map<Class<? extends Annotation>, Entry> entries = new LinkedHashMap<Class<? extends Annotation>, Entry>();
+
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (line.length() == 0) continue;
+
+            final String[] parts = line.split(" ");
+
+            if (parts[0].equals("=")) {
+                check(parts, loader);
+                continue;
+            }
+
+            if (parts[0].equals("*")) {
+                checkMembers(parts, loader);
+                continue;
+            }
+
+            final int depth = Integer.parseInt(parts[0]);
+            final Class<? extends Annotation> type = load(parts[1], loader).asSubclass(Annotation.class);
+            final Annotation annotation = find(type, parts[2], loader);
+
+            if (annotation == null) throw new NoSuchFieldException(line);
+
+            Entry entry = entries.get(type);
+
+            if (parts.length > 3) {
+                if (entry == null || entry.depth != depth) throw new NoSuchFieldException(line);
+            } else {
+                entry = new Entry(type, depth);
+                entries.put(type, entry);
+            }
+
+            entry.annotations.add(annotation);
+        }
+
+        final Map<Class<? extends Annotation>, MetaAnnotation<?>> closure = new LinkedHashMap<Class<? extends Annotation>, MetaAnnotation<?>>();
+        for (Entry entry : entries.values()) {
+            closure.put(entry.type, metaAnnotation(entry.type, entry));
+        }
+
+        return closure;
+    }
+
+    /**
+     * The first annotation, with the others as its conflicts
+     */
+    private static <A extends Annotation> MetaAnnotation<A> metaAnnotation(Class<A> type, Entry entry) {
+        MetaAnnotation<A> metaAnnotation = new MetaAnnotation<A>(type.cast(entry.annotations.get(0)), entry.depth);
+
+        for (int i = 1; i < entry.annotations.size(); i++) {
+            metaAnnotation = metaAnnotation.withConflict(new MetaAnnotation<A>(type.cast(entry.annotations.get(i)), entry.depth));
+        }
+
+        return metaAnnotation;
+    }
+
+    /**
+     * Fails if the element no longer declares exactly the listed annotation types
+     */
+    private static void check(String[] parts, ClassLoader loader) throws ReflectiveOperationException {
+        final Annotation[] annotations = annotations(parts[1], loader);
+
+        final String[] names = new String[annotations.length];
+        for (int i = 0; i < annotations.length; i++) {
+            names[i] = annotations[i].annotationType().getName();
+        }
+        Arrays.sort(names);
+
+        final String[] expected = (parts.length > 2) ? parts[2].split(",") : new String[0];
+
+        if (!Arrays.equals(expected, names)) throw new NoSuchFieldException(parts[1]);
+    }
+
+    /**
+     * Fails if the members of the "$" definition class bound to the meta-annotation
+     * are no longer exactly the listed ones
+     */
+    private static void checkMembers(String[] parts, ClassLoader loader) throws ReflectiveOperationException {
+        final Class<?> type = load(parts[1], loader);
+
+        final List<String> bound = new ArrayList<String>();
+        try {
+            final Class<?> def = load(type.getName() + "$$", loader);
+
+            for (Map.Entry<String, Annotation[]> member : MetaAnnotatedObject.members(def).entrySet()) {
+                for (Annotation annotation : member.getValue()) {
+                    if (annotation.annotationType() == type) bound.add(def.getName() + "#" + member.getKey());
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            // no definition class, nothing bound
+        }
+
+        final List<String> expected = Arrays.asList(parts).subList(2, parts.length);
+
+        if (!expected.equals(bound)) throw new NoSuchFieldException(parts[1]);
+    }
+
+    private static Annotation find(Class<? extends Annotation> type, String source, ClassLoader loader) throws ReflectiveOperationException {
+        for (Annotation annotation : annotations(source, loader)) {
+            if (annotation.annotationType() == type) return annotation;
+        }
+
+        return null;
+    }
+
+    /**
+     * The annotations declared on the annotation type, definition member or parameter
+     */
+    private static Annotation[] annotations(String source, ClassLoader loader) throws ReflectiveOperationException {
+        final int hash = source.indexOf('#');
+
+        if (hash < 0) return load(source, loader).getDeclaredAnnotations();
+
+        final Class<?> owner = load(source.substring(0, hash), loader);
+
+        String member = source.substring(hash + 1);
+
+        int parameter = -1;
+
+        final int at = member.lastIndexOf('@');
+        if (at > 0) {
+            parameter = Integer.parseInt(member.substring(at + 1));
+            member = member.substring(0, at);
+        }
+
+        final AccessibleObject element;
+        final Annotation[][] parameterAnnotations;
+
+        if (member.startsWith("field:")) {
+            return owner.getDeclaredField(member.substring("field:".length())).getDeclaredAnnotations();
+        } else if (member.startsWith("constructor:")) {
+            final Constructor<?> constructor = owner.getDeclaredConstructor(parameterTypes(member, loader));
+            element = constructor;
+            parameterAnnotations = (parameter < 0) ? null : constructor.getParameterAnnotations();
+        } else if (member.startsWith("method:")) {
+            final String name = member.substring("method:".length(), member.indexOf('('));
+            final Method method = owner.getDeclaredMethod(name, parameterTypes(member, loader));
+            element = method;
+            parameterAnnotations = (parameter < 0) ? null : method.getParameterAnnotations();
+        } else {
+            throw new NoSuchMethodException(source);
+        }
+
+        if (parameterAnnotations == null) return ((AnnotatedElement) element).getDeclaredAnnotations();
+        if (parameter >= parameterAnnotations.length) throw new NoSuchMethodException(source);
+
+        return parameterAnnotations[parameter];
+    }
+
+    private static Class<?>[] parameterTypes(String member, ClassLoader loader) throws ClassNotFoundException {
+        final String list = member.substring(member.indexOf('(') + 1, member.lastIndexOf(')'));
+
+        if (list.length() == 0) return new Class<?>[0];
+
+        final String[] names = list.split(",");
+        final Class<?>[] types = new Class<?>[names.length];
+
+        for (int i = 0; i < names.length; i++) {
+            types[i] = load(names[i], loader);
+        }
+
+        return types;
+    }
+
+    private static Class<?> load(String name, ClassLoader loader) throws ClassNotFoundException {
+        final Class<?> primitive = PRIMITIVES.get(name);
+        if (primitive != null) return primitive;
+
+        return Class.forName(name, false, loader);
+    }
+
+    private static void close(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * The annotations of one type in a closure, the first wins and the others
+     * are its conflicts at the same depth
+     */
+    private static final class Entry {
+        private final Class<? extends Annotation> type;
+        private final int depth;
+        private final List<Annotation> annotations = new ArrayList<Annotation>();
+
+        private Entry(Class<? extends Annotation> type, int depth) {
+            this.type = type;
+            this.depth = depth;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import java.lang.annotation.Annotation;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The parameter annotations of a method or constructor, each parameter
+ * unrolled the first time it is asked for.
+ *
+ * @author David Blevins
+ */
+final class UnrolledParameters {
+
+    private final Annotation[][] declared;
+    private final AtomicReferenceArray<Annotation[]> unrolled;
+
+    UnrolledParameters(Annotation[][] declared) {
+        this.declared = declared;
+        this.unrolled = new AtomicReferenceArray<Annotation[]>(declared.length);
+    }
+
+    /**
+     * A copy, the wrappers are shared so callers must not see the cached arrays
+     */
+    public Annotation[] get(int index) {
+        final Annotation[] annotations = unrolled(index);
+
+        // an empty array cannot be modified, no need to copy it
+        return (annotations.length == 0) ? annotations : annotations.clone();
+    }
+
+    /**
+     * A deep copy, as Method.getParameterAnnotations() returns
+     */
+    public Annotation[][] getAll() {
+        final Annotation[][] all = new Annotation[declared.length][];
+
+        for (int i = 0; i < all.length; i++) {
+            all[i] = get(i);
+        }
+
+        return all;
+    }
+
+    private Annotation[] unrolled(int index) {
+        Annotation[] annotations = unrolled.get(index);
+
+        if (annotations == null) {
+            annotations = MetaAnnotatedObject.unrollParameter(declared[index]);
+
+            // keep whichever result was published first
+            if (!unrolled.compareAndSet(index, null, annotations)) annotations = unrolled.get(index);
+        }
+
+        return annotations;
+    }
+}
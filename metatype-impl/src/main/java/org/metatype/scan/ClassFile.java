@@ -0,0 +1,274 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.scan;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parts of a class file meta-annotation resolution needs: names, the superclass and the
+ * RuntimeVisibleAnnotations and RuntimeVisibleParameterAnnotations of the
+ * class, its fields and methods.  Everything else is skipped.
+ *
+ * @author David Blevins
+ */
+final class ClassFile {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    final String name;
+
+    /**
+     * Null for java.lang.Object
+     */
+    final String superName;
+    final List<ScannedAnnotation> annotations;
+    final List<Member> fields;
+    final List<Member> methods;
+
+    private ClassFile(String name, String superName, List<ScannedAnnotation> annotations, List<Member> fields, List<Member> methods) {
+        this.name = name;
+        this.superName = superName;
+        this.annotations = annotations;
+        this.fields = fields;
+        this.methods = methods;
+    }
+
+    static final class Member {
+        final String name;
+        final String descriptor;
+        final List<ScannedAnnotation> annotations;
+        final List<List<ScannedAnnotation>> parameterAnnotations;
+
+        private Member(String name, String descriptor, List<ScannedAnnotation> annotations, List<List<ScannedAnnotation>> parameterAnnotations) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.annotations = annotations;
+            this.parameterAnnotations = parameterAnnotations;
+        }
+    }
+
+    public static ClassFile read(InputStream in) throws IOException {
+        return new Reader(new DataInputStream(in)).read();
+    }
+
+    /**
+     * "Ljavax/ejb/Schedule;" to "javax.ejb.Schedule"
+     */
+    static String binaryName(String descriptor) {
+        return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+    }
+
+    private static final class Reader {
+        private final DataInputStream in;
+        private Object[] pool;
+
+        private Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        private ClassFile read() throws IOException {
+            if (in.readInt() != MAGIC) throw new IOException("Not a class file");
+
+            in.readUnsignedShort(); // minor
+            in.readUnsignedShort(); // major
+
+            readConstantPool();
+
+            in.readUnsignedShort(); // access
+            final String name = ((String) pool[(Integer) pool[in.readUnsignedShort()]]).replace('/', '.');
+            final int superClass = in.readUnsignedShort();
+            final String superName = (superClass == 0) ? null : ((String) pool[(Integer) pool[superClass]]).replace('/', '.');
+
+            skip(in.readUnsignedShort() * 2); // interfaces
+
+            final List<Member> fields = readMembers();
+            final List<Member> methods = readMembers();
+
+            final List<ScannedAnnotation> annotations = new ArrayList<ScannedAnnotation>();
+            readAttributes(annotations, null);
+
+            return new ClassFile(name, superName, annotations, fields, methods);
+        }
+
+        private void readConstantPool() throws IOException {
+            final int count = in.readUnsignedShort();
+            pool = new Object[count];
+
+            for (int i = 1; i < count; i++) {
+                final int tag = in.readUnsignedByte();
+                switch (tag) {
+                    case 1: // Utf8
+                        pool[i] = in.readUTF();
+                        break;
+                    case 3: // Integer
+                        pool[i] = in.readInt();
+                        break;
+                    case 4: // Float
+                        pool[i] = in.readFloat();
+                        break;
+                    case 5: // Long
+                        pool[i++] = in.readLong();
+                        break;
+                    case 6: // Double
+                        pool[i++] = in.readDouble();
+                        break;
+                    case 7: // Class
+                        pool[i] = in.readUnsignedShort();
+                        break;
+                    case 8: // String
+                    case 16: // MethodType
+                    case 19: // Module
+                    case 20: // Package
+                        skip(2);
+                        break;
+                    case 15: // MethodHandle
+                        skip(3);
+                        break;
+                    case 9: // Fieldref
+                    case 10: // Methodref
+                    case 11: // InterfaceMethodref
+                    case 12: // NameAndType
+                    case 17: // Dynamic
+                    case 18: // InvokeDynamic
+                        skip(4);
+                        break;
+                    default:
+                        throw new IOException("Unknown constant pool tag " + tag);
+                }
+            }
+        }
+
+        private List<Member> readMembers() throws IOException {
+            final int count = in.readUnsignedShort();
+            final List<Member> members = new ArrayList<Member>(count);
+
+            for (int i = 0; i < count; i++) {
+                in.readUnsignedShort(); // access
+                final String name = utf8(in.readUnsignedShort());
+                final String descriptor = utf8(in.readUnsignedShort());
+
+                final List<ScannedAnnotation> annotations = new ArrayList<ScannedAnnotation>();
+                final List<List<ScannedAnnotation>> parameterAnnotations = new ArrayList<List<ScannedAnnotation>>();
+                readAttributes(annotations, parameterAnnotations);
+
+                members.add(new Member(name, descriptor, annotations, parameterAnnotations));
+            }
+
+            return members;
+        }
+
+        private void readAttributes(List<ScannedAnnotation> annotations, List<List<ScannedAnnotation>> parameterAnnotations) throws IOException {
+            final int count = in.readUnsignedShort();
+
+            for (int i = 0; i < count; i++) {
+                final String name = utf8(in.readUnsignedShort());
+                final int length = in.readInt();
+
+                if ("RuntimeVisibleAnnotations".equals(name)) {
+                    annotations.addAll(readAnnotations());
+                } else if (parameterAnnotations != null && "RuntimeVisibleParameterAnnotations".equals(name)) {
+                    final int parameters = in.readUnsignedByte();
+                    for (int p = 0; p < parameters; p++) {
+                        parameterAnnotations.add(readAnnotations());
+                    }
+                } else {
+                    skip(length);
+                }
+            }
+        }
+
+        private List<ScannedAnnotation> readAnnotations() throws IOException {
+            final int count = in.readUnsignedShort();
+            final List<ScannedAnnotation> annotations = new ArrayList<ScannedAnnotation>(count);
+
+            for (int i = 0; i < count; i++) {
+                annotations.add(readAnnotation());
+            }
+
+            return Collections.unmodifiableList(annotations);
+        }
+
+        private ScannedAnnotation readAnnotation() throws IOException {
+            final String type = binaryName(utf8(in.readUnsignedShort()));
+
+            final int count = in.readUnsignedShort();
+            final Map<String, Object> values = new LinkedHashMap<String, Object>();
+
+            for (int i = 0; i < count; i++) {
+                final String name = utf8(in.readUnsignedShort());
+                values.put(name, readValue());
+            }
+
+            return new ScannedAnnotation(type, values);
+        }
+
+        private Object readValue() throws IOException {
+            final int tag = in.readUnsignedByte();
+
+            switch (tag) {
+                case 'B': return ((Integer) pool[in.readUnsignedShort()]).byteValue();
+                case 'C': return (char) ((Integer) pool[in.readUnsignedShort()]).intValue();
+                case 'S': return ((Integer) pool[in.readUnsignedShort()]).shortValue();
+                case 'Z': return ((Integer) pool[in.readUnsignedShort()]) != 0;
+                case 'I':
+                case 'J':
+                case 'F':
+                case 'D':
+                case 's':
+                    return pool[in.readUnsignedShort()];
+                case 'e':
+                    in.readUnsignedShort(); // enum type
+                    return utf8(in.readUnsignedShort());
+                case 'c':
+                    return className(utf8(in.readUnsignedShort()));
+                case '@':
+                    return readAnnotation();
+                case '[':
+                    final Object[] array = new Object[in.readUnsignedShort()];
+                    for (int i = 0; i < array.length; i++) {
+                        array[i] = readValue();
+                    }
+                    return array;
+                default:
+                    throw new IOException("Unknown element value tag " + (char) tag);
+            }
+        }
+
+        private static String className(String descriptor) {
+            if (descriptor.startsWith("L")) return binaryName(descriptor);
+            return descriptor.replace('/', '.');
+        }
+
+        private String utf8(int index) {
+            return (String) pool[index];
+        }
+
+        private void skip(int bytes) throws IOException {
+            while (bytes > 0) {
+                final int skipped = in.skipBytes(bytes);
+                if (skipped <= 0) throw new IOException("Unexpected end of class file");
+                bytes -= skipped;
+            }
+        }
+    }
+}
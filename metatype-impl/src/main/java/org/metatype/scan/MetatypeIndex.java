@@ -0,0 +1,516 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.scan;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+
+/**
+ * A memory mapped file holding the unrolled annotations of every annotated
+ * element of one jar, as found by the {@link MetatypeScanner}.
+ * <p/>
+ * The file is written once per artifact with {@link #write} and opened at startup
+ * with {@link #open}, which refuses it if the jar changed since, or any of the
+ * jars the fallback class loader supplied meta-annotations from: same length and
+ * timestamp are taken as unchanged, otherwise the CRC32 of the file must match.
+ * While {@link #register registered}, MetaAnnotatedObject answers isAnnotationPresent
+ * from the index and skips unrolling for the elements of that jar the index shows
+ * as unannotated.  Every other query on an annotated element still unrolls it
+ * reflectively, so the index keeps which annotations are present, at which depth,
+ * but not their attribute values.
+ * <p/>
+ * Layout, big endian:
+ * <pre>
+ * int magic, int version, long jar length, long jar timestamp, long jar crc32
+ * int length and long crc32 of the rest of the file
+ * int dependency count, (long length, long timestamp, long crc32, int path)*
+ * int string count, int[] string offsets, int entry count, int[] entry offsets sorted by key
+ * strings: int byte length, UTF-8 bytes
+ * entries: int key, byte kind, int class name, int name, int descriptor, int parameter, int annotation count
+ *          annotations: int type, int depth, byte conflict
+ * </pre>
+ * Strings are referred to by their index in the string table, -1 for null.
+ *
+ * @author David Blevins
+ */
+public final class MetatypeIndex {
+
+    private static final int MAGIC = 0x4D544958;
+    private static final int VERSION = 2;
+
+    /**
+     * Where the part covered by the length and checksum in the header starts
+     */
+    private static final int CHECKED = 44;
+
+    private static final int DEPENDENCY = 28;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final ConcurrentMap<String, MetatypeIndex> registry = new ConcurrentHashMap<String, MetatypeIndex>();
+
+    /**
+     * The location each class was loaded from, "" if unknown.  Indexes are looked
+     * up by it on every call, so registering or unregistering takes effect at once.
+     */
+    private static final ClassValue<String> locations = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            final CodeSource codeSource = type.getProtectionDomain().getCodeSource();
+            if (codeSource == null || codeSource.getLocation() == null) return "";
+
+            return codeSource.getLocation().toExternalForm();
+        }
+    };
+
+    private final URL location;
+    private final ByteBuffer buffer;
+    private final int dependencyCount;
+    private final int strings;
+    private final int entries;
+    private final int entryCount;
+
+    private MetatypeIndex(URL location, ByteBuffer buffer) {
+        this.location = location;
+        this.buffer = buffer;
+
+        this.dependencyCount = buffer.getInt(CHECKED);
+
+        final int body = CHECKED + 4 + dependencyCount * DEPENDENCY;
+        final int stringCount = buffer.getInt(body);
+        this.strings = body + 4;
+        this.entryCount = buffer.getInt(strings + stringCount * 4);
+        this.entries = strings + stringCount * 4 + 4;
+    }
+
+    /**
+     * Scans the jar and writes its index
+     */
+    public static void write(File jar, File index) throws IOException {
+        write(jar, index, MetatypeIndex.class.getClassLoader());
+    }
+
+    /**
+     * Scans the jar and writes its index, annotation types outside the jar are read from the fallback class loader
+     */
+    public static void write(File jar, File index, ClassLoader fallback) throws IOException {
+        final MetatypeScanner scanner = new MetatypeScanner(fallback).add(jar);
+        final List<ScannedElement> elements = new ArrayList<ScannedElement>(scanner.scan());
+
+        Collections.sort(elements, new Comparator<ScannedElement>() {
+            public int compare(ScannedElement a, ScannedElement b) {
+                return key(a).compareTo(key(b));
+            }
+        });
+
+        final Writer writer = new Writer();
+
+        final List<byte[]> encoded = new ArrayList<byte[]>(elements.size());
+        for (ScannedElement element : elements) {
+            encoded.add(writer.entry(element));
+        }
+
+        final List<File> dependencies = new ArrayList<File>(scanner.dependencies());
+
+        final int[] paths = new int[dependencies.size()];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = writer.id(dependencies.get(i).getPath());
+        }
+
+        final ByteArrayOutputStream checked = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(checked);
+
+        out.writeInt(dependencies.size());
+        for (int i = 0; i < paths.length; i++) {
+            final File dependency = dependencies.get(i);
+            out.writeLong(dependency.length());
+            out.writeLong(dependency.lastModified());
+            out.writeLong(checksum(dependency));
+            out.writeInt(paths[i]);
+        }
+
+        final List<byte[]> strings = writer.strings;
+
+        int offset = CHECKED + 4 + dependencies.size() * DEPENDENCY + 4 + strings.size() * 4 + 4 + encoded.size() * 4;
+
+        out.writeInt(strings.size());
+        for (byte[] string : strings) {
+            out.writeInt(offset);
+            offset += 4 + string.length;
+        }
+
+        out.writeInt(encoded.size());
+        for (byte[] entry : encoded) {
+            out.writeInt(offset);
+            offset += entry.length;
+        }
+
+        for (byte[] string : strings) {
+            out.writeInt(string.length);
+            out.write(string);
+        }
+
+        for (byte[] entry : encoded) {
+            out.write(entry);
+        }
+
+        out.close();
+
+        final byte[] bytes = checked.toByteArray();
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+
+        final DataOutputStream file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(index)));
+        try {
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+            file.writeLong(jar.length());
+            file.writeLong(jar.lastModified());
+            file.writeLong(checksum(jar));
+            file.writeInt(bytes.length);
+            file.writeLong(crc.getValue());
+            file.write(bytes);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Maps the index of the jar, or returns null if the jar, or a jar it took
+     * meta-annotations from, changed since the index was written
+     *
+     * @throws IOException if the file is not an index, or is truncated or corrupt
+     */
+    public static MetatypeIndex open(File index, File jar) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(index, "r");
+        final MappedByteBuffer buffer;
+        try {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        } finally {
+            // the mapping stays valid
+            file.close();
+        }
+
+        if (buffer.limit() < CHECKED + 4 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a metatype index " + index);
+        }
+
+        if (CHECKED + (long) buffer.getInt(32) != buffer.limit() || checksum(buffer, CHECKED) != buffer.getLong(36)) {
+            throw new IOException("Corrupt metatype index " + index);
+        }
+
+        if (!unchanged(jar, buffer.getLong(8), buffer.getLong(16), buffer.getLong(24))) return null;
+
+        final MetatypeIndex metatypeIndex = new MetatypeIndex(jar.toURI().toURL(), buffer);
+
+        for (int i = 0; i < metatypeIndex.dependencyCount; i++) {
+            final int offset = CHECKED + 4 + i * DEPENDENCY;
+            final File dependency = new File(metatypeIndex.string(buffer.getInt(offset + 24)));
+
+            if (!unchanged(dependency, buffer.getLong(offset), buffer.getLong(offset + 8), buffer.getLong(offset + 16))) return null;
+        }
+
+        return metatypeIndex;
+    }
+
+    /**
+     * Makes the index available to MetaAnnotatedObject for the classes loaded from
+     * its jar.  Wrappers that already unrolled their annotations keep them.
+     */
+    public static void register(MetatypeIndex index) {
+        registry.put(index.location.toExternalForm(), index);
+    }
+
+    /**
+     * Withdraws a registered index, for example when its jar is undeployed
+     */
+    public static void unregister(MetatypeIndex index) {
+        registry.remove(index.location.toExternalForm(), index);
+    }
+
+    /**
+     * The indexed unrolled annotations of a reflective element.
+     *
+     * @return null when no registered index covers the element, an element without
+     *         annotations when the index covers it but it has none
+     */
+    public static ScannedElement lookup(AnnotatedElement element) {
+        final Class<?> clazz = declaringClass(element);
+        if (clazz == null) return null;
+
+        if (registry.isEmpty()) return null;
+
+        final MetatypeIndex index = registry.get(locations.get(clazz));
+        if (index == null) return null;
+
+        final ScannedElement found = index.get(key(element));
+
+        return (found != null) ? found : empty(element);
+    }
+
+    /**
+     * The indexed element with the given key, see {@link #key(ScannedElement)}, or null
+     */
+    public ScannedElement get(String key) {
+        int low = 0;
+        int high = entryCount - 1;
+
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int entry = buffer.getInt(entries + mid * 4);
+
+            final int cmp = string(buffer.getInt(entry)).compareTo(key);
+
+            if (cmp < 0) low = mid + 1;
+            else if (cmp > 0) high = mid - 1;
+            else return read(entry);
+        }
+
+        return null;
+    }
+
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * "className" for classes, "className#name descriptor" for members, plus "@index" for parameters
+     */
+    public static String key(ScannedElement element) {
+        return key(element.getClassName(), element.getName(), element.getDescriptor(), element.getParameter());
+    }
+
+    static String key(AnnotatedElement element) {
+        if (element instanceof Class) {
+            return ((Class<?>) element).getName();
+        } else if (element instanceof Method) {
+            final Method method = (Method) element;
+            return key(method.getDeclaringClass().getName(), method.getName(), descriptor(method.getParameterTypes(), method.getReturnType()), -1);
+        } else if (element instanceof Constructor) {
+            final Constructor<?> constructor = (Constructor<?>) element;
+            return key(constructor.getDeclaringClass().getName(), "<init>", descriptor(constructor.getParameterTypes(), void.class), -1);
+        } else if (element instanceof Field) {
+            final Field field = (Field) element;
+            return key(field.getDeclaringClass().getName(), field.getName(), descriptor(field.getType()), -1);
+        }
+        return null;
+    }
+
+    private static String key(String className, String name, String descriptor, int parameter) {
+        if (name == null) return className;
+
+        final String key = className + "#" + name + " " + descriptor;
+
+        return (parameter < 0) ? key : key + "@" + parameter;
+    }
+
+    private static Class<?> declaringClass(AnnotatedElement element) {
+        if (element instanceof Class) return (Class<?>) element;
+        if (element instanceof Method) return ((Method) element).getDeclaringClass();
+        if (element instanceof Constructor) return ((Constructor<?>) element).getDeclaringClass();
+        if (element instanceof Field) return ((Field) element).getDeclaringClass();
+        return null;
+    }
+
+    private static ScannedElement empty(AnnotatedElement element) {
+        final Map<String, ScannedAnnotation> none = Collections.emptyMap();
+        final Map<String, Integer> depths = Collections.emptyMap();
+        final Set<String> conflicts = Collections.emptySet();
+
+        final String key = key(element);
+        final int hash = key.indexOf('#');
+
+        if (hash < 0) return new ScannedElement(ScannedElement.Kind.CLASS, key, null, null, -1, none, depths, conflicts);
+
+        final int space = key.indexOf(' ', hash);
+        final String name = key.substring(hash + 1, space);
+
+        final ScannedElement.Kind kind = (element instanceof Field) ? ScannedElement.Kind.FIELD
+                : (element instanceof Constructor) ? ScannedElement.Kind.CONSTRUCTOR : ScannedElement.Kind.METHOD;
+
+        return new ScannedElement(kind, key.substring(0, hash), name, key.substring(space + 1), -1, none, depths, conflicts);
+    }
+
+    private static String descriptor(Class<?>[] parameterTypes, Class<?> returnType) {
+        final StringBuilder sb = new StringBuilder("(");
+        for (Class<?> type : parameterTypes) {
+            sb.append(descriptor(type));
+        }
+        return sb.append(')').append(descriptor(returnType)).toString();
+    }
+
+    private static String descriptor(Class<?> type) {
+        if (type.isArray()) return type.getName().replace('.', '/');
+        if (type == void.class) return "V";
+        if (type == boolean.class) return "Z";
+        if (type == byte.class) return "B";
+        if (type == char.class) return "C";
+        if (type == short.class) return "S";
+        if (type == int.class) return "I";
+        if (type == long.class) return "J";
+        if (type == float.class) return "F";
+        if (type == double.class) return "D";
+        return "L" + type.getName().replace('.', '/') + ";";
+    }
+
+    /**
+     * Same length and timestamp, or else the same checksum
+     */
+    private static boolean unchanged(File file, long length, long timestamp, long crc) throws IOException {
+        if (!file.isFile()) return false;
+        if (file.length() == length && file.lastModified() == timestamp) return true;
+
+        return checksum(file) == crc;
+    }
+
+    private static long checksum(ByteBuffer buffer, int from) {
+        final ByteBuffer in = buffer.duplicate();
+        in.position(from);
+
+        final CRC32 crc = new CRC32();
+        final byte[] bytes = new byte[8192];
+        while (in.hasRemaining()) {
+            final int n = Math.min(bytes.length, in.remaining());
+            in.get(bytes, 0, n);
+            crc.update(bytes, 0, n);
+        }
+        return crc.getValue();
+    }
+
+    private static long checksum(File file) throws IOException {
+        final CRC32 crc = new CRC32();
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                crc.update(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+    // ------------------------------------------------------------------ reading
+
+    private String string(int index) {
+        if (index < 0) return null;
+
+        final int offset = buffer.getInt(strings + index * 4);
+        final byte[] bytes = new byte[buffer.getInt(offset)];
+
+        final ByteBuffer slice = buffer.duplicate();
+        slice.position(offset + 4);
+        slice.get(bytes);
+
+        return new String(bytes, UTF8);
+    }
+
+    private ScannedElement read(int offset) {
+        final ByteBuffer in = buffer.duplicate();
+        in.position(offset + 4); // key
+
+        final ScannedElement.Kind kind = ScannedElement.Kind.values()[in.get()];
+        final String className = string(in.getInt());
+        final String name = string(in.getInt());
+        final String descriptor = string(in.getInt());
+        final int parameter = in.getInt();
+
+        final Map<String, ScannedAnnotation> annotations = new LinkedHashMap<String, ScannedAnnotation>();
+        final Map<String, Integer> depths = new LinkedHashMap<String, Integer>();
+        final Set<String> conflicts = new HashSet<String>();
+
+        final int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            final String type = string(in.getInt());
+            depths.put(type, in.getInt());
+            if (in.get() != 0) conflicts.add(type);
+            annotations.put(type, new ScannedAnnotation(type, Collections.<String, Object>emptyMap()));
+        }
+
+        return new ScannedElement(kind, className, name, descriptor, parameter, annotations, depths, conflicts);
+    }
+
+    // ------------------------------------------------------------------ writing
+
+    private static final class Writer {
+        private final List<byte[]> strings = new ArrayList<byte[]>();
+        private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+        private int id(String string) {
+            if (string == null) return -1;
+
+            Integer id = ids.get(string);
+            if (id == null) {
+                id = strings.size();
+                ids.put(string, id);
+                strings.add(string.getBytes(UTF8));
+            }
+            return id;
+        }
+
+        private byte[] entry(ScannedElement element) throws IOException {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(id(key(element)));
+            out.writeByte(element.getKind().ordinal());
+            out.writeInt(id(element.getClassName()));
+            out.writeInt(id(element.getName()));
+            out.writeInt(id(element.getDescriptor()));
+            out.writeInt(element.getParameter());
+
+            out.writeInt(element.getAnnotations().size());
+            for (ScannedAnnotation annotation : element.getAnnotations()) {
+                out.writeInt(id(annotation.getType()));
+                out.writeInt(element.getDepth(annotation.getType()));
+                out.writeByte(element.isConflicting(annotation.getType()) ? 1 : 0);
+            }
+
+            out.close();
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,592 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.scan;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Finds meta-annotated classes and members by reading class files, without
+ * loading, linking or initializing any of them.
+ * <p/>
+ * Metatype chains and the "$" definition classes are resolved the same way
+ * MetaAnnotatedObject resolves them at runtime, only by name.  Annotation types
+ * that are not part of the scanned directories and jars are read from the
+ * fallback class loader as resources.
+ * <p/>
+ * Not thread safe.  The roots are read once, on the first query, and the class
+ * files and scanned elements are cached until another root is added.
+ *
+ * @author David Blevins
+ */
+public class MetatypeScanner {
+
+    private static final String METATYPE = "javax.annotation.Metatype";
+    private static final String METAROOT = "javax.annotation.Metaroot";
+
+    private static final Map<Character, String> PRIMITIVES = new HashMap<Character, String>();
+
+    static {
+        PRIMITIVES.put('Z', "boolean");
+        PRIMITIVES.put('B', "byte");
+        PRIMITIVES.put('C', "char");
+        PRIMITIVES.put('S', "short");
+        PRIMITIVES.put('I', "int");
+        PRIMITIVES.put('J', "long");
+        PRIMITIVES.put('F', "float");
+        PRIMITIVES.put('D', "double");
+    }
+
+    /**
+     * Marks a class file that could not be found
+     */
+    private static final Object MISSING = new Object();
+
+    private final ClassLoader fallback;
+
+    private final List<File> roots = new ArrayList<File>();
+
+    /**
+     * Scanned class files by binary name, plus MISSING for lookups that failed
+     */
+    private final Map<String, Object> classFiles = new HashMap<String, Object>();
+    private final Map<String, Collection<ScannedAnnotation>> declared = new HashMap<String, Collection<ScannedAnnotation>>();
+    private final Map<String, Map<String, Entry>> closures = new HashMap<String, Map<String, Entry>>();
+
+    /**
+     * The jars and class files outside the roots that fallback lookups read
+     */
+    private final Set<File> dependencies = new TreeSet<File>();
+
+    /**
+     * The results of the last scan and index, null until asked for or after add()
+     */
+    private List<ScannedElement> scanned;
+    private Map<String, List<ScannedElement>> index;
+
+    /**
+     * The scanned classes by the binary name of their superclass, built with the scan
+     */
+    private Map<String, List<String>> subclasses;
+
+    public MetatypeScanner() {
+        this(MetatypeScanner.class.getClassLoader());
+    }
+
+    public MetatypeScanner(ClassLoader fallback) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * Adds a directory of class files or a jar to scan
+     */
+    public MetatypeScanner add(File file) {
+        roots.add(file);
+
+        // a new root may shadow fallback lookups and closures resolved so far
+        classFiles.clear();
+        declared.clear();
+        closures.clear();
+        dependencies.clear();
+        scanned = null;
+        index = null;
+        subclasses = null;
+
+        return this;
+    }
+
+    /**
+     * All classes, fields, methods, constructors and parameters in the added
+     * directories and jars that carry at least one annotation after unrolling
+     */
+    public List<ScannedElement> scan() throws IOException {
+        if (scanned != null) return scanned;
+
+        final List<ScannedElement> elements = new ArrayList<ScannedElement>();
+        final Map<String, List<String>> subclasses = new HashMap<String, List<String>>();
+
+        for (ClassFile classFile : read()) {
+            if (classFile.superName != null) {
+                List<String> names = subclasses.get(classFile.superName);
+                if (names == null) {
+                    names = new ArrayList<String>();
+                    subclasses.put(classFile.superName, names);
+                }
+                names.add(classFile.name);
+            }
+
+            add(elements, ScannedElement.Kind.CLASS, classFile.name, null, null, -1, classFile.annotations);
+
+            for (ClassFile.Member field : classFile.fields) {
+                add(elements, ScannedElement.Kind.FIELD, classFile.name, field.name, field.descriptor, -1, field.annotations);
+            }
+
+            for (ClassFile.Member method : classFile.methods) {
+                final boolean constructor = "<init>".equals(method.name);
+                add(elements, constructor ? ScannedElement.Kind.CONSTRUCTOR : ScannedElement.Kind.METHOD, classFile.name, method.name, method.descriptor, -1, method.annotations);
+
+                for (int i = 0; i < method.parameterAnnotations.size(); i++) {
+                    add(elements, ScannedElement.Kind.PARAMETER, classFile.name, method.name, method.descriptor, i, method.parameterAnnotations.get(i));
+                }
+            }
+        }
+
+        this.subclasses = subclasses;
+        scanned = Collections.unmodifiableList(elements);
+        return scanned;
+    }
+
+    /**
+     * The binary names of the scanned classes that extend the given class,
+     * directly or further down, whether they carry annotations or not.  The chain
+     * is only followed through scanned classes.
+     */
+    public List<String> subclasses(String className) throws IOException {
+        scan();
+
+        final List<String> found = new ArrayList<String>();
+
+        final LinkedList<String> pending = new LinkedList<String>();
+        pending.add(className);
+
+        while (!pending.isEmpty()) {
+            final List<String> names = subclasses.get(pending.removeFirst());
+            if (names == null) continue;
+
+            found.addAll(names);
+            pending.addAll(names);
+        }
+
+        return found;
+    }
+
+    /**
+     * The scanned elements carrying the given annotation, directly or through a metatype chain
+     */
+    public List<ScannedElement> find(String annotationType) throws IOException {
+        final List<ScannedElement> found = index().get(annotationType);
+        return (found == null) ? Collections.<ScannedElement>emptyList() : found;
+    }
+
+    /**
+     * The scanned elements grouped by each annotation type they carry, directly
+     * or through a metatype chain, so repeated queries need not rescan
+     */
+    public Map<String, List<ScannedElement>> index() throws IOException {
+        if (index != null) return index;
+
+        final Map<String, List<ScannedElement>> index = new HashMap<String, List<ScannedElement>>();
+
+        for (ScannedElement element : scan()) {
+            for (ScannedAnnotation annotation : element.getAnnotations()) {
+                List<ScannedElement> elements = index.get(annotation.getType());
+                if (elements == null) {
+                    elements = new ArrayList<ScannedElement>();
+                    index.put(annotation.getType(), elements);
+                }
+                elements.add(element);
+            }
+        }
+
+        for (Map.Entry<String, List<ScannedElement>> entry : index.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+
+        this.index = Collections.unmodifiableMap(index);
+        return this.index;
+    }
+
+    private void add(List<ScannedElement> elements, ScannedElement.Kind kind, String className, String name, String descriptor, int parameter, List<ScannedAnnotation> annotations) {
+        if (annotations.isEmpty()) return;
+
+        final Map<String, Entry> found = new LinkedHashMap<String, Entry>();
+
+        for (ScannedAnnotation annotation : annotations) {
+            found.put(annotation.getType(), new Entry(annotation, 0));
+        }
+
+        for (ScannedAnnotation annotation : annotations) {
+            merge(closure(annotation.getType()), found);
+        }
+
+        final Map<String, ScannedAnnotation> resolved = new LinkedHashMap<String, ScannedAnnotation>();
+        final Map<String, Integer> depths = new LinkedHashMap<String, Integer>();
+        final Set<String> conflicts = new HashSet<String>();
+
+        for (Map.Entry<String, Entry> entry : found.entrySet()) {
+            resolved.put(entry.getKey(), entry.getValue().annotation);
+            depths.put(entry.getKey(), entry.getValue().depth);
+            if (entry.getValue().conflict) conflicts.add(entry.getKey());
+        }
+
+        elements.add(new ScannedElement(kind, className, name, descriptor, parameter, resolved, depths, conflicts));
+    }
+
+    private static void merge(Map<String, Entry> closure, Map<String, Entry> found) {
+        for (Map.Entry<String, Entry> entry : closure.entrySet()) {
+            final Entry candidate = entry.getValue();
+            final Entry existing = found.get(entry.getKey());
+
+            if (existing == null || existing.depth > candidate.depth) {
+                found.put(entry.getKey(), new Entry(candidate.annotation, candidate.depth, candidate.conflict));
+            } else if (existing.depth == candidate.depth && existing.annotation != candidate.annotation) {
+                existing.conflict = true;
+            }
+        }
+    }
+
+    private Map<String, Entry> closure(String type) {
+        Map<String, Entry> closure = closures.get(type);
+
+        if (closure == null) {
+            closure = new LinkedHashMap<String, Entry>();
+            unroll(type, 1, closure);
+            closure.remove(type);
+            closures.put(type, closure);
+        }
+
+        return closure;
+    }
+
+    private void unroll(String clazz, int depth, Map<String, Entry> found) {
+        if (!isMetaAnnotation(clazz)) return;
+
+        for (ScannedAnnotation annotation : getDeclaredMetaAnnotations(clazz)) {
+            final String type = annotation.getType();
+
+            final Entry existing = found.get(type);
+
+            if (existing == null || existing.depth > depth) {
+
+                // NEW or OVERWRITE
+
+                found.put(type, new Entry(annotation, depth));
+
+                unroll(type, depth + 1, found);
+
+            } else if (existing.depth == depth) {
+
+                // CONFLICT
+
+                existing.conflict = true;
+
+            }
+        }
+    }
+
+    private Collection<ScannedAnnotation> getDeclaredMetaAnnotations(String clazz) {
+        Collection<ScannedAnnotation> annotations = declared.get(clazz);
+        if (annotations != null) return annotations;
+
+        final Map<String, ScannedAnnotation> map = new LinkedHashMap<String, ScannedAnnotation>();
+
+        // pull in the annotations declared on this annotation
+
+        for (ScannedAnnotation annotation : classFile(clazz).annotations) {
+            map.put(annotation.getType(), annotation);
+        }
+
+        final String metatype = getMetatype(clazz);
+        final ClassFile def = (metatype == null) ? null : classFile(clazz + "$$");
+
+        if (def != null) {
+            // same order as the runtime, by member name, later groups win
+            final Map<String, List<ScannedAnnotation>> groups = new TreeMap<String, List<ScannedAnnotation>>();
+
+            for (ClassFile.Member method : def.methods) {
+                if ("<clinit>".equals(method.name)) continue;
+
+                final String member = member(method);
+                groups.put(member, method.annotations);
+
+                for (int i = 0; i < method.parameterAnnotations.size(); i++) {
+                    groups.put(member + "@" + i, method.parameterAnnotations.get(i));
+                }
+            }
+
+            for (ClassFile.Member field : def.fields) {
+                groups.put("field:" + field.name, field.annotations);
+            }
+
+            for (List<ScannedAnnotation> group : groups.values()) {
+                if (contains(group, clazz)) {
+                    for (ScannedAnnotation annotation : group) {
+                        map.put(annotation.getType(), annotation);
+                    }
+                }
+            }
+        }
+
+        map.remove("java.lang.annotation.Target");
+        map.remove("java.lang.annotation.Retention");
+        map.remove("java.lang.annotation.Documented");
+        // if the chicken is an egg, carry it forward
+        if (!isMetaAnnotation(metatype))
+            map.remove(metatype);
+        map.remove(clazz);
+
+        final List<ScannedAnnotation> sorted = new ArrayList<ScannedAnnotation>(map.values());
+
+        // unrolled in type name order, as the runtime does
+        Collections.sort(sorted, new Comparator<ScannedAnnotation>() {
+            public int compare(ScannedAnnotation a, ScannedAnnotation b) {
+                return a.getType().compareTo(b.getType());
+            }
+        });
+
+        annotations = sorted;
+        declared.put(clazz, annotations);
+        return annotations;
+    }
+
+    /**
+     * The member as the runtime names it, e.g. "method:m(java.lang.String,[I)"
+     */
+    private static String member(ClassFile.Member method) {
+        final StringBuilder sb = new StringBuilder("<init>".equals(method.name) ? "constructor:" : "method:" + method.name).append('(');
+
+        final String descriptor = method.descriptor;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            if (i > 1) sb.append(',');
+
+            int end = i;
+            while (descriptor.charAt(end) == '[') end++;
+            if (descriptor.charAt(end) == 'L') end = descriptor.indexOf(';', end);
+
+            final String type = descriptor.substring(i, end + 1);
+            if (type.startsWith("[")) {
+                sb.append(type.replace('/', '.'));
+            } else if (type.startsWith("L")) {
+                sb.append(ClassFile.binaryName(type));
+            } else {
+                sb.append(PRIMITIVES.get(type.charAt(0)));
+            }
+
+            i = end + 1;
+        }
+
+        return sb.append(')').toString();
+    }
+
+    private static boolean contains(List<ScannedAnnotation> annotations, String type) {
+        for (ScannedAnnotation annotation : annotations) {
+            if (type.equals(annotation.getType())) return true;
+        }
+        return false;
+    }
+
+    private String getMetatype(String clazz) {
+        final ClassFile classFile = classFile(clazz);
+        if (classFile == null) return null;
+
+        for (ScannedAnnotation annotation : classFile.annotations) {
+            if (isMetatypeAnnotation(annotation.getType())) return annotation.getType();
+        }
+
+        return null;
+    }
+
+    private boolean isMetaAnnotation(String clazz) {
+        return clazz != null && getMetatype(clazz) != null;
+    }
+
+    private boolean isMetatypeAnnotation(String type) {
+        if (METATYPE.equals(type)) return true;
+
+        final ClassFile classFile = classFile(type);
+        if (classFile == null) return false;
+
+        return contains(classFile.annotations, METAROOT);
+    }
+
+    /**
+     * Reads every class file in the roots, registering them for name lookups
+     */
+    private List<ClassFile> read() throws IOException {
+        final List<ClassFile> read = new ArrayList<ClassFile>();
+
+        for (File root : roots) {
+            if (root.isDirectory()) {
+                readDirectory(root, "", read);
+            } else {
+                readJar(root, read);
+            }
+        }
+
+        for (ClassFile classFile : read) {
+            classFiles.put(classFile.name, classFile);
+        }
+
+        return read;
+    }
+
+    private void readDirectory(File dir, String path, List<ClassFile> read) throws IOException {
+        final File[] files = dir.listFiles();
+        if (files == null) return;
+
+        for (File file : files) {
+            if (file.isDirectory()) {
+                readDirectory(file, path + file.getName() + "/", read);
+            } else if (isClassFile(path + file.getName())) {
+                final InputStream in = new FileInputStream(file);
+                try {
+                    read.add(ClassFile.read(in));
+                } finally {
+                    in.close();
+                }
+            }
+        }
+    }
+
+    private void readJar(File file, List<ClassFile> read) throws IOException {
+        final JarFile jar = new JarFile(file);
+        try {
+            final Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                final JarEntry entry = entries.nextElement();
+
+                if (entry.isDirectory() || !isClassFile(entry.getName())) continue;
+
+                final InputStream in = jar.getInputStream(entry);
+                try {
+                    read.add(ClassFile.read(in));
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            jar.close();
+        }
+    }
+
+    /**
+     * The jars, and class files in directories, that the closures found so far were
+     * read from through the fallback class loader.  Classes of the platform, which
+     * do not come from a file, are left out.
+     */
+    Set<File> dependencies() {
+        return Collections.unmodifiableSet(dependencies);
+    }
+
+    /**
+     * True if the path, relative to a directory or jar root, names a class to scan.
+     * Module and package descriptors are skipped, and so is everything under
+     * META-INF, where multi-release variants would duplicate the base classes.
+     */
+    public static boolean isClassFile(String path) {
+        return path.endsWith(".class") && !path.startsWith("META-INF/")
+                && !path.endsWith("module-info.class") && !path.endsWith("package-info.class");
+    }
+
+    /**
+     * Looks up a class file by binary name, in the scanned roots first and
+     * then as a resource of the fallback class loader.  Null if neither has it.
+     */
+    private ClassFile classFile(String name) {
+        final Object cached = classFiles.get(name);
+        if (cached != null) return (cached == MISSING) ? null : (ClassFile) cached;
+
+        ClassFile classFile = null;
+
+        final String resource = name.replace('.', '/') + ".class";
+        final URL url = (fallback == null) ? ClassLoader.getSystemResource(resource) : fallback.getResource(resource);
+
+        if (url != null) {
+            try {
+                final InputStream in = url.openStream();
+                try {
+                    classFile = ClassFile.read(in);
+                } finally {
+                    close(in);
+                }
+
+                final File file = file(url);
+                if (file != null) dependencies.add(file);
+            } catch (IOException e) {
+                // treat as missing
+            }
+        }
+
+        classFiles.put(name, (classFile == null) ? MISSING : classFile);
+        return classFile;
+    }
+
+    /**
+     * The jar of a "jar:" URL or the file of a "file:" URL, else null
+     */
+    private static File file(URL url) {
+        try {
+            if ("jar".equals(url.getProtocol())) {
+                final String path = url.getPath();
+                final int separator = path.indexOf("!/");
+                return (separator < 0) ? null : file(new URL(path.substring(0, separator)));
+            }
+
+            if ("file".equals(url.getProtocol())) return new File(url.toURI());
+        } catch (MalformedURLException e) {
+            // not a file
+        } catch (URISyntaxException e) {
+            // not a file
+        }
+        return null;
+    }
+
+    private static void close(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private static class Entry {
+        private final ScannedAnnotation annotation;
+        private final int depth;
+        private boolean conflict;
+
+        private Entry(ScannedAnnotation annotation, int depth) {
+            this(annotation, depth, false);
+        }
+
+        private Entry(ScannedAnnotation annotation, int depth, boolean conflict) {
+            this.annotation = annotation;
+            this.depth = depth;
+            this.conflict = conflict;
+        }
+    }
+}
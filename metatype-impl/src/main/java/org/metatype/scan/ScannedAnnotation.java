@@ -0,0 +1,58 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.scan;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An annotation as written in a class file.
+ * <p/>
+ * Values are kept as read: primitives boxed, strings as is, enum constants by
+ * name, classes by binary name, nested annotations as ScannedAnnotation and
+ * arrays as Object[].  Defaults declared on the annotation type are not filled in.
+ *
+ * @author David Blevins
+ */
+public class ScannedAnnotation {
+    private final String type;
+    private final Map<String, Object> values;
+
+    ScannedAnnotation(String type, Map<String, Object> values) {
+        this.type = type;
+        this.values = Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * The binary name of the annotation type
+     */
+    public String getType() {
+        return type;
+    }
+
+    public Map<String, Object> getValues() {
+        return values;
+    }
+
+    public Object getValue(String name) {
+        return values.get(name);
+    }
+
+    @Override
+    public String toString() {
+        return "@" + type + values;
+    }
+}
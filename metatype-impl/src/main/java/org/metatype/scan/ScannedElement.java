@@ -0,0 +1,122 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.scan;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A class, field, method, constructor or parameter found by the
+ * {@link MetatypeScanner}, along with its unrolled annotations.
+ *
+ * @author David Blevins
+ */
+public class ScannedElement {
+
+    public static enum Kind {
+        CLASS, FIELD, METHOD, CONSTRUCTOR, PARAMETER
+    }
+
+    private final Kind kind;
+    private final String className;
+    private final String name;
+    private final String descriptor;
+    private final int parameter;
+    private final Map<String, ScannedAnnotation> annotations;
+    private final Map<String, Integer> depths;
+    private final Set<String> conflicts;
+
+    ScannedElement(Kind kind, String className, String name, String descriptor, int parameter, Map<String, ScannedAnnotation> annotations, Map<String, Integer> depths, Set<String> conflicts) {
+        this.kind = kind;
+        this.className = className;
+        this.name = name;
+        this.descriptor = descriptor;
+        this.parameter = parameter;
+        this.annotations = Collections.unmodifiableMap(annotations);
+        this.depths = Collections.unmodifiableMap(depths);
+        this.conflicts = Collections.unmodifiableSet(conflicts);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Binary name of the class, or of the declaring class for members and parameters
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Member name, "&lt;init&gt;" for constructors, null for classes
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * JVM descriptor of the member, null for classes
+     */
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * Index of the parameter, -1 unless this is a parameter
+     */
+    public int getParameter() {
+        return parameter;
+    }
+
+    public boolean isAnnotationPresent(String type) {
+        return annotations.containsKey(type);
+    }
+
+    public ScannedAnnotation getAnnotation(String type) {
+        return annotations.get(type);
+    }
+
+    public Collection<ScannedAnnotation> getAnnotations() {
+        return annotations.values();
+    }
+
+    /**
+     * 0 for annotations declared on the element, higher the further down a metatype chain, -1 if absent
+     */
+    public int getDepth(String type) {
+        final Integer depth = depths.get(type);
+        return (depth == null) ? -1 : depth;
+    }
+
+    /**
+     * True if the annotation was reached through two different paths at the same depth
+     */
+    public boolean isConflicting(String type) {
+        return conflicts.contains(type);
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case CLASS: return className;
+            case PARAMETER: return className + "." + name + descriptor + "[" + parameter + "]";
+            default: return className + "." + name + descriptor;
+        }
+    }
+}
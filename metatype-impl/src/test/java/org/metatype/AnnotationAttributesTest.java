@@ -0,0 +1,118 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import static java.util.Arrays.asList;
+
+import java.io.File;
+import java.lang.annotation.Annotation;
+import java.lang.annotation.ElementType;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Map;
+
+import javax.tools.ToolProvider;
+
+import junit.framework.TestCase;
+
+import org.metatype.MaterializedAnnotationTest.Everything;
+import org.metatype.MaterializedAnnotationTest.Sample;
+
+/**
+ * @author David Blevins
+ */
+public class AnnotationAttributesTest extends TestCase {
+
+    public void test() throws Exception {
+        final Everything everything = Sample.class.getAnnotation(Everything.class);
+
+        assertEquals(asList("b", "c", "d", "element", "f", "i", "ints", "j", "nested", "none", "s", "string", "strings", "type", "z"),
+                AnnotationAttributes.getNames(Everything.class));
+
+        assertEquals(3, AnnotationAttributes.readAttribute(everything, "i"));
+        assertEquals(4L, AnnotationAttributes.readAttribute(everything, "j"));
+        assertEquals(Boolean.TRUE, AnnotationAttributes.readAttribute(everything, "z"));
+        assertEquals("text", AnnotationAttributes.readAttribute(everything, "string"));
+        assertSame(ElementType.FIELD, AnnotationAttributes.readAttribute(everything, "element"));
+        assertSame(String.class, AnnotationAttributes.readAttribute(everything, "type"));
+
+        try {
+            AnnotationAttributes.readAttribute(everything, "missing");
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        final Map<String, Object> map = AnnotationAttributes.toMap(everything);
+        assertEquals(AnnotationAttributes.getNames(Everything.class), asList(map.keySet().toArray()));
+        assertEquals('c', map.get("c"));
+        assertEquals(everything.nested(), map.get("nested"));
+
+        // the same handles work on materialized annotations
+        assertEquals(3, AnnotationAttributes.readAttribute(MaterializedAnnotation.of(everything), "i"));
+    }
+
+    public void testNotPublic() throws Exception {
+        final MaterializedAnnotationTest.Hidden hidden = Sample.class.getAnnotation(MaterializedAnnotationTest.Hidden.class);
+
+        assertTrue(AnnotationAttributes.toMap(hidden).isEmpty());
+        assertEquals("red", AnnotationAttributes.readAttribute(MetaAnnotatedClass.of(MetaAnnotatedClassTest.Square.class).getAnnotation(MetaAnnotatedClassTest.Color.class), "value"));
+    }
+
+    /**
+     * A type in a package its module does not export, no handle can be had
+     */
+    public void testNotExported() throws Exception {
+        final Class<? extends Annotation> contended;
+        try {
+            contended = Class.forName("jdk.internal.vm.annotation.Contended").asSubclass(Annotation.class);
+        } catch (ClassNotFoundException e) {
+            // before Java 9
+            return;
+        }
+
+        assertEquals(asList("value"), AnnotationAttributes.getNames(contended));
+    }
+
+    /**
+     * The lambda in the constant compiles to a private static synthetic method of
+     * the annotation type, tools like jacoco add such methods too
+     */
+    public void testSyntheticMethods() throws Exception {
+        final File dir = Files.createTempDirectory("attributes").toFile();
+        final File source = new File(dir, "Tagged.java");
+        Files.write(source.toPath(), ("" +
+                "public @interface Tagged {\n" +
+                "    String value();\n" +
+                "    Runnable NOTHING = () -> { };\n" +
+                "}\n").getBytes(Charset.forName("UTF-8")));
+
+        assertEquals(0, ToolProvider.getSystemJavaCompiler().run(null, null, null, "-d", dir.getAbsolutePath(), source.getAbsolutePath()));
+
+        final ClassLoader loader = new URLClassLoader(new URL[]{dir.toURI().toURL()});
+        final Class<? extends Annotation> tagged = loader.loadClass("Tagged").asSubclass(Annotation.class);
+
+        boolean synthetic = false;
+        for (Method method : tagged.getDeclaredMethods()) {
+            synthetic |= method.isSynthetic();
+        }
+        assertTrue(synthetic);
+
+        assertEquals(asList("value"), AnnotationAttributes.getNames(tagged));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.metatype.MetaAnnotatedClassTest.Chicken;
+import org.metatype.MetaAnnotatedClassTest.Color;
+import org.metatype.MetaAnnotatedClassTest.Crimson;
+import org.metatype.MetaAnnotatedClassTest.Egg;
+import org.metatype.MetaAnnotatedClassTest.Red;
+
+/**
+ * @author David Blevins
+ */
+public class AnnotationTypeSetTest extends TestCase {
+
+    public void test() throws Exception {
+        final MetaAnnotatedClass<?> triangle = MetaAnnotatedClass.of(MetaAnnotatedClassTest.Triangle.class);
+        final MetaAnnotatedClass<?> none = MetaAnnotatedClass.of(MetaAnnotatedClassTest.None.class);
+
+        final AnnotationTypeSet colors = AnnotationTypeSet.of(Color.class, Red.class, Crimson.class);
+        final AnnotationTypeSet mixed = AnnotationTypeSet.of(Red.class, Egg.class);
+        final AnnotationTypeSet birds = AnnotationTypeSet.of(Egg.class, Chicken.class);
+
+        assertTrue(triangle.anyOf(colors));
+        assertTrue(triangle.allOf(colors));
+        assertFalse(triangle.noneOf(colors));
+
+        assertTrue(triangle.anyOf(mixed));
+        assertFalse(triangle.allOf(mixed));
+
+        assertFalse(triangle.anyOf(birds));
+        assertTrue(triangle.noneOf(birds));
+
+        assertFalse(none.anyOf(colors));
+        assertFalse(none.allOf(colors));
+        assertTrue(none.noneOf(colors));
+
+        // the empty set is held by everything and shares nothing
+        final AnnotationTypeSet empty = AnnotationTypeSet.of();
+        assertTrue(none.allOf(empty));
+        assertFalse(triangle.anyOf(empty));
+    }
+
+    public void testIds() throws Exception {
+        assertEquals(AnnotationTypeSet.id(Color.class), AnnotationTypeSet.id(Color.class));
+        assertFalse(AnnotationTypeSet.id(Color.class) == AnnotationTypeSet.id(Red.class));
+    }
+
+    /**
+     * Sets holding ids assigned after the table was built
+     */
+    public void testWideSets() throws Exception {
+        final MetaAnnotatedClass<?> triangle = MetaAnnotatedClass.of(MetaAnnotatedClassTest.Triangle.class);
+        triangle.getAnnotations();
+
+        // claim enough ids for the next types to land in later words
+        for (int i = 0; i < 70; i++) {
+            final ClassLoader loader = new URLClassLoader(new URL[0]);
+            AnnotationTypeSet.id(Proxy.getProxyClass(loader, Annotation.class).asSubclass(Annotation.class));
+        }
+
+        final AnnotationTypeSet wide = AnnotationTypeSet.of(Red.class, Deprecated.class);
+        assertTrue(triangle.anyOf(wide));
+        assertFalse(triangle.allOf(wide));
+        assertTrue(triangle.allOf(AnnotationTypeSet.of(Red.class)));
+    }
+
+    /**
+     * The ids of unloaded types are handed out again
+     */
+    public void testReclaimed() throws Exception {
+        final Set<Integer> seen = new HashSet<Integer>();
+
+        for (int i = 0; i < 50; i++) {
+            final ClassLoader loader = new URLClassLoader(new URL[0]);
+            if (!seen.add(AnnotationTypeSet.id(Proxy.getProxyClass(loader, Annotation.class).asSubclass(Annotation.class)))) return;
+
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        fail("no id was reclaimed");
+    }
+}
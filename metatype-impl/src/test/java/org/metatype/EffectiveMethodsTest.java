@@ -0,0 +1,260 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.metatype.packaged.Outline;
+
+import javax.annotation.Metatype;
+
+/**
+ * @author David Blevins
+ */
+public class EffectiveMethodsTest extends TestCase {
+
+    public void test() throws Exception {
+        final MetaAnnotatedClass<Poster> poster = MetaAnnotatedClass.of(Poster.class);
+
+        final List<MetaAnnotatedMethod> methods = poster.getEffectiveMethods();
+        assertSame(methods, poster.getEffectiveMethods());
+
+        final Map<String, MetaAnnotatedMethod> map = new HashMap<String, MetaAnnotatedMethod>();
+        for (MetaAnnotatedMethod method : methods) {
+            // overridden declarations are collapsed
+            assertNull(method.getName(), map.put(method.getName(), method));
+        }
+
+        // no private or static methods
+        assertFalse(map.containsKey("hidden"));
+        assertFalse(map.containsKey("create"));
+
+        { // declared on all three, the nearest @Color wins
+            final MetaAnnotatedMethod paint = map.get("paint");
+
+            assertSame(Poster.class, paint.getDeclaringClass());
+            assertEquals("white", paint.getAnnotation(Color.class).value());
+            assertTrue(paint.isAnnotationPresent(Red.class));
+            assertEquals(0, paint.getDeclaredAnnotations().length);
+        }
+
+        { // inherited as is
+            final MetaAnnotatedMethod plain = map.get("plain");
+
+            assertSame(MetaAnnotatedMethod.of(Canvas.class.getMethod("plain")), plain);
+            assertFalse(plain.isAnnotationPresent(Color.class));
+        }
+
+        { // only declared on the interface
+            final MetaAnnotatedMethod frame = map.get("frame");
+
+            assertSame(Painted.class, frame.getDeclaringClass());
+            assertEquals("red", frame.getAnnotation(Color.class).value());
+        }
+
+        // the parent lists are reused
+        assertSame(MetaAnnotatedClass.of(Canvas.class).getEffectiveMethods(), MetaAnnotatedClass.of(Canvas.class).getEffectiveMethods());
+
+        // Object's methods are left out
+        for (MetaAnnotatedMethod method : methods) {
+            assertNotSame(method.getName(), Object.class, method.getDeclaringClass());
+        }
+        assertEquals(0, MetaAnnotatedClass.of(Object.class).getEffectiveMethods().size());
+    }
+
+    public void testGenericOverride() throws Exception {
+        final List<MetaAnnotatedMethod> methods = MetaAnnotatedClass.of(StringHandler.class).getEffectiveMethods();
+
+        assertEquals(1, methods.size());
+
+        final MetaAnnotatedMethod handle = methods.get(0);
+        assertEquals(StringHandler.class.getMethod("handle", String.class), handle.get());
+        assertEquals("white", handle.getAnnotation(Color.class).value());
+        assertTrue(handle.isAnnotationPresent(Red.class));
+
+        // and through an intermediate generic class
+        final List<MetaAnnotatedMethod> nested = MetaAnnotatedClass.of(NumberHandler.class).getEffectiveMethods();
+
+        assertEquals(1, nested.size());
+        assertEquals(NumberHandler.class.getMethod("handle", Integer.class), nested.get(0).get());
+        assertTrue(nested.get(0).isAnnotationPresent(Red.class));
+    }
+
+    public void testOverloadedGenericOverride() throws Exception {
+        // the bridge handle(Object) accepts both overloads, it forwards to the one bound by Handler<T>
+        final List<MetaAnnotatedMethod> strings = MetaAnnotatedClass.of(StringOverloads.class).getEffectiveMethods();
+        assertEquals(2, strings.size());
+
+        for (MetaAnnotatedMethod method : strings) {
+            assertEquals(method.get().getParameterTypes()[0] == String.class, method.isAnnotationPresent(Red.class));
+        }
+
+        final List<MetaAnnotatedMethod> integers = MetaAnnotatedClass.of(IntegerOverloads.class).getEffectiveMethods();
+        assertEquals(2, integers.size());
+
+        for (MetaAnnotatedMethod method : integers) {
+            assertEquals(method.get().getParameterTypes()[0] == Integer.class, method.isAnnotationPresent(Red.class));
+        }
+    }
+
+    public void testPackagePrivate() throws Exception {
+        final List<MetaAnnotatedMethod> methods = MetaAnnotatedClass.of(Sketch.class).getEffectiveMethods();
+
+        // Outline.draw is not visible here, so Sketch.draw does not override it
+        assertEquals(2, methods.size());
+
+        for (MetaAnnotatedMethod method : methods) {
+            if (method.getDeclaringClass() == Sketch.class) {
+                assertEquals("white", method.getAnnotation(Color.class).value());
+                assertFalse(method.isAnnotationPresent(Red.class));
+            } else {
+                assertSame(Outline.class, method.getDeclaringClass());
+                assertTrue(method.isAnnotationPresent(Red.class));
+                assertEquals("red", method.getAnnotation(Color.class).value());
+            }
+        }
+
+        // within one package a package-private method is overridden as usual
+        final List<MetaAnnotatedMethod> local = MetaAnnotatedClass.of(Doodle.class).getEffectiveMethods();
+
+        assertEquals(1, local.size());
+        assertSame(Doodle.class, local.get(0).getDeclaringClass());
+        assertTrue(local.get(0).isAnnotationPresent(Red.class));
+        assertEquals("white", local.get(0).getAnnotation(Color.class).value());
+    }
+
+    @Target({METHOD})
+    @Retention(RUNTIME)
+    public static @interface Color {
+        String value() default "";
+    }
+
+    @Metatype
+    @Target({METHOD})
+    @Retention(RUNTIME)
+    public static @interface Red {
+        public interface $ {
+
+            @Red
+            @Color("red")
+            public void method();
+        }
+    }
+
+    public static interface Painted {
+
+        @Red
+        void paint();
+
+        void plain();
+
+        @Red
+        void frame();
+    }
+
+    public static abstract class Canvas implements Painted {
+
+        @Color("white")
+        public void paint() {
+        }
+
+        public void plain() {
+        }
+
+        private void hidden() {
+        }
+
+        public static Canvas create() {
+            return null;
+        }
+    }
+
+    public static abstract class Poster extends Canvas {
+
+        public void paint() {
+        }
+    }
+
+    public static interface Handler<T> {
+
+        @Red
+        void handle(T value);
+    }
+
+    public static class StringHandler implements Handler<String> {
+
+        @Color("white")
+        public void handle(String value) {
+        }
+    }
+
+    public static class StringOverloads implements Handler<String> {
+
+        public void handle(Integer value) {
+        }
+
+        public void handle(String value) {
+        }
+    }
+
+    public static class IntegerOverloads implements Handler<Integer> {
+
+        public void handle(String value) {
+        }
+
+        public void handle(Integer value) {
+        }
+    }
+
+    public static abstract class AbstractHandler<T extends Number> implements Handler<T> {
+    }
+
+    public static class NumberHandler extends AbstractHandler<Integer> {
+
+        public void handle(Integer value) {
+        }
+    }
+
+    public static class Sketch extends Outline {
+
+        @Color("white")
+        void draw() {
+        }
+    }
+
+    public static class Scribble {
+
+        @Red
+        void draw() {
+        }
+    }
+
+    public static class Doodle extends Scribble {
+
+        @Color("white")
+        public void draw() {
+        }
+    }
+}
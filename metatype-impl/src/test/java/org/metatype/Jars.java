@@ -0,0 +1,90 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Temporary jars for the tests of the scanners and resolvers, shared with
+ * metatype-ejb through the test-jar.
+ *
+ * @author David Blevins
+ */
+public final class Jars {
+
+    private Jars() {
+    }
+
+    /**
+     * A jar of the class files of the classes and all their nested classes
+     */
+    public static File of(Class<?>... classes) throws IOException {
+        final File jar = File.createTempFile("metatypes", ".jar");
+        jar.deleteOnExit();
+
+        final JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            for (Class<?> clazz : classes) {
+                add(out, clazz);
+            }
+        } finally {
+            out.close();
+        }
+
+        return jar;
+    }
+
+    /**
+     * A jar of empty entries, for tests where only the names matter
+     */
+    public static File empty(String... entries) throws IOException {
+        final File jar = File.createTempFile("metatypes", ".jar");
+        jar.deleteOnExit();
+
+        final JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            for (String entry : entries) {
+                out.putNextEntry(new JarEntry(entry));
+            }
+        } finally {
+            out.close();
+        }
+
+        return jar;
+    }
+
+    private static void add(JarOutputStream out, Class<?> clazz) throws IOException {
+        final String name = clazz.getName().replace('.', '/') + ".class";
+        out.putNextEntry(new JarEntry(name));
+
+        final InputStream in = clazz.getClassLoader().getResourceAsStream(name);
+        try {
+            final byte[] buffer = new byte[4096];
+            for (int n; (n = in.read(buffer)) > 0; ) out.write(buffer, 0, n);
+        } finally {
+            in.close();
+        }
+
+        for (Class<?> nested : clazz.getDeclaredClasses()) {
+            add(out, nested);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * @author David Blevins
+ */
+public class MaterializedAnnotationTest extends TestCase {
+
+    public void test() throws Exception {
+        final Everything original = Sample.class.getAnnotation(Everything.class);
+        final Everything materialized = MaterializedAnnotation.of(original);
+
+        assertNotSame(original, materialized);
+        assertTrue(materialized instanceof MaterializedAnnotation);
+        assertFalse(Proxy.isProxyClass(materialized.getClass()));
+        assertSame(Everything.class, materialized.annotationType());
+
+        assertEquals(true, materialized.z());
+        assertEquals((byte) 1, materialized.b());
+        assertEquals('c', materialized.c());
+        assertEquals((short) 2, materialized.s());
+        assertEquals(3, materialized.i());
+        assertEquals(4L, materialized.j());
+        assertEquals(5.5f, materialized.f());
+        assertEquals(6.5, materialized.d());
+        assertEquals("text", materialized.string());
+        assertSame(String.class, materialized.type());
+        assertSame(ElementType.FIELD, materialized.element());
+        assertEquals(original.nested(), materialized.nested());
+        assertTrue(Arrays.equals(new int[]{1, 2, 3}, materialized.ints()));
+        assertTrue(Arrays.equals(new String[]{"a", "b"}, materialized.strings()));
+        assertEquals(0, materialized.none().length);
+
+        // arrays are read straight from the fields, and were copied from the original once
+        assertSame(materialized.ints(), materialized.ints());
+        assertNotSame(original.ints(), materialized.ints());
+
+        assertEquals(original, materialized);
+        assertEquals(materialized, original);
+        assertEquals(original.hashCode(), materialized.hashCode());
+        assertFalse(materialized.equals(Other.class.getAnnotation(Everything.class)));
+        assertFalse(Other.class.getAnnotation(Everything.class).equals(materialized));
+
+        assertTrue(materialized.toString(), materialized.toString().startsWith("@" + Everything.class.getName() + "("));
+        assertTrue(materialized.toString(), materialized.toString().contains("ints=[1, 2, 3]"));
+
+        // materialized only once
+        assertSame(materialized, MaterializedAnnotation.of(materialized));
+        assertEquals(materialized, MaterializedAnnotation.of(original));
+        assertEquals(materialized.hashCode(), MaterializedAnnotation.of(original).hashCode());
+        assertFalse(materialized.equals(MaterializedAnnotation.of(Other.class.getAnnotation(Everything.class))));
+    }
+
+    public void testNotPublic() throws Exception {
+        final Hidden hidden = Sample.class.getAnnotation(Hidden.class);
+        final Hidden materialized = MaterializedAnnotation.of(hidden);
+
+        assertNotSame(hidden, materialized);
+        assertEquals(hidden, materialized);
+        assertEquals(hidden.toString(), materialized.toString());
+
+        // a class in another loader cannot implement it, a proxy over the values stands in
+        assertTrue(Proxy.isProxyClass(materialized.getClass()));
+        assertEquals(materialized, hidden);
+        assertEquals(hidden.hashCode(), materialized.hashCode());
+        assertSame(materialized, MaterializedAnnotation.of(materialized));
+    }
+
+    public void testValues() throws Exception {
+        final Map<String, Object> values = new HashMap<String, Object>(AnnotationAttributes.toMap(Sample.class.getAnnotation(Everything.class)));
+        values.remove("none");
+
+        final Everything built = MaterializedAnnotation.of(Everything.class, values);
+
+        // defaults fill in
+        assertEquals(0, built.none().length);
+        assertEquals(Sample.class.getAnnotation(Everything.class), built);
+        assertEquals(built, Sample.class.getAnnotation(Everything.class));
+        assertEquals(Sample.class.getAnnotation(Everything.class).hashCode(), built.hashCode());
+
+        values.put("i", "three");
+        try {
+            MaterializedAnnotation.of(Everything.class, values);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        values.remove("i");
+        try {
+            MaterializedAnnotation.of(Everything.class, values);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        values.put("i", 3);
+        values.put("missing", 1);
+        try {
+            MaterializedAnnotation.of(Everything.class, values);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testMetaAnnotation() throws Exception {
+        final MetaAnnotatedClassTest.Color color = MetaAnnotatedClass.of(MetaAnnotatedClassTest.Triangle.class).getAnnotation(MetaAnnotatedClassTest.Color.class);
+        final MetaAnnotatedClassTest.Color materialized = MaterializedAnnotation.of(color);
+
+        assertEquals("red", materialized.value());
+        assertEquals(color, materialized);
+    }
+
+    @Target(TYPE)
+    @Retention(RUNTIME)
+    public static @interface Nested {
+        String value();
+    }
+
+    @Target(TYPE)
+    @Retention(RUNTIME)
+    public static @interface Everything {
+        boolean z();
+        byte b();
+        char c();
+        short s();
+        int i();
+        long j();
+        float f();
+        double d();
+        String string();
+        Class<?> type();
+        ElementType element();
+        Nested nested();
+        int[] ints();
+        String[] strings();
+        long[] none() default {};
+    }
+
+    @Target(TYPE)
+    @Retention(RUNTIME)
+    static @interface Hidden {
+    }
+
+    @Everything(z = true, b = 1, c = 'c', s = 2, i = 3, j = 4, f = 5.5f, d = 6.5, string = "text", type = String.class,
+            element = ElementType.FIELD, nested = @Nested("n"), ints = {1, 2, 3}, strings = {"a", "b"})
+    @Hidden
+    public static class Sample {
+    }
+
+    @Everything(z = true, b = 1, c = 'c', s = 2, i = 3, j = 4, f = 5.5f, d = 6.5, string = "text", type = String.class,
+            element = ElementType.FIELD, nested = @Nested("n"), ints = {1, 2, 4}, strings = {"a", "b"})
+    public static class Other {
+    }
+}
@@ -18,8 +18,10 @@ package org.metatype;
 import static java.lang.annotation.ElementType.ANNOTATION_TYPE;
 import static java.lang.annotation.ElementType.TYPE;
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
+import static java.util.Arrays.asList;
 
 import java.lang.annotation.Annotation;
+import java.lang.annotation.Inherited;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
@@ -165,6 +167,66 @@ public class MetaAnnotatedClassTest extends TestCase {
         assertFalse(contains(Metatype.class, annotated.getAnnotations()));
     }
 
+    public void testOf() throws Exception {
+        final MetaAnnotatedClass<Square> square = MetaAnnotatedClass.of(Square.class);
+
+        assertSame(square, MetaAnnotatedClass.of(Square.class));
+        assertSame(square.getSuperclass(), MetaAnnotatedClass.of(Object.class));
+        assertNull(square.getSuperclass().getSuperclass());
+
+        assertSame(square.getMethod("toString"), MetaAnnotatedMethod.of(Square.class.getMethod("toString")));
+        assertSame(square.getConstructor(), MetaAnnotatedConstructor.of(Square.class.getConstructor()));
+
+        assertTrue(square.isAnnotationPresent(Color.class));
+        assertEquals("red", square.getAnnotation(Color.class).value());
+    }
+
+    public void testGetAnnotationList() throws Exception {
+        final MetaAnnotatedClass<Triangle> triangle = new MetaAnnotatedClass<Triangle>(Triangle.class);
+
+        assertSame(triangle.getAnnotationList(), triangle.getAnnotationList());
+        assertEquals(asList(triangle.getAnnotations()), triangle.getAnnotationList());
+
+        // callers own the array they get back
+        final Annotation[] annotations = triangle.getAnnotations();
+        annotations[0] = null;
+        assertNotNull(triangle.getAnnotations()[0]);
+
+        try {
+            triangle.getAnnotationList().clear();
+            fail("the list view should be unmodifiable");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    public void testGetInherited() throws Exception {
+        final MetaAnnotatedClass<SubSquare> subSquare = MetaAnnotatedClass.of(SubSquare.class);
+
+        assertFalse(subSquare.isAnnotationPresent(Tint.class));
+
+        final MetaAnnotated<Class<SubSquare>> inherited = subSquare.getInherited();
+        assertSame(inherited, subSquare.getInherited());
+        assertSame(SubSquare.class, inherited.get());
+
+        // only @Inherited types come down from the superclass
+        assertEquals("pink", inherited.getAnnotation(Tint.class).value());
+        assertFalse(inherited.isAnnotationPresent(Pink.class));
+        assertFalse(inherited.isAnnotationPresent(Color.class));
+        assertEquals(1, inherited.getAnnotations().length);
+        assertEquals(0, inherited.getDeclaredAnnotations().length);
+
+        // the smaller depth wins, the subclass on a tie
+        assertEquals("blue", MetaAnnotatedClass.of(BlueSquare.class).getInherited().getAnnotation(Tint.class).value());
+        assertEquals("plain", MetaAnnotatedClass.of(BlushingPlain.class).getInherited().getAnnotation(Tint.class).value());
+        assertEquals(4, MetaAnnotatedClass.of(BlushingPlain.class).getInherited().getAnnotations().length);
+
+        // interfaces never pass theirs on
+        final MetaAnnotated<Class<ShapedCircle>> shaped = MetaAnnotatedClass.of(ShapedCircle.class).getInherited();
+        assertFalse(shaped.isAnnotationPresent(Tint.class));
+        assertFalse(shaped.isAnnotationPresent(Color.class));
+        assertEquals(0, shaped.getAnnotations().length);
+    }
+
     private boolean contains(Class<? extends Annotation> type, Annotation[] annotations) {
         for (Annotation annotation : annotations) {
             if (type.isAssignableFrom(annotation.annotationType())) return true;
@@ -232,6 +294,56 @@ public class MetaAnnotatedClassTest extends TestCase {
     public static class Circle {
     }
 
+    @Inherited
+    @Target(value = {TYPE})
+    @Retention(value = RUNTIME)
+    public static @interface Tint {
+        String value() default "";
+    }
+
+    @Metatype
+    @Tint("pink")
+    @Color("pink")
+    @Target(value = {TYPE})
+    @Retention(value = RUNTIME)
+    public static @interface Pink {
+    }
+
+    @Metatype
+    @Pink
+    @Target(value = {TYPE})
+    @Retention(value = RUNTIME)
+    public static @interface Blush {
+    }
+
+    @Pink
+    public static class PinkSquare {
+    }
+
+    public static class SubSquare extends PinkSquare {
+    }
+
+    @Tint("blue")
+    public static class BlueSquare extends SubSquare {
+    }
+
+    @Tint("plain")
+    public static class Plain {
+    }
+
+    // @Tint two levels deep, the superclass has it directly
+    @Blush
+    public static class BlushingPlain extends Plain {
+    }
+
+    @Tint("white")
+    @Crimson
+    public static interface Shape {
+    }
+
+    public static class ShapedCircle implements Shape {
+    }
+
     @Crimson
     // -> @Red -> @Color
     public static class Triangle {
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import static java.util.Arrays.asList;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+
+/**
+ * @author David Blevins
+ */
+public class MetaAnnotatedClassesTest extends TestCase {
+
+    public void testResolve() throws Exception {
+        final List<Class<?>> classes = new ArrayList<Class<?>>();
+        for (int i = 0; i < 10; i++) {
+            classes.addAll(asList(MetaAnnotatedClassTest.Square.class, MetaAnnotatedClassTest.Circle.class,
+                    MetaAnnotatedClassTest.Triangle.class, MetaAnnotatedClassTest.Store.class,
+                    MetaAnnotatedMethodTest.Triangle.class, MetaAnnotatedMethodParametersTest.Farm.class));
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final List<MetaAnnotatedClass<?>> resolved = MetaAnnotatedClasses.resolve(classes, pool);
+
+            assertEquals(classes.size(), resolved.size());
+
+            for (int i = 0; i < classes.size(); i++) {
+                assertSame(MetaAnnotatedClass.of(classes.get(i)), resolved.get(i));
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals("red", MetaAnnotatedClass.of(MetaAnnotatedClassTest.Triangle.class).getAnnotation(MetaAnnotatedClassTest.Color.class).value());
+        assertEquals("egg", MetaAnnotatedClass.of(MetaAnnotatedClassTest.Store.class).getAnnotation(MetaAnnotatedClassTest.Color.class).value());
+    }
+
+    public void testResolveJar() throws Exception {
+        final File jar = Jars.empty("org/metatype/MetaAnnotatedClassTest$Square.class", "org/metatype/MetaAnnotatedClassTest$Circle.class", "org/metatype/MetaAnnotatedClassTest.class");
+
+        final List<MetaAnnotatedClass<?>> resolved = MetaAnnotatedClasses.resolve(jar, getClass().getClassLoader());
+
+        assertEquals(3, resolved.size());
+        assertSame(MetaAnnotatedClass.of(MetaAnnotatedClassTest.class), resolved.get(0));
+        assertSame(MetaAnnotatedClass.of(MetaAnnotatedClassTest.Circle.class), resolved.get(1));
+        assertSame(MetaAnnotatedClass.of(MetaAnnotatedClassTest.Square.class), resolved.get(2));
+    }
+
+    public void testResolveJarMissingClass() throws Exception {
+        final File jar = Jars.empty("org/metatype/MetaAnnotatedClassTest$Square.class", "org/metatype/DoesNotExist.class");
+
+        final List<String> unloadable = new ArrayList<String>();
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            final List<MetaAnnotatedClass<?>> resolved = MetaAnnotatedClasses.resolve(jar, getClass().getClassLoader(), pool, unloadable);
+
+            assertEquals(1, resolved.size());
+            assertSame(MetaAnnotatedClass.of(MetaAnnotatedClassTest.Square.class), resolved.get(0));
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(asList("org.metatype.DoesNotExist"), unloadable);
+    }
+
+    public void testResolveJarSkipsDescriptors() throws Exception {
+        final File jar = Jars.empty("org/metatype/MetaAnnotatedClassTest$Square.class", "org/metatype/package-info.class",
+                "META-INF/versions/11/org/metatype/MetaAnnotatedClassTest$Circle.class", "module-info.class");
+
+        final List<MetaAnnotatedClass<?>> resolved = MetaAnnotatedClasses.resolve(jar, getClass().getClassLoader());
+
+        assertEquals(1, resolved.size());
+        assertSame(MetaAnnotatedClass.of(MetaAnnotatedClassTest.Square.class), resolved.get(0));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import static java.util.Arrays.asList;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * @author David Blevins
+ */
+public class MetaAnnotationIndexTest extends TestCase {
+
+    public void test() throws Exception {
+        final MetaAnnotationIndex index = MetaAnnotationIndex.of(asList(
+                MetaAnnotatedClassTest.Square.class, MetaAnnotatedClassTest.Triangle.class, MetaAnnotatedClassTest.None.class,
+                MetaAnnotatedMethodTest.Square.class, MetaAnnotatedMethodTest.Triangle.class, MetaAnnotatedMethodTest.None.class,
+                MetaAnnotatedMethodParametersTest.Square.class, MetaAnnotatedMethodParametersTest.Oval.class));
+
+        { // classes, @Color only reached through @Red and @Crimson
+            final List<MetaAnnotatedClass<?>> classes = index.getClasses(MetaAnnotatedClassTest.Color.class);
+
+            assertEquals(2, classes.size());
+            assertSame(MetaAnnotatedClass.of(MetaAnnotatedClassTest.Square.class), classes.get(0));
+            assertSame(MetaAnnotatedClass.of(MetaAnnotatedClassTest.Triangle.class), classes.get(1));
+
+            assertEquals(1, index.getClasses(MetaAnnotatedClassTest.Crimson.class).size());
+        }
+
+        { // methods
+            final Set<String> names = new HashSet<String>();
+            for (MetaAnnotatedMethod method : index.getMethods(MetaAnnotatedMethodTest.Color.class)) {
+                names.add(method.getName());
+            }
+            assertEquals(new HashSet<String>(asList("square", "triangle")), names);
+        }
+
+        { // parameters, @Color reached through @Forrest -> @DarkGreen -> @Green
+            final List<MetaAnnotationIndex.Parameter> parameters = index.getParameters(MetaAnnotatedMethodParametersTest.Color.class);
+
+            assertEquals(2, parameters.size());
+            for (MetaAnnotationIndex.Parameter parameter : parameters) {
+                assertEquals(0, parameter.getIndex());
+                assertTrue(parameter.getMethod() instanceof MetaAnnotatedMethod);
+            }
+            assertEquals(1, index.getParameters(MetaAnnotatedMethodParametersTest.Green.class).size());
+        }
+
+        // nothing carries these
+        assertTrue(index.getFields(MetaAnnotatedClassTest.Color.class).isEmpty());
+        assertTrue(index.getConstructors(MetaAnnotatedClassTest.Color.class).isEmpty());
+        assertTrue(index.getClasses(MetaAnnotatedClassTest.Egg.class).isEmpty());
+        assertFalse(index.getAnnotationTypes().contains(MetaAnnotatedClassTest.Egg.class));
+
+        try {
+            index.getClasses(MetaAnnotatedClassTest.Color.class).clear();
+            fail("lists should be unmodifiable");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+}
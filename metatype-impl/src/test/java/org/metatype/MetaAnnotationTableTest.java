@@ -0,0 +1,80 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import javax.annotation.Metaroot;
+import javax.annotation.Metatype;
+
+/**
+ * @author David Blevins
+ */
+public class MetaAnnotationTableTest extends TestCase {
+
+    private static final Class[] TYPES = {
+            Target.class, Retention.class, Documented.class, Inherited.class, Deprecated.class,
+            Override.class, SuppressWarnings.class, SafeVarargs.class, Metatype.class, Metaroot.class
+    };
+
+    public void testLinear() throws Exception {
+        assertTable(4);
+    }
+
+    public void testIndexed() throws Exception {
+        assertTable(TYPES.length);
+    }
+
+    public void testEmpty() throws Exception {
+        final MetaAnnotationTable table = MetaAnnotationTable.of(new LinkedHashMap<Class<? extends Annotation>, MetaAnnotation<?>>());
+
+        assertSame(MetaAnnotationTable.EMPTY, table);
+        assertEquals(0, table.size());
+        assertFalse(table.contains(Target.class));
+        assertNull(table.get(Target.class));
+    }
+
+    private void assertTable(int size) {
+        final Map<Class<? extends Annotation>, MetaAnnotation<?>> map = new LinkedHashMap<Class<? extends Annotation>, MetaAnnotation<?>>();
+
+        for (int i = 0; i < size; i++) {
+            map.put(TYPES[i], new MetaAnnotation(null, i));
+        }
+
+        final MetaAnnotationTable table = MetaAnnotationTable.of(map);
+
+        assertEquals(size, table.size());
+
+        for (int i = 0; i < TYPES.length; i++) {
+            if (i < size) {
+                assertTrue(table.contains(TYPES[i]));
+                assertSame(map.get(TYPES[i]), table.get(TYPES[i]));
+                assertSame(map.get(TYPES[i]), table.get(i));
+            } else {
+                assertFalse(table.contains(TYPES[i]));
+                assertNull(table.get(TYPES[i]));
+            }
+        }
+    }
+}
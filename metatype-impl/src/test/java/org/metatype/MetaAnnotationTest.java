@@ -0,0 +1,102 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import junit.framework.TestCase;
+
+import javax.annotation.Metatype;
+
+/**
+ * Conflicts are recorded without mutating shared, cached results.
+ *
+ * @author David Blevins
+ */
+public class MetaAnnotationTest extends TestCase {
+
+    public void testConflicts() throws Exception {
+        final MetaAnnotation<Color> color = color(Purple.class);
+
+        assertEquals(1, color.getDepth());
+        assertEquals(1, color.getConflicts().size());
+        assertEquals(1, color.getConflicts().get(0).getDepth());
+
+        try {
+            color.getConflicts().clear();
+            fail("conflicts should be unmodifiable");
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        // resolving again neither sees nor adds to the conflicts of the first
+        final MetaAnnotation<Color> again = color(Violet.class);
+        assertEquals(1, again.getConflicts().size());
+        assertEquals(1, color.getConflicts().size());
+
+        // no conflicts in the shared closures of @Red and @Blue
+        assertTrue(color(Rose.class).getConflicts().isEmpty());
+        assertTrue(color(Sky.class).getConflicts().isEmpty());
+    }
+
+    private static MetaAnnotation<Color> color(Class<?> clazz) {
+        for (MetaAnnotation<?> metaAnnotation : MetaAnnotatedClass.of(clazz).getMetaAnnotations()) {
+            if (metaAnnotation.get().annotationType() == Color.class) return (MetaAnnotation<Color>) metaAnnotation;
+        }
+        throw new AssertionError("no @Color on " + clazz);
+    }
+
+    @Target(value = {TYPE})
+    @Retention(value = RUNTIME)
+    public static @interface Color {
+        String value() default "";
+    }
+
+    @Metatype
+    @Color("red")
+    @Target(value = {TYPE})
+    @Retention(value = RUNTIME)
+    public static @interface Red {
+    }
+
+    @Metatype
+    @Color("blue")
+    @Target(value = {TYPE})
+    @Retention(value = RUNTIME)
+    public static @interface Blue {
+    }
+
+    @Red
+    @Blue
+    public static class Purple {
+    }
+
+    @Blue
+    @Red
+    public static class Violet {
+    }
+
+    @Red
+    public static class Rose {
+    }
+
+    @Blue
+    public static class Sky {
+    }
+}
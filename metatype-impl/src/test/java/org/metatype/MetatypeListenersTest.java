@@ -0,0 +1,190 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+
+import junit.framework.TestCase;
+
+import javax.annotation.Metatype;
+
+/**
+ * The fixtures are only used here, so their closures are computed while the
+ * listener is registered.
+ *
+ * @author David Blevins
+ */
+public class MetatypeListenersTest extends TestCase {
+
+    public void test() throws Exception {
+        final MetatypeStatistics statistics = new MetatypeStatistics();
+        MetatypeListeners.add(statistics);
+        try {
+            final MetaAnnotatedClass<Painting> painting = new MetaAnnotatedClass<Painting>(Painting.class);
+            assertEquals(1, statistics.getWrappers());
+            assertEquals(0, statistics.getUnrolls());
+
+            // @Mauve -> @Purple -> @Tone, plus @Tone directly: no conflict, the direct one wins
+            assertEquals("purple", painting.getAnnotation(Tone.class).value());
+            assertEquals(1, statistics.getUnrolls());
+            assertTrue(statistics.getClosures() >= 2);
+            assertEquals(2, statistics.getMaxDepth());
+            assertTrue(statistics.getDefinitionMisses() >= 2);
+            assertEquals(0, statistics.getConflicts());
+
+            // @Purple and @Lilac both bring a @Tone at depth 1
+            new MetaAnnotatedClass<Sketch>(Sketch.class).getAnnotations();
+            assertEquals(1, statistics.getConflicts());
+
+            // a "$" definition class
+            final long found = statistics.getDefinitionLookups() - statistics.getDefinitionMisses();
+            new MetaAnnotatedMethod(Sketch.class.getMethod("draw")).getAnnotations();
+            assertEquals(found + 1, statistics.getDefinitionLookups() - statistics.getDefinitionMisses());
+
+            // views built from already resolved tables count as wrappers too
+            final long created = statistics.getWrappers();
+            MetaAnnotatedClass.of(Sketch.class).getInherited();
+            assertTrue(statistics.getWrappers() > created);
+        } finally {
+            MetatypeListeners.remove(statistics);
+        }
+
+        final long wrappers = statistics.getWrappers();
+        new MetaAnnotatedClass<Painting>(Painting.class).getAnnotations();
+        assertEquals(wrappers, statistics.getWrappers());
+    }
+
+    public void testUntimed() throws Exception {
+        final MetatypeStatistics statistics = new MetatypeStatistics() {
+            @Override
+            public boolean wantsTiming() {
+                return false;
+            }
+        };
+
+        MetatypeListeners.add(statistics);
+        try {
+            new MetaAnnotatedClass<Painting>(Painting.class).getAnnotations();
+            assertEquals(1, statistics.getUnrolls());
+            assertEquals(0, statistics.getUnrollNanos());
+        } finally {
+            MetatypeListeners.remove(statistics);
+        }
+    }
+
+    public void testBrokenProviders() throws Exception {
+        final MetatypeStatistics statistics = new MetatypeStatistics();
+
+        // a provider that fails to load is skipped
+        MetatypeListeners.addAll(new Iterator<MetatypeListener>() {
+            private int i;
+
+            public boolean hasNext() {
+                return i < 2;
+            }
+
+            public MetatypeListener next() {
+                if (i++ == 0) throw new ServiceConfigurationError("broken");
+                return statistics;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        });
+        try {
+            new MetaAnnotatedClass<Painting>(Painting.class);
+            assertEquals(1, statistics.getWrappers());
+        } finally {
+            MetatypeListeners.remove(statistics);
+        }
+
+        // a configuration that cannot be read ends the loop
+        MetatypeListeners.addAll(new Iterator<MetatypeListener>() {
+            public boolean hasNext() {
+                throw new ServiceConfigurationError("unreadable");
+            }
+
+            public MetatypeListener next() {
+                throw new AssertionError();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        });
+    }
+
+    @Target({TYPE, METHOD})
+    @Retention(RUNTIME)
+    public static @interface Tone {
+        String value();
+    }
+
+    @Metatype
+    @Tone("purple")
+    @Target(TYPE)
+    @Retention(RUNTIME)
+    public static @interface Purple {
+    }
+
+    @Metatype
+    @Tone("lilac")
+    @Target(TYPE)
+    @Retention(RUNTIME)
+    public static @interface Lilac {
+    }
+
+    @Metatype
+    @Purple
+    @Target(TYPE)
+    @Retention(RUNTIME)
+    public static @interface Mauve {
+    }
+
+    @Metatype
+    @Target(METHOD)
+    @Retention(RUNTIME)
+    public static @interface Bold {
+        public interface $ {
+
+            @Bold
+            @Tone("bold")
+            public void method();
+        }
+    }
+
+    @Mauve
+    @Tone("purple")
+    public static class Painting {
+    }
+
+    @Purple
+    @Lilac
+    public static class Sketch {
+
+        @Bold
+        public void draw() {
+        }
+    }
+}
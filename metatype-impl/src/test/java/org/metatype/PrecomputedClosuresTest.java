@@ -0,0 +1,153 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import javax.annotation.Metatype;
+
+/**
+ * The closures under src/test/resources/META-INF/metatypes are what
+ * the metatype-processor writes for the annotations below.
+ *
+ * @author David Blevins
+ */
+public class PrecomputedClosuresTest extends TestCase {
+
+    public void testLoad() throws Exception {
+        final Map<Class<? extends Annotation>, MetaAnnotation<?>> closure = PrecomputedClosures.load(Crimson.class);
+
+        assertNotNull(closure);
+        assertEquals(2, closure.size());
+
+        assertEquals(1, closure.get(Red.class).getDepth());
+        assertEquals(2, closure.get(Color.class).getDepth());
+        assertEquals("red", ((Color) closure.get(Color.class).get()).value());
+    }
+
+    public void testMissing() throws Exception {
+        assertNull(PrecomputedClosures.load(Red.class));
+    }
+
+    public void testStale() throws Exception {
+        assertNull(PrecomputedClosures.load(Stale.class));
+
+        // falls back to reflection
+        final MetaAnnotatedClass<Shape> shape = new MetaAnnotatedClass<Shape>(Shape.class);
+        assertEquals("stale", shape.getAnnotation(Color.class).value());
+    }
+
+    /**
+     * A definition member bound after the closure was written
+     */
+    public void testMemberAdded() throws Exception {
+        assertNull(PrecomputedClosures.load(Scarlet.class));
+
+        final MetaAnnotatedClass<Circle> circle = new MetaAnnotatedClass<Circle>(Circle.class);
+        assertTrue(circle.isAnnotationPresent(Red.class));
+        assertEquals("red", circle.getAnnotation(Color.class).value());
+    }
+
+    public void testMalformed() throws Exception {
+        // String is no annotation
+        assertNull(PrecomputedClosures.load(Malformed.class));
+
+        // a line cut short
+        assertNull(PrecomputedClosures.load(Truncated.class));
+    }
+
+    public void testUnroll() throws Exception {
+        final MetaAnnotatedClass<Triangle> triangle = new MetaAnnotatedClass<Triangle>(Triangle.class);
+
+        assertTrue(triangle.isAnnotationPresent(Crimson.class));
+        assertTrue(triangle.isAnnotationPresent(Red.class));
+        assertEquals("red", triangle.getAnnotation(Color.class).value());
+        assertEquals(3, triangle.getAnnotations().length);
+    }
+
+    @Target({TYPE})
+    @Retention(RUNTIME)
+    public static @interface Color {
+        String value() default "";
+    }
+
+    @Metatype
+    @Color("red")
+    @Target({TYPE, PARAMETER})
+    @Retention(RUNTIME)
+    public static @interface Red {
+    }
+
+    @Metatype
+    @Target({TYPE, PARAMETER})
+    @Retention(RUNTIME)
+    public static @interface Crimson {
+        public interface $ {
+
+            public void method(String s, @Crimson @Red int[] i);
+        }
+    }
+
+    @Metatype
+    @Color("stale")
+    @Target({TYPE})
+    @Retention(RUNTIME)
+    public static @interface Stale {
+    }
+
+    @Metatype
+    @Target({TYPE, PARAMETER})
+    @Retention(RUNTIME)
+    public static @interface Scarlet {
+        public interface $ {
+
+            public void method(@Scarlet @Red int i);
+        }
+    }
+
+    @Metatype
+    @Target({TYPE})
+    @Retention(RUNTIME)
+    public static @interface Malformed {
+    }
+
+    @Metatype
+    @Target({TYPE})
+    @Retention(RUNTIME)
+    public static @interface Truncated {
+    }
+
+    @Crimson
+    public static class Triangle {
+    }
+
+    @Stale
+    public static class Shape {
+    }
+
+    @Scarlet
+    public static class Circle {
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype;
+
+import static java.lang.annotation.ElementType.ANNOTATION_TYPE;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.Arrays;
+
+import javax.annotation.Metatype;
+
+import junit.framework.TestCase;
+
+/**
+ * @author David Blevins
+ */
+public class UnrolledParametersTest extends TestCase {
+
+    public void testMethod() throws Exception {
+        final MetaAnnotatedMethod method = MetaAnnotatedMethod.of(Greeter.class.getMethod("greet", String.class, int.class));
+
+        assertParameters(method.getParameterAnnotations(0), method.getParameterAnnotations(1), method.getParameterAnnotations());
+
+        // callers share the wrapper, not the arrays
+        method.getParameterAnnotations()[0][0] = null;
+        method.getParameterAnnotations(0)[0] = null;
+
+        assertParameters(method.getParameterAnnotations(0), method.getParameterAnnotations(1), method.getParameterAnnotations());
+    }
+
+    public void testConstructor() throws Exception {
+        final MetaAnnotatedConstructor<Greeter> constructor = MetaAnnotatedConstructor.of(Greeter.class.getConstructor(String.class, int.class));
+
+        constructor.getParameterAnnotations()[0] = new Annotation[0];
+        constructor.getParameterAnnotations(0)[0] = null;
+
+        assertParameters(constructor.getParameterAnnotations(0), constructor.getParameterAnnotations(1), constructor.getParameterAnnotations());
+    }
+
+    private static void assertParameters(Annotation[] first, Annotation[] second, Annotation[][] all) {
+        assertEquals(2, all.length);
+        assertEquals(Arrays.asList(first), Arrays.asList(all[0]));
+        assertEquals(Arrays.asList(second), Arrays.asList(all[1]));
+
+        // @Polite -> @Tone
+        assertEquals(2, first.length);
+        assertEquals(0, second.length);
+    }
+
+    @Target({PARAMETER, ANNOTATION_TYPE})
+    @Retention(RUNTIME)
+    public static @interface Tone {
+    }
+
+    @Metatype
+    @Tone
+    @Target(PARAMETER)
+    @Retention(RUNTIME)
+    public static @interface Polite {
+    }
+
+    public static class Greeter {
+        public Greeter(@Polite String name, int times) {
+        }
+
+        public void greet(@Polite String name, int times) {
+        }
+    }
+}
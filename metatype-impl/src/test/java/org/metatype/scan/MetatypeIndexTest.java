@@ -0,0 +1,241 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.scan;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.metatype.Jars;
+import org.metatype.MetaAnnotatedFieldTest;
+import org.metatype.MetaAnnotatedMethod;
+import org.metatype.MetaAnnotatedMethodTest;
+
+/**
+ * @author David Blevins
+ */
+public class MetatypeIndexTest extends TestCase {
+
+    public void testRoundTrip() throws Exception {
+        final File jar = Jars.of(MetaAnnotatedMethodTest.class);
+        final File file = File.createTempFile("metatypes", ".idx");
+        file.deleteOnExit();
+
+        MetatypeIndex.write(jar, file);
+
+        final MetatypeIndex index = MetatypeIndex.open(file, jar);
+        assertNotNull(index);
+
+        final List<ScannedElement> scanned = new MetatypeScanner().add(jar).scan();
+        assertEquals(scanned.size(), index.size());
+
+        for (ScannedElement expected : scanned) {
+            final ScannedElement actual = index.get(MetatypeIndex.key(expected));
+            assertNotNull(MetatypeIndex.key(expected), actual);
+
+            assertEquals(expected.getKind(), actual.getKind());
+            assertEquals(expected.getParameter(), actual.getParameter());
+            assertEquals(expected.toString(), actual.toString());
+
+            for (ScannedAnnotation annotation : expected.getAnnotations()) {
+                assertEquals(expected.getDepth(annotation.getType()), actual.getDepth(annotation.getType()));
+                assertEquals(expected.isConflicting(annotation.getType()), actual.isConflicting(annotation.getType()));
+            }
+        }
+
+        // keys computed from reflection find the same entries
+        final Method triangle = MetaAnnotatedMethodTest.Triangle.class.getMethod("triangle", boolean[].class);
+        final ScannedElement element = index.get(MetatypeIndex.key(triangle));
+
+        assertNotNull(element);
+        assertEquals(2, element.getDepth(MetaAnnotatedMethodTest.Color.class.getName()));
+
+        // presence and depth only, the values are left to reflection
+        assertEquals(0, element.getAnnotation(MetaAnnotatedMethodTest.Color.class.getName()).getValues().size());
+
+        assertNull(index.get(MetatypeIndex.key(MetaAnnotatedMethodTest.None.class.getMethod("none", List.class))));
+    }
+
+    public void testInvalidation() throws Exception {
+        final File jar = Jars.of(MetaAnnotatedMethodTest.class);
+        final File file = File.createTempFile("metatypes", ".idx");
+        file.deleteOnExit();
+
+        MetatypeIndex.write(jar, file);
+
+        // same bytes, new timestamp: the checksum still matches
+        assertTrue(jar.setLastModified(jar.lastModified() - 60000));
+        assertNotNull(MetatypeIndex.open(file, jar));
+
+        // different bytes
+        final File other = Jars.of(MetaAnnotatedFieldTest.class);
+        copy(other, jar);
+        assertNull(MetatypeIndex.open(file, jar));
+    }
+
+    /**
+     * The closures depend on the meta-annotations the fallback loader supplied
+     */
+    public void testDependencies() throws Exception {
+        final File api = Jars.of(MetaAnnotatedMethodTest.class);
+        final File jar = Jars.of(Painted.class);
+        final File file = File.createTempFile("metatypes", ".idx");
+        file.deleteOnExit();
+
+        final ClassLoader fallback = new URLClassLoader(new URL[]{api.toURI().toURL()}, ClassLoader.getSystemClassLoader().getParent());
+        MetatypeIndex.write(jar, file, fallback);
+
+        final MetatypeIndex index = MetatypeIndex.open(file, jar);
+        assertNotNull(index);
+
+        final ScannedElement paint = index.get(MetatypeIndex.key(Painted.class.getMethod("paint")));
+        assertEquals(1, paint.getDepth(MetaAnnotatedMethodTest.Color.class.getName()));
+
+        // the jar is the same, the meta-annotations are not
+        copy(Jars.of(MetaAnnotatedFieldTest.class), api);
+        assertNull(MetatypeIndex.open(file, jar));
+
+        assertTrue(api.delete());
+        assertNull(MetatypeIndex.open(file, jar));
+    }
+
+    public void testCorrupt() throws Exception {
+        final File jar = Jars.of(MetaAnnotatedMethodTest.class);
+        final File file = File.createTempFile("metatypes", ".idx");
+        file.deleteOnExit();
+
+        MetatypeIndex.write(jar, file);
+
+        final RandomAccessFile access = new RandomAccessFile(file, "rw");
+        try {
+            // a flipped byte in the last entry
+            access.seek(access.length() - 1);
+            final int last = access.read();
+            access.seek(access.length() - 1);
+            access.write(last ^ 1);
+            assertOpenFails(file, jar);
+
+            // cut short
+            access.setLength(access.length() - 1);
+            assertOpenFails(file, jar);
+        } finally {
+            access.close();
+        }
+    }
+
+    public void testLookup() throws Exception {
+        final File jar = Jars.of(MetaAnnotatedMethodTest.class);
+        final File file = File.createTempFile("metatypes", ".idx");
+        file.deleteOnExit();
+
+        MetatypeIndex.write(jar, file);
+        final MetatypeIndex index = MetatypeIndex.open(file, jar);
+        MetatypeIndex.register(index);
+        try {
+            assertLookup(jar);
+        } finally {
+            MetatypeIndex.unregister(index);
+        }
+    }
+
+    public void testRegisterLater() throws Exception {
+        final File jar = Jars.of(MetaAnnotatedMethodTest.class);
+        final File file = File.createTempFile("metatypes", ".idx");
+        file.deleteOnExit();
+
+        MetatypeIndex.write(jar, file);
+        final MetatypeIndex index = MetatypeIndex.open(file, jar);
+
+        final ClassLoader loader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, ClassLoader.getSystemClassLoader().getParent());
+        final Method triangle = loader.loadClass(MetaAnnotatedMethodTest.Triangle.class.getName()).getMethod("triangle", boolean[].class);
+        final Class<? extends Annotation> color = loader.loadClass(MetaAnnotatedMethodTest.Color.class.getName()).asSubclass(Annotation.class);
+
+        assertNull(MetatypeIndex.lookup(triangle));
+
+        // wrapped before the index is registered, asked after
+        final MetaAnnotatedMethod method = new MetaAnnotatedMethod(triangle);
+
+        MetatypeIndex.register(index);
+        try {
+            assertNotNull(MetatypeIndex.lookup(triangle));
+            assertTrue(method.isAnnotationPresent(color));
+        } finally {
+            MetatypeIndex.unregister(index);
+        }
+
+        assertNull(MetatypeIndex.lookup(triangle));
+        assertFalse(new MetaAnnotatedMethod(triangle).isAnnotationPresent(color));
+    }
+
+    private static void assertLookup(File jar) throws Exception {
+        // javax.annotation.Metatype is not visible to this loader, so reflection
+        // alone cannot follow @Crimson to @Color, the index can
+        final ClassLoader loader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, ClassLoader.getSystemClassLoader().getParent());
+
+        final Class<?> triangle = loader.loadClass(MetaAnnotatedMethodTest.Triangle.class.getName());
+        final Class<? extends Annotation> color = loader.loadClass(MetaAnnotatedMethodTest.Color.class.getName()).asSubclass(Annotation.class);
+
+        assertTrue(new MetaAnnotatedMethod(triangle.getMethod("triangle", boolean[].class)).isAnnotationPresent(color));
+
+        final Class<?> none = loader.loadClass(MetaAnnotatedMethodTest.None.class.getName());
+        final MetaAnnotatedMethod method = new MetaAnnotatedMethod(none.getMethod("none", List.class));
+
+        assertNotNull(MetatypeIndex.lookup(none.getMethod("none", List.class)));
+        assertFalse(method.isAnnotationPresent(color));
+        assertEquals(0, method.getAnnotations().length);
+
+        // classes outside any registered jar are not covered
+        assertNull(MetatypeIndex.lookup(MetaAnnotatedMethodTest.None.class));
+    }
+
+    private static void assertOpenFails(File file, File jar) {
+        try {
+            MetatypeIndex.open(file, jar);
+            fail("corrupt index accepted");
+        } catch (IOException expected) {
+            // rejected up front
+        }
+    }
+
+    private static void copy(File from, File to) throws Exception {
+        final InputStream in = new FileInputStream(from);
+        final FileOutputStream out = new FileOutputStream(to);
+        try {
+            final byte[] buffer = new byte[4096];
+            for (int n; (n = in.read(buffer)) > 0; ) out.write(buffer, 0, n);
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    public static class Painted {
+
+        @MetaAnnotatedMethodTest.Red
+        public void paint() {
+        }
+    }
+}
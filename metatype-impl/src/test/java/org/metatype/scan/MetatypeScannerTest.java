@@ -0,0 +1,215 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.scan;
+
+import java.io.File;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.metatype.Jars;
+import org.metatype.MetaAnnotatedClassTest;
+import org.metatype.MetaAnnotatedMethod;
+import org.metatype.MetaAnnotatedMethodTest;
+import org.metatype.MetaAnnotatedMethodParametersTest;
+
+/**
+ * Checks the scanner agrees with the reflective implementation on the
+ * fixtures of the reflective tests.
+ *
+ * @author David Blevins
+ */
+public class MetatypeScannerTest extends TestCase {
+
+    public void testDirectory() throws Exception {
+        final MetatypeScanner scanner = new MetatypeScanner().add(classes(MetaAnnotatedMethodTest.class));
+
+        assertMethods(scanner, MetaAnnotatedMethodTest.class, "square", "circle", "triangle", "oval", "store", "farm");
+    }
+
+    public void testJar() throws Exception {
+        final File jar = Jars.of(MetaAnnotatedMethodTest.class);
+
+        // the fallback must not be able to see the annotation types
+        final MetatypeScanner scanner = new MetatypeScanner(ClassLoader.getSystemClassLoader().getParent()).add(jar);
+
+        final List<ScannedElement> found = scanner.find(MetaAnnotatedMethodTest.Color.class.getName());
+
+        final Set<String> names = new HashSet<String>();
+        for (ScannedElement element : found) {
+            assertEquals(ScannedElement.Kind.METHOD, element.getKind());
+
+            // skip the $ definition classes
+            if (!element.getClassName().endsWith("$$")) names.add(element.getName());
+        }
+
+        assertEquals(set("square", "circle", "triangle", "oval", "store", "farm"), names);
+    }
+
+    public void testValues() throws Exception {
+        final MetatypeScanner scanner = new MetatypeScanner().add(classes(MetaAnnotatedMethodTest.class));
+
+        for (ScannedElement element : scanner.find(MetaAnnotatedMethodTest.Color.class.getName())) {
+            final ScannedAnnotation color = element.getAnnotation(MetaAnnotatedMethodTest.Color.class.getName());
+
+            if ("triangle".equals(element.getName())) {
+                assertEquals("red", color.getValue("value"));
+                assertEquals(2, element.getDepth(MetaAnnotatedMethodTest.Color.class.getName()));
+                assertEquals(0, element.getDepth(MetaAnnotatedMethodTest.Crimson.class.getName()));
+            }
+
+            if ("store".equals(element.getName())) {
+                assertEquals("egg", color.getValue("value"));
+            }
+        }
+    }
+
+    /**
+     * Ties at one depth must go to the same annotation as at runtime
+     */
+    public void testWinners() throws Exception {
+        final MetatypeScanner scanner = new MetatypeScanner().add(classes(MetaAnnotatedMethodTest.class));
+
+        for (ScannedElement element : scanner.find(MetaAnnotatedMethodTest.Color.class.getName())) {
+            if (!element.getClassName().startsWith(MetaAnnotatedMethodTest.class.getName() + "$")) continue;
+            if (element.getClassName().endsWith("$$")) continue;
+
+            final MetaAnnotatedMethod reflected = new MetaAnnotatedMethod(find(MetaAnnotatedMethodTest.class, element.getName()));
+            final MetaAnnotatedMethodTest.Color color = reflected.getAnnotation(MetaAnnotatedMethodTest.Color.class);
+
+            assertEquals(element.getName(), color.value(), element.getAnnotation(MetaAnnotatedMethodTest.Color.class.getName()).getValue("value"));
+        }
+    }
+
+    public void testParameters() throws Exception {
+        final MetatypeScanner scanner = new MetatypeScanner().add(classes(MetaAnnotatedMethodParametersTest.class));
+
+        final Set<String> names = new HashSet<String>();
+        for (ScannedElement element : scanner.find(MetaAnnotatedMethodParametersTest.Color.class.getName())) {
+            if (element.getKind() != ScannedElement.Kind.PARAMETER) continue;
+
+            // skip the $ definition classes
+            if (!element.getClassName().startsWith(MetaAnnotatedMethodParametersTest.class.getName() + "$")) continue;
+            if (element.getClassName().endsWith("$$")) continue;
+
+            assertEquals(0, element.getParameter());
+            names.add(element.getName());
+        }
+
+        assertEquals(set("square", "circle", "triangle", "oval", "store", "farm"), names);
+    }
+
+    public void testIndex() throws Exception {
+        final MetatypeScanner scanner = new MetatypeScanner().add(classes(MetaAnnotatedMethodTest.class));
+
+        final Map<String, List<ScannedElement>> index = scanner.index();
+
+        for (String type : new String[]{MetaAnnotatedMethodTest.Color.class.getName(), MetaAnnotatedMethodTest.Red.class.getName()}) {
+            assertEquals(type, scanner.find(type).size(), index.get(type).size());
+        }
+    }
+
+    public void testSubclasses() throws Exception {
+        final File jar = Jars.of(MetaAnnotatedClassTest.class);
+        try {
+            final MetatypeScanner scanner = new MetatypeScanner().add(jar);
+
+            // BlueSquare extends SubSquare extends PinkSquare, annotated or not
+            assertEquals(set(MetaAnnotatedClassTest.SubSquare.class.getName(), MetaAnnotatedClassTest.BlueSquare.class.getName()),
+                    new HashSet<String>(scanner.subclasses(MetaAnnotatedClassTest.PinkSquare.class.getName())));
+            assertEquals(0, scanner.subclasses(MetaAnnotatedClassTest.BlueSquare.class.getName()).size());
+        } finally {
+            jar.delete();
+        }
+    }
+
+    public void testCached() throws Exception {
+        final File jar = Jars.of(MetaAnnotatedMethodTest.class);
+        final MetatypeScanner scanner = new MetatypeScanner().add(jar);
+
+        final List<ScannedElement> scanned = scanner.scan();
+        final String color = MetaAnnotatedMethodTest.Color.class.getName();
+        final int found = scanner.find(color).size();
+
+        // the roots are read once
+        assertTrue(jar.delete());
+        assertSame(scanned, scanner.scan());
+        assertSame(scanner.index(), scanner.index());
+        assertEquals(found, scanner.find(color).size());
+
+        // and again once another root is added
+        final MetatypeScanner added = new MetatypeScanner().add(Jars.of(MetaAnnotatedMethodTest.class));
+        final String parameters = MetaAnnotatedMethodParametersTest.Color.class.getName();
+
+        assertEquals(0, added.find(parameters).size());
+        added.add(Jars.of(MetaAnnotatedMethodParametersTest.class));
+        assertTrue(added.find(parameters).size() > 0);
+    }
+
+    private void assertMethods(MetatypeScanner scanner, Class<?> fixtures, String... names) throws Exception {
+        final Map<String, ScannedElement> scanned = new HashMap<String, ScannedElement>();
+        for (ScannedElement element : scanner.scan()) {
+            if (element.getKind() == ScannedElement.Kind.METHOD && element.getClassName().startsWith(fixtures.getName() + "$")) {
+                scanned.put(element.getName(), element);
+            }
+        }
+
+        for (String name : names) {
+            final ScannedElement element = scanned.get(name);
+            assertNotNull(name, element);
+
+            final Method method = find(fixtures, name);
+            final MetaAnnotatedMethod reflected = new MetaAnnotatedMethod(method);
+
+            final Set<String> expected = new HashSet<String>();
+            for (Annotation annotation : reflected.getAnnotations()) {
+                expected.add(annotation.annotationType().getName());
+            }
+
+            final Set<String> actual = new HashSet<String>();
+            for (ScannedAnnotation annotation : element.getAnnotations()) {
+                actual.add(annotation.getType());
+            }
+
+            assertEquals(name, expected, actual);
+        }
+    }
+
+    private static Method find(Class<?> fixtures, String name) {
+        for (Class<?> clazz : fixtures.getClasses()) {
+            for (Method method : clazz.getDeclaredMethods()) {
+                if (method.getName().equals(name)) return method;
+            }
+        }
+        throw new AssertionError(name);
+    }
+
+    private static File classes(Class<?> clazz) throws Exception {
+        return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI());
+    }
+
+    private static Set<String> set(String... values) {
+        final Set<String> set = new HashSet<String>();
+        for (String value : values) set.add(value);
+        return set;
+    }
+}
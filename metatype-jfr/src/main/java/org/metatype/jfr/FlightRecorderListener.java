@@ -0,0 +1,98 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.jfr;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+
+import jdk.jfr.EventType;
+
+import org.metatype.MetatypeListener;
+
+/**
+ * Turns the callbacks of the unroll engine into Flight Recorder events.
+ * Registered through META-INF/services, so having this jar on the classpath is
+ * enough.  Events that are not enabled in any running recording are dropped
+ * before they are even created, and the clock is only read while the timed
+ * events are enabled.
+ *
+ * @author David Blevins
+ */
+public class FlightRecorderListener implements MetatypeListener {
+
+    private static final EventType WRAPPER_CREATED = EventType.getEventType(MetatypeEvents.WrapperCreated.class);
+    private static final EventType ELEMENT_UNROLLED = EventType.getEventType(MetatypeEvents.ElementUnrolled.class);
+    private static final EventType CLOSURE_RESOLVED = EventType.getEventType(MetatypeEvents.ClosureResolved.class);
+    private static final EventType DEFINITION_LOOKUP = EventType.getEventType(MetatypeEvents.DefinitionLookup.class);
+    private static final EventType CONFLICT = EventType.getEventType(MetatypeEvents.Conflict.class);
+
+    public boolean wantsTiming() {
+        return ELEMENT_UNROLLED.isEnabled() || CLOSURE_RESOLVED.isEnabled();
+    }
+
+    public void wrapperCreated(AnnotatedElement target) {
+        if (!WRAPPER_CREATED.isEnabled()) return;
+
+        final MetatypeEvents.WrapperCreated event = new MetatypeEvents.WrapperCreated();
+
+        event.element = target.toString();
+        event.commit();
+    }
+
+    public void elementUnrolled(AnnotatedElement element, int annotations, long nanos) {
+        if (!ELEMENT_UNROLLED.isEnabled()) return;
+
+        final MetatypeEvents.ElementUnrolled event = new MetatypeEvents.ElementUnrolled();
+
+        event.element = element.toString();
+        event.annotations = annotations;
+        event.nanos = nanos;
+        event.commit();
+    }
+
+    public void closureResolved(Class<? extends Annotation> type, int size, int maxDepth, boolean precomputed, long nanos) {
+        if (!CLOSURE_RESOLVED.isEnabled()) return;
+
+        final MetatypeEvents.ClosureResolved event = new MetatypeEvents.ClosureResolved();
+
+        event.annotationType = type;
+        event.size = size;
+        event.maxDepth = maxDepth;
+        event.precomputed = precomputed;
+        event.nanos = nanos;
+        event.commit();
+    }
+
+    public void definitionLookup(Class<? extends Annotation> type, boolean found) {
+        if (!DEFINITION_LOOKUP.isEnabled()) return;
+
+        final MetatypeEvents.DefinitionLookup event = new MetatypeEvents.DefinitionLookup();
+
+        event.annotationType = type;
+        event.found = found;
+        event.commit();
+    }
+
+    public void conflict(Class<? extends Annotation> type, int depth) {
+        if (!CONFLICT.isEnabled()) return;
+
+        final MetatypeEvents.Conflict event = new MetatypeEvents.Conflict();
+
+        event.annotationType = type;
+        event.depth = depth;
+        event.commit();
+    }
+}
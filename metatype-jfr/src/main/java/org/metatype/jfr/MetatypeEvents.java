@@ -0,0 +1,111 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The Flight Recorder events of the unroll engine.  Timings are measured by the
+ * engine itself and recorded as fields, the events are instant.
+ *
+ * @author David Blevins
+ */
+final class MetatypeEvents {
+
+    static final String CATEGORY = "Metatypes";
+
+    private MetatypeEvents() {
+    }
+
+    @Name("org.metatype.WrapperCreated")
+    @Label("Wrapper Created")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class WrapperCreated extends Event {
+        @Label("Element")
+        String element;
+    }
+
+    @Name("org.metatype.ElementUnrolled")
+    @Label("Element Unrolled")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class ElementUnrolled extends Event {
+        @Label("Element")
+        String element;
+
+        @Label("Annotations")
+        @Description("Resolved annotations, including those reached through metatypes")
+        int annotations;
+
+        @Label("Unroll Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+    }
+
+    @Name("org.metatype.ClosureResolved")
+    @Label("Closure Resolved")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class ClosureResolved extends Event {
+        @Label("Annotation Type")
+        Class<?> annotationType;
+
+        @Label("Size")
+        int size;
+
+        @Label("Max Depth")
+        int maxDepth;
+
+        @Label("Precomputed")
+        @Description("Read from the metatype-processor output instead of reflection")
+        boolean precomputed;
+
+        @Label("Resolve Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+    }
+
+    @Name("org.metatype.DefinitionLookup")
+    @Label("Definition Lookup")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class DefinitionLookup extends Event {
+        @Label("Annotation Type")
+        Class<?> annotationType;
+
+        @Label("Found")
+        boolean found;
+    }
+
+    @Name("org.metatype.Conflict")
+    @Label("Conflict")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Conflict extends Event {
+        @Label("Annotation Type")
+        Class<?> annotationType;
+
+        @Label("Depth")
+        int depth;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.jfr;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.io.File;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Metatype;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+
+import org.metatype.MetaAnnotatedClass;
+
+/**
+ * The listener is picked up through META-INF/services, the fixtures are only
+ * used here so their closures are computed while recording.
+ *
+ * @author David Blevins
+ */
+public class FlightRecorderListenerTest extends TestCase {
+
+    public void test() throws Exception {
+        final FlightRecorderListener listener = new FlightRecorderListener();
+
+        // the clock is left alone unless a recording wants the times
+        assertFalse(listener.wantsTiming());
+
+        final File file = File.createTempFile("metatype", ".jfr");
+        try {
+            final Recording recording = new Recording();
+            try {
+                recording.enable("org.metatype.WrapperCreated");
+                recording.enable("org.metatype.ElementUnrolled");
+                recording.enable("org.metatype.ClosureResolved");
+                recording.enable("org.metatype.DefinitionLookup");
+                recording.enable("org.metatype.Conflict");
+                recording.start();
+
+                assertTrue(listener.wantsTiming());
+
+                MetaAnnotatedClass.of(Canvas.class).getAnnotations();
+
+                recording.stop();
+                recording.dump(file.toPath());
+            } finally {
+                recording.close();
+            }
+
+            final Map<String, RecordedEvent> events = new HashMap<String, RecordedEvent>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                events.put(event.getEventType().getName() + ":" + describe(event), event);
+            }
+
+            assertTrue(events.toString(), events.containsKey("org.metatype.WrapperCreated:" + Canvas.class));
+            assertTrue(events.toString(), events.containsKey("org.metatype.ElementUnrolled:" + Canvas.class));
+            assertTrue(events.toString(), events.containsKey("org.metatype.ClosureResolved:" + Scarlet.class.getName()));
+            assertTrue(events.toString(), events.containsKey("org.metatype.DefinitionLookup:" + Scarlet.class.getName()));
+            assertTrue(events.toString(), events.containsKey("org.metatype.Conflict:" + Hue.class.getName()));
+
+            final RecordedEvent unrolled = events.get("org.metatype.ElementUnrolled:" + Canvas.class);
+            assertEquals(3, unrolled.getInt("annotations"));
+
+            final RecordedEvent scarlet = events.get("org.metatype.ClosureResolved:" + Scarlet.class.getName());
+            assertEquals(1, scarlet.getInt("maxDepth"));
+            assertFalse(scarlet.getBoolean("precomputed"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static String describe(RecordedEvent event) {
+        if (event.hasField("element")) return event.getString("element");
+        return event.getClass("annotationType").getName();
+    }
+
+    @Target(TYPE)
+    @Retention(RUNTIME)
+    public static @interface Hue {
+        String value();
+    }
+
+    @Metatype
+    @Hue("scarlet")
+    @Target(TYPE)
+    @Retention(RUNTIME)
+    public static @interface Scarlet {
+    }
+
+    @Metatype
+    @Hue("crimson")
+    @Target(TYPE)
+    @Retention(RUNTIME)
+    public static @interface Crimson {
+    }
+
+    @Scarlet
+    @Crimson
+    public static class Canvas {
+    }
+}
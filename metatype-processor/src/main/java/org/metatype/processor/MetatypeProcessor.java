@@ -0,0 +1,470 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Precomputes the unrolled meta-annotations of every meta-annotation in the
+ * compilation, following the same rules as MetaAnnotatedObject does at runtime,
+ * including the annotations bound in the nested "$" definition class.
+ * <p/>
+ * Each meta-annotation gets a resource named {@link #INDEX} plus its binary name,
+ * one line per resolved annotation:
+ * <pre>
+ * depth type source [conflict]
+ * </pre>
+ * The source says where the runtime can pick up the annotation instance, either
+ * the binary name of the annotation type it is declared on, or a member of a
+ * definition class such as <code>javax.ejb.meta.Daily$$#method:method()</code>,
+ * optionally followed by <code>@index</code> for a parameter of that member.
+ * <p/>
+ * The file starts with one line per annotation type and definition member the
+ * closure was computed from, listing the binary names of the annotations it
+ * declared, so the runtime can tell the classes changed since:
+ * <pre>
+ * = source [type,type...]
+ * </pre>
+ * and, for each meta-annotation, one line listing every definition member bound
+ * to it, so a member added since is noticed as well:
+ * <pre>
+ * * type [source source...]
+ * </pre>
+ * Annotations of one type are bound in binary name order and the members of a
+ * definition class in the order of their sources, the same tie-break the
+ * runtime uses, so both pick the same instance when several are at one depth.
+ *
+ * @author David Blevins
+ */
+@SupportedAnnotationTypes("*")
+public class MetatypeProcessor extends AbstractProcessor {
+
+    public static final String INDEX = "META-INF/metatypes/";
+
+    private static final String METATYPE = "javax.annotation.Metatype";
+    private static final String METAROOT = "javax.annotation.Metaroot";
+
+    private static final Comparator<Group> SOURCES = new Comparator<Group>() {
+        public int compare(Group a, Group b) {
+            return a.member.compareTo(b.member);
+        }
+    };
+
+    private final Set<String> written = new HashSet<String>();
+    private final Map<TypeElement, Collection<Binding>> declared = new HashMap<TypeElement, Collection<Binding>>();
+
+    /**
+     * The check lines of each annotation type, for its own annotations and the definition members bound to it
+     */
+    private final Map<TypeElement, List<String>> checks = new HashMap<TypeElement, List<String>>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getRootElements()) {
+            if (element instanceof TypeElement) visit((TypeElement) element);
+        }
+
+        // others may be interested in the same annotations
+        return false;
+    }
+
+    private void visit(TypeElement type) {
+        if (type.getKind() == ElementKind.ANNOTATION_TYPE && isMetaAnnotation(type)) {
+            write(type);
+        }
+
+        for (Element enclosed : type.getEnclosedElements()) {
+            if (enclosed instanceof TypeElement) visit((TypeElement) enclosed);
+        }
+    }
+
+    private void write(TypeElement type) {
+        final String name = binaryName(type);
+
+        if (!written.add(name)) return;
+
+        final Map<TypeElement, Entry> closure = new LinkedHashMap<TypeElement, Entry>();
+        unroll(type, 1, closure);
+        closure.remove(type);
+
+        final Set<String> lines = new LinkedHashSet<String>(checks(type));
+        for (TypeElement element : closure.keySet()) {
+            lines.addAll(checks(element));
+        }
+
+        try {
+            final FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX + name, type);
+            final Writer writer = file.openWriter();
+            try {
+                for (String line : lines) {
+                    writer.write(line);
+                }
+
+                for (Entry entry : closure.values()) {
+                    writer.write(entry.line(false));
+
+                    for (Entry conflict : entry.conflicts) {
+                        writer.write(conflict.line(true));
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Could not write the metatype index: " + e.getMessage(), type);
+        }
+    }
+
+    private void unroll(TypeElement clazz, int depth, Map<TypeElement, Entry> found) {
+        if (!isMetaAnnotation(clazz)) return;
+
+        for (Binding binding : getDeclaredMetaAnnotations(clazz)) {
+            final TypeElement type = binding.type;
+
+            final Entry existing = found.get(type);
+
+            if (existing == null || existing.depth > depth) {
+
+                // NEW or OVERWRITE
+
+                found.put(type, new Entry(binding, depth));
+
+                unroll(type, depth + 1, found);
+
+            } else if (existing.depth == depth) {
+
+                // CONFLICT
+
+                existing.conflicts.add(new Entry(binding, depth));
+
+            }
+        }
+    }
+
+    private Collection<Binding> getDeclaredMetaAnnotations(TypeElement clazz) {
+        Collection<Binding> bindings = declared.get(clazz);
+        if (bindings != null) return bindings;
+
+        final Map<TypeElement, Binding> map = new LinkedHashMap<TypeElement, Binding>();
+
+        // pull in the annotations declared on this annotation
+
+        add(map, clazz.getAnnotationMirrors(), binaryName(clazz));
+
+        final List<String> lines = new ArrayList<String>();
+        lines.add(check(binaryName(clazz), clazz.getAnnotationMirrors()));
+
+        final TypeElement metatype = getMetatype(clazz);
+        if (metatype != null) {
+            final StringBuilder bound = new StringBuilder("* ").append(binaryName(clazz));
+
+            final TypeElement def = getDefinition(clazz);
+
+            if (def != null) {
+                final String owner = binaryName(def) + "#";
+
+                final List<Group> groups = new ArrayList<Group>();
+
+                for (ExecutableElement method : members(def, ElementKind.METHOD, ExecutableElement.class)) {
+                    parameters(groups, method, owner, member(method));
+                    groups.add(new Group(method.getAnnotationMirrors(), owner, member(method)));
+                }
+
+                for (ExecutableElement constructor : members(def, ElementKind.CONSTRUCTOR, ExecutableElement.class)) {
+                    parameters(groups, constructor, owner, member(constructor));
+                    groups.add(new Group(constructor.getAnnotationMirrors(), owner, member(constructor)));
+                }
+
+                for (VariableElement field : members(def, ElementKind.FIELD, VariableElement.class)) {
+                    groups.add(new Group(field.getAnnotationMirrors(), owner, "field:" + field.getSimpleName()));
+                }
+
+                // the order the runtime applies them in, later groups win
+                Collections.sort(groups, SOURCES);
+
+                for (Group group : groups) {
+                    if (contains(group.annotations, clazz)) {
+                        add(map, group.annotations, group.source);
+                        lines.add(check(group.source, group.annotations));
+                        bound.append(' ').append(group.source);
+                    }
+                }
+            }
+
+            lines.add(bound.append('\n').toString());
+        }
+
+        map.remove(element("java.lang.annotation.Target"));
+        map.remove(element("java.lang.annotation.Retention"));
+        map.remove(element("java.lang.annotation.Documented"));
+        // if the chicken is an egg, carry it forward
+        if (!isMetaAnnotation(metatype))
+            map.remove(metatype);
+        map.remove(clazz);
+
+        final List<Binding> sorted = new ArrayList<Binding>(map.values());
+
+        // the order the runtime unrolls them in
+        Collections.sort(sorted, new Comparator<Binding>() {
+            public int compare(Binding a, Binding b) {
+                return binaryName(a.type).compareTo(binaryName(b.type));
+            }
+        });
+
+        bindings = sorted;
+        declared.put(clazz, bindings);
+        checks.put(clazz, lines);
+        return bindings;
+    }
+
+    /**
+     * The check lines of the type, also for types that are not meta-annotations
+     * as they may become one
+     */
+    private List<String> checks(TypeElement type) {
+        if (!isMetaAnnotation(type)) return Collections.singletonList(check(binaryName(type), type.getAnnotationMirrors()));
+
+        getDeclaredMetaAnnotations(type);
+        return checks.get(type);
+    }
+
+    private String check(String source, List<? extends AnnotationMirror> annotations) {
+        final List<String> names = new ArrayList<String>();
+        for (AnnotationMirror annotation : annotations) {
+            if (isRuntime(type(annotation))) names.add(binaryName(type(annotation)));
+        }
+        Collections.sort(names);
+
+        final StringBuilder sb = new StringBuilder("= ").append(source);
+        for (int i = 0; i < names.size(); i++) {
+            sb.append((i == 0) ? ' ' : ',').append(names.get(i));
+        }
+        return sb.append('\n').toString();
+    }
+
+    private void add(Map<TypeElement, Binding> map, List<? extends AnnotationMirror> annotations, String source) {
+        for (AnnotationMirror annotation : annotations) {
+            final TypeElement type = type(annotation);
+
+            // only what the runtime can see
+            if (isRuntime(type)) map.put(type, new Binding(type, source));
+        }
+    }
+
+    private void parameters(List<Group> groups, ExecutableElement executable, String owner, String member) {
+        final List<? extends VariableElement> parameters = executable.getParameters();
+
+        for (int i = 0; i < parameters.size(); i++) {
+            groups.add(new Group(parameters.get(i).getAnnotationMirrors(), owner, member + "@" + i));
+        }
+    }
+
+    private TypeElement getDefinition(TypeElement clazz) {
+        for (Element enclosed : clazz.getEnclosedElements()) {
+            if (enclosed instanceof TypeElement && enclosed.getSimpleName().contentEquals("$")) {
+                return (TypeElement) enclosed;
+            }
+        }
+        return null;
+    }
+
+    private static <E extends Element> List<E> members(TypeElement type, ElementKind kind, Class<E> elementType) {
+        final List<E> members = new ArrayList<E>();
+
+        for (Element element : type.getEnclosedElements()) {
+            if (element.getKind() == kind) members.add(elementType.cast(element));
+        }
+
+        return members;
+    }
+
+    private String member(ExecutableElement executable) {
+        final StringBuilder sb = new StringBuilder();
+
+        if (executable.getKind() == ElementKind.CONSTRUCTOR) {
+            sb.append("constructor:");
+        } else {
+            sb.append("method:").append(executable.getSimpleName());
+        }
+
+        sb.append('(');
+
+        final List<? extends VariableElement> parameters = executable.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append(className(processingEnv.getTypeUtils().erasure(parameters.get(i).asType())));
+        }
+
+        return sb.append(')').toString();
+    }
+
+    /**
+     * The name Class.forName understands, or the keyword for primitives
+     */
+    private String className(TypeMirror type) {
+        switch (type.getKind()) {
+            case ARRAY:
+                return descriptor(type).replace('/', '.');
+            case DECLARED:
+                return binaryName((TypeElement) ((DeclaredType) type).asElement());
+            default:
+                return type.getKind().name().toLowerCase();
+        }
+    }
+
+    private String descriptor(TypeMirror type) {
+        switch (type.getKind()) {
+            case ARRAY: return "[" + descriptor(((ArrayType) type).getComponentType());
+            case DECLARED: return "L" + binaryName((TypeElement) ((DeclaredType) type).asElement()) + ";";
+            case BOOLEAN: return "Z";
+            case BYTE: return "B";
+            case CHAR: return "C";
+            case SHORT: return "S";
+            case INT: return "I";
+            case LONG: return "J";
+            case FLOAT: return "F";
+            case DOUBLE: return "D";
+            default: throw new IllegalStateException("Unexpected parameter type " + type);
+        }
+    }
+
+    private boolean contains(List<? extends AnnotationMirror> annotations, TypeElement clazz) {
+        for (AnnotationMirror annotation : annotations) {
+            if (clazz.equals(type(annotation))) return true;
+        }
+        return false;
+    }
+
+    private TypeElement getMetatype(TypeElement clazz) {
+        for (AnnotationMirror annotation : clazz.getAnnotationMirrors()) {
+            final TypeElement type = type(annotation);
+
+            if (isRuntime(type) && isMetatypeAnnotation(type)) return type;
+        }
+
+        return null;
+    }
+
+    private boolean isMetaAnnotation(TypeElement clazz) {
+        return clazz != null && getMetatype(clazz) != null;
+    }
+
+    private boolean isMetatypeAnnotation(TypeElement type) {
+        if (type.getQualifiedName().contentEquals(METATYPE)) return true;
+
+        for (AnnotationMirror annotation : type.getAnnotationMirrors()) {
+            if (type(annotation).getQualifiedName().contentEquals(METAROOT)) return true;
+        }
+
+        return false;
+    }
+
+    private boolean isRuntime(TypeElement type) {
+        for (AnnotationMirror annotation : type.getAnnotationMirrors()) {
+            if (!type(annotation).getQualifiedName().contentEquals("java.lang.annotation.Retention")) continue;
+
+            for (AnnotationValue value : annotation.getElementValues().values()) {
+                return ((VariableElement) value.getValue()).getSimpleName().contentEquals("RUNTIME");
+            }
+        }
+
+        // CLASS is the default retention
+        return false;
+    }
+
+    private static TypeElement type(AnnotationMirror annotation) {
+        return (TypeElement) annotation.getAnnotationType().asElement();
+    }
+
+    private TypeElement element(String name) {
+        return processingEnv.getElementUtils().getTypeElement(name);
+    }
+
+    private String binaryName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    private static class Binding {
+        private final TypeElement type;
+        private final String source;
+
+        private Binding(TypeElement type, String source) {
+            this.type = type;
+            this.source = source;
+        }
+    }
+
+    private static class Group {
+        private final List<? extends AnnotationMirror> annotations;
+        private final String member;
+        private final String source;
+
+        private Group(List<? extends AnnotationMirror> annotations, String owner, String member) {
+            this.annotations = annotations;
+            this.member = member;
+            this.source = owner + member;
+        }
+    }
+
+    private class Entry {
+        private final Binding binding;
+        private final int depth;
+        private final List<Entry> conflicts = new ArrayList<Entry>();
+
+        private Entry(Binding binding, int depth) {
+            this.binding = binding;
+            this.depth = depth;
+        }
+
+        private String line(boolean conflict) {
+            return depth + " " + binaryName(binding.type) + " " + binding.source + (conflict ? " conflict" : "") + "\n";
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2011 David Blevins
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.metatype.processor;
+
+import static java.util.Arrays.asList;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Metatype;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import junit.framework.TestCase;
+
+/**
+ * @author David Blevins
+ */
+public class MetatypeProcessorTest extends TestCase {
+
+    private static final String SOURCE = "" +
+            "package shapes;\n" +
+            "import java.lang.annotation.*;\n" +
+            "import javax.annotation.Metatype;\n" +
+            "public class Shapes {\n" +
+            "    @Retention(RetentionPolicy.RUNTIME) public @interface Color { String value(); }\n" +
+            "    @Retention(RetentionPolicy.CLASS) public @interface Invisible { }\n" +
+            "    @Metatype @Color(\"red\") @Invisible @Retention(RetentionPolicy.RUNTIME) public @interface Red { }\n" +
+            "    @Metatype @Retention(RetentionPolicy.RUNTIME) public @interface Crimson {\n" +
+            "        public interface $ {\n" +
+            "            @Crimson @Red void method(String s, int[] i);\n" +
+            "        }\n" +
+            "    }\n" +
+            "    @Metatype @Red @Retention(RetentionPolicy.RUNTIME) public @interface Rose { }\n" +
+            "    @Metatype @Crimson @Rose @Retention(RetentionPolicy.RUNTIME) public @interface Garden { }\n" +
+            "}\n";
+
+    public void test() throws Exception {
+        final File output = Files.createTempDirectory("metatypes").toFile();
+
+        compile(output);
+
+        assertEquals(asList(
+                "1 shapes.Shapes$Red shapes.Shapes$Crimson$$#method:method(java.lang.String,[I)",
+                "2 shapes.Shapes$Color shapes.Shapes$Red"
+        ), read(output, "shapes.Shapes$Crimson"));
+
+        assertEquals(asList(
+                "1 shapes.Shapes$Color shapes.Shapes$Red"
+        ), read(output, "shapes.Shapes$Red"));
+
+        // Red is reached through Crimson and Rose at the same depth
+        assertEquals(asList(
+                "1 shapes.Shapes$Crimson shapes.Shapes$Garden",
+                "2 shapes.Shapes$Red shapes.Shapes$Crimson$$#method:method(java.lang.String,[I)",
+                "2 shapes.Shapes$Red shapes.Shapes$Rose conflict",
+                "3 shapes.Shapes$Color shapes.Shapes$Red",
+                "1 shapes.Shapes$Rose shapes.Shapes$Garden"
+        ), read(output, "shapes.Shapes$Garden"));
+
+        assertFalse(new File(output, MetatypeProcessor.INDEX + "shapes.Shapes$Color").exists());
+    }
+
+    public void testChecks() throws Exception {
+        final File output = Files.createTempDirectory("metatypes").toFile();
+
+        compile(output);
+
+        // what the closure was computed from, CLASS retention annotations are not listed
+        assertEquals(asList(
+                "= shapes.Shapes$Crimson java.lang.annotation.Retention,javax.annotation.Metatype",
+                "= shapes.Shapes$Crimson$$#method:method(java.lang.String,[I) shapes.Shapes$Crimson,shapes.Shapes$Red",
+                "= shapes.Shapes$Red java.lang.annotation.Retention,javax.annotation.Metatype,shapes.Shapes$Color",
+                "= shapes.Shapes$Color java.lang.annotation.Retention"
+        ), checks(output, "shapes.Shapes$Crimson"));
+
+        // and every definition member bound to each meta-annotation
+        assertEquals(asList(
+                "* shapes.Shapes$Crimson shapes.Shapes$Crimson$$#method:method(java.lang.String,[I)",
+                "* shapes.Shapes$Red"
+        ), members(output, "shapes.Shapes$Crimson"));
+    }
+
+    private void compile(File output) throws IOException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+        final String classpath = new File(Metatype.class.getProtectionDomain().getCodeSource().getLocation().getPath()).getAbsolutePath();
+
+        final List<JavaFileObject> sources = new ArrayList<JavaFileObject>();
+        sources.add(new SimpleJavaFileObject(URI.create("string:///shapes/Shapes.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return SOURCE;
+            }
+        });
+
+        final JavaCompiler.CompilationTask task = compiler.getTask(null, null, null, asList("-d", output.getAbsolutePath(), "-classpath", classpath), null, sources);
+        task.setProcessors(asList(new MetatypeProcessor()));
+
+        assertTrue(task.call());
+    }
+
+    /**
+     * The closure entries, without the check lines
+     */
+    private List<String> read(File output, String name) throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        for (String line : lines(output, name)) {
+            if (!line.startsWith("= ") && !line.startsWith("* ")) lines.add(line);
+        }
+        return lines;
+    }
+
+    private List<String> members(File output, String name) throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        for (String line : lines(output, name)) {
+            if (line.startsWith("* ")) lines.add(line);
+        }
+        return lines;
+    }
+
+    private List<String> checks(File output, String name) throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        for (String line : lines(output, name)) {
+            if (line.startsWith("= ")) lines.add(line);
+        }
+        return lines;
+    }
+
+    private List<String> lines(File output, String name) throws IOException {
+        return Files.readAllLines(new File(output, MetatypeProcessor.INDEX + name).toPath(), Charset.forName("UTF-8"));
+    }
+}